@@ -0,0 +1,172 @@
+package net.minecraft.server;
+
+import java.util.Iterator;
+
+import org.bukkit.craftbukkit.CraftServer;
+
+/**
+ * Decides which entities get a full tick. An entity is active while a player
+ * is within the activation range of its category; the others only get
+ * {@link Entity#inactiveTick()}, unless one of the immunities below keeps
+ * them going for a while.
+ */
+public class ActivationRange {
+
+    public static final byte MONSTER = 1;
+    public static final byte ANIMAL = 2;
+    public static final byte VILLAGER = 3;
+    public static final byte MISC = 4;
+
+    // Ticks an immune entity stays active without being checked again
+    private static final int IMMUNE_TICKS = 20;
+
+    private ActivationRange() {}
+
+    static byte getCategory(Entity entity) {
+        if (entity instanceof EntityVillager) {
+            return VILLAGER;
+        } else if (entity instanceof IMonster) {
+            return MONSTER;
+        } else if (entity instanceof IAnimal || entity instanceof EntityCreature) {
+            return ANIMAL;
+        }
+        return MISC;
+    }
+
+    /**
+     * Entities that must never miss a tick, whatever their distance.
+     */
+    static boolean isAlwaysActive(Entity entity) {
+        return entity instanceof EntityHuman
+                || entity instanceof IProjectile
+                || entity instanceof EntityFireball
+                || entity instanceof EntityFireworks
+                || entity instanceof EntityFallingBlock
+                || entity instanceof EntityTNTPrimed
+                || entity instanceof EntityEnderCrystal
+                || entity instanceof EntityEnderDragon
+                || entity instanceof EntityComplexPart
+                || entity instanceof EntityWither
+                || entity instanceof EntityWeather;
+    }
+
+    static int getRange(CraftServer server, byte category) {
+        switch (category) {
+            case MONSTER:
+                return server.activationRangeMonsters;
+            case ANIMAL:
+                return server.activationRangeAnimals;
+            case VILLAGER:
+                return server.activationRangeVillagers;
+            default:
+                return server.activationRangeMisc;
+        }
+    }
+
+    /**
+     * Marks every entity within its activation range of a player as active
+     * for this tick. Only the chunks around players are visited.
+     */
+    public static void activateEntities(World world) {
+        CraftServer server = world.getServer();
+        int i = Math.max(Math.max(server.activationRangeMonsters, server.activationRangeAnimals), Math.max(server.activationRangeVillagers, server.activationRangeMisc));
+
+        if (i <= 0) {
+            return;
+        }
+
+        for (int j = 0; j < world.players.size(); ++j) {
+            EntityHuman entityhuman = world.players.get(j);
+
+            entityhuman.activatedTick = MinecraftServer.currentTick;
+            int k = MathHelper.floor(entityhuman.locX - i) >> 4;
+            int l = MathHelper.floor(entityhuman.locX + i) >> 4;
+            int i1 = MathHelper.floor(entityhuman.locZ - i) >> 4;
+            int j1 = MathHelper.floor(entityhuman.locZ + i) >> 4;
+
+            for (int k1 = k; k1 <= l; ++k1) {
+                for (int l1 = i1; l1 <= j1; ++l1) {
+                    Chunk chunk = world.getChunkIfLoaded(k1, l1);
+
+                    if (chunk != null) {
+                        activateChunkEntities(server, chunk, entityhuman);
+                    }
+                }
+            }
+        }
+    }
+
+    private static void activateChunkEntities(CraftServer server, Chunk chunk, EntityHuman entityhuman) {
+        for (int i = 0; i < chunk.entitySlices.length; ++i) {
+            if (chunk.entitySlices[i].isEmpty()) {
+                continue;
+            }
+
+            Iterator<Entity> iterator = chunk.entitySlices[i].iterator();
+
+            while (iterator.hasNext()) {
+                Entity entity = iterator.next();
+
+                if (entity.activatedTick >= MinecraftServer.currentTick) {
+                    continue;
+                }
+
+                int j = getRange(server, entity.getActivationCategory());
+
+                if (Math.abs(entity.locX - entityhuman.locX) <= j && Math.abs(entity.locZ - entityhuman.locZ) <= j) {
+                    entity.activatedTick = MinecraftServer.currentTick;
+                }
+            }
+        }
+    }
+
+    /**
+     * Whether the entity is doing something that would go wrong with only
+     * the inactive tick: falling, burning, swimming, riding, being hit or
+     * chasing a target.
+     */
+    static boolean isImmune(Entity entity) {
+        if (entity.fireTicks > 0 || entity.inWater || entity.isPassenger() || entity.isVehicle()) {
+            return true;
+        }
+
+        // Jumping or falling; hanging and flying entities are off the ground without either
+        if (!entity.onGround && (entity.fallDistance > 0.0F || entity.motY > 0.0D)) {
+            return true;
+        }
+
+        if (entity instanceof EntityLiving) {
+            EntityLiving entityliving = (EntityLiving) entity;
+
+            if (entityliving.hurtTicks > 0 || !entityliving.effects.isEmpty()) {
+                return true;
+            }
+
+            if (entity instanceof EntityInsentient && ((EntityInsentient) entity).getGoalTarget() != null) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Whether the entity gets a full tick this tick.
+     */
+    public static boolean checkIfActive(Entity entity) {
+        if (entity.activatedTick >= MinecraftServer.currentTick || isAlwaysActive(entity)) {
+            return true;
+        }
+
+        if (getRange(entity.world.getServer(), entity.getActivationCategory()) <= 0) {
+            return true;
+        }
+
+        if (isImmune(entity)) {
+            entity.activatedTick = MinecraftServer.currentTick + IMMUNE_TICKS;
+            return true;
+        }
+
+        return false;
+    }
+}
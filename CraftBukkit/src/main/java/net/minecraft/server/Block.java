@@ -1,11 +1,13 @@
 package net.minecraft.server;
 
+import com.google.common.collect.ImmutableSet; // CraftBukkit
 import com.google.common.collect.Sets;
 import com.google.common.collect.UnmodifiableIterator;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Random;
+import java.util.Set; // CraftBukkit
 import javax.annotation.Nullable;
 
 public class Block {
@@ -272,6 +274,12 @@ public class Block {
 
     protected static void a(BlockPosition blockposition, AxisAlignedBB axisalignedbb, List<AxisAlignedBB> list, @Nullable AxisAlignedBB axisalignedbb1) {
         if (axisalignedbb1 != Block.k) {
+            // CraftBukkit start
+            if (list instanceof CollisionBuffer) {
+                ((CollisionBuffer) list).addIntersecting(axisalignedbb1, blockposition, axisalignedbb);
+                return;
+            }
+            // CraftBukkit end
             AxisAlignedBB axisalignedbb2 = axisalignedbb1.a(blockposition);
 
             if (axisalignedbb.c(axisalignedbb2)) {
@@ -288,6 +296,46 @@ public class Block {
         return iblockdata.e(iblockaccess, blockposition);
     }
 
+    // CraftBukkit start - collision shapes ChunkSection can cache, see getCollisionShape()
+    public static final int COLLISION_EMPTY = 0;
+    public static final int COLLISION_FULL = 1;
+    public static final int COLLISION_OTHER = 2;
+    // Blocks returning Block.k from a(IBlockData, IBlockAccess, BlockPosition) whatever the state
+    private static final Set<Class<?>> noCollisionBox = ImmutableSet.<Class<?>>of(BlockAir.class, BlockBanner.class, BlockButtonAbstract.class, BlockEndGateway.class, BlockFire.class, BlockFluids.class, BlockLever.class, BlockMinecartTrackAbstract.class, BlockPlant.class, BlockPortal.class, BlockPressurePlateAbstract.class, BlockRedstoneWire.class, BlockReed.class, BlockSign.class, BlockStructureVoid.class, BlockTorch.class, BlockTripwire.class, BlockTripwireHook.class, BlockVine.class, BlockWeb.class);
+    private int collisionShape = -1;
+
+    /**
+     * Whether this block never collides, always collides as a full cube, or
+     * has to be asked, whatever its state and neighbours. Worked out from
+     * which of the collision methods the block overrides.
+     */
+    public int getCollisionShape() {
+        if (this.collisionShape == -1) {
+            this.collisionShape = findCollisionShape(this.getClass());
+        }
+
+        return this.collisionShape;
+    }
+
+    private static int findCollisionShape(Class<?> oclass) {
+        try {
+            if (oclass.getMethod("a", IBlockData.class, World.class, BlockPosition.class, AxisAlignedBB.class, List.class, Entity.class, boolean.class).getDeclaringClass() != Block.class) {
+                return COLLISION_OTHER;
+            }
+
+            Class<?> oclass1 = oclass.getMethod("a", IBlockData.class, IBlockAccess.class, BlockPosition.class).getDeclaringClass();
+
+            if (oclass1 == Block.class) {
+                return oclass.getMethod("b", IBlockData.class, IBlockAccess.class, BlockPosition.class).getDeclaringClass() == Block.class ? COLLISION_FULL : COLLISION_OTHER;
+            }
+
+            return noCollisionBox.contains(oclass1) ? COLLISION_EMPTY : COLLISION_OTHER;
+        } catch (NoSuchMethodException nosuchmethodexception) {
+            return COLLISION_OTHER;
+        }
+    }
+    // CraftBukkit end
+
     @Deprecated
     public boolean b(IBlockData iblockdata) {
         return true;
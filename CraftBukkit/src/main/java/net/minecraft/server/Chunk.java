@@ -33,6 +33,7 @@ public class Chunk {
     private boolean m;
     public final Map<BlockPosition, TileEntity> tileEntities;
     public final EntitySlice<Entity>[] entitySlices;
+    int collidableEntities; // CraftBukkit - entities others collide with, see Entity.hasCollisionBox
     private boolean done;
     private boolean lit;
     private boolean r;
@@ -161,6 +162,20 @@ public class Chunk {
         return this.sections;
     }
 
+    // CraftBukkit start - see ChunkSection.getCollisionShape
+    int getCollisionShape(int i, int j, int k) {
+        if (j >= 0 && j >> 4 < this.sections.length) {
+            ChunkSection chunksection = this.sections[j >> 4];
+
+            if (chunksection != Chunk.a) {
+                return chunksection.getCollisionShape(i & 15, j & 15, k & 15);
+            }
+        }
+
+        return Block.COLLISION_EMPTY;
+    }
+    // CraftBukkit end
+
     public void initLighting() {
         int i = this.g();
 
@@ -607,7 +622,11 @@ public class Chunk {
         entity.ab = this.locX;
         entity.ac = k;
         entity.ad = this.locZ;
-        this.entitySlices[k].add(entity);
+        // CraftBukkit start
+        if (this.entitySlices[k].add(entity) && entity.hasCollisionBox()) {
+            ++this.collidableEntities;
+        }
+        // CraftBukkit end
     }
 
     public void b(Entity entity) {
@@ -623,7 +642,11 @@ public class Chunk {
             i = this.entitySlices.length - 1;
         }
 
-        this.entitySlices[i].remove(entity);
+        // CraftBukkit start
+        if (this.entitySlices[i].remove(entity) && entity.hasCollisionBox()) {
+            --this.collidableEntities;
+        }
+        // CraftBukkit end
     }
 
     public boolean c(BlockPosition blockposition) {
@@ -1,8 +1,9 @@
 package net.minecraft.server;
 
 import com.google.common.collect.Lists;
-import com.google.common.collect.Sets;
+import it.unimi.dsi.fastutil.longs.Long2LongLinkedOpenHashMap;
 import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.LongIterator;
 import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
 import it.unimi.dsi.fastutil.objects.ObjectIterator;
 import java.io.IOException;
@@ -10,7 +11,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import javax.annotation.Nullable;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -23,7 +24,12 @@ import org.bukkit.event.world.ChunkUnloadEvent;
 public class ChunkProviderServer implements IChunkProvider {
 
     private static final Logger a = LogManager.getLogger();
-    public final Set<Long> unloadQueue = Sets.newHashSet();
+    // CraftBukkit start - chunk key to the tick it was queued, oldest first
+    public final Long2LongLinkedOpenHashMap unloadQueue = new Long2LongLinkedOpenHashMap();
+    private long unloadedChunks;
+    private long deferredChunks;
+    private long resurrectedChunks;
+    // CraftBukkit end
     public final ChunkGenerator chunkGenerator;
     private final IChunkLoader chunkLoader;
     public final Long2ObjectMap<Chunk> chunks = new Long2ObjectOpenHashMap(8192);
@@ -41,7 +47,13 @@ public class ChunkProviderServer implements IChunkProvider {
 
     public void unload(Chunk chunk) {
         if (this.world.worldProvider.c(chunk.locX, chunk.locZ)) {
-            this.unloadQueue.add(Long.valueOf(ChunkCoordIntPair.a(chunk.locX, chunk.locZ)));
+            // CraftBukkit start - keep the place of chunks still waiting, requeue those touched since
+            long i = ChunkCoordIntPair.a(chunk.locX, chunk.locZ);
+
+            if (!chunk.d || !this.unloadQueue.containsKey(i)) {
+                this.unloadQueue.putAndMoveToLast(i, (long) MinecraftServer.currentTick);
+            }
+            // CraftBukkit end
             chunk.d = true;
         }
 
@@ -110,6 +122,20 @@ public class ChunkProviderServer implements IChunkProvider {
     public Chunk getChunkIfLoaded(int x, int z) {
         return chunks.get(ChunkCoordIntPair.a(x, z));
     }
+
+    // Starts loading a chunk near a player in the background so getChunkAt does not block on it later
+    public void prefetchChunk(int i, int j) {
+        // Limits and dedupe before the player and disk checks
+        if (!world.getServer().prefetchChunks || !(this.chunkLoader instanceof ChunkRegionLoader) || this.isLoaded(i, j) || !ChunkIOExecutor.tryPrefetchProbe(world, i, j)) {
+            return;
+        }
+
+        ChunkRegionLoader loader = (ChunkRegionLoader) this.chunkLoader;
+
+        if (world.getPlayerChunkMap().isNearPlayer(i, j) && loader.chunkExists(i, j)) {
+            ChunkIOExecutor.prefetchChunkLoad(world, loader, this, i, j);
+        }
+    }
     // CraftBukkit end
 
     public Chunk getChunkAt(int i, int j) {
@@ -245,24 +271,45 @@ public class ChunkProviderServer implements IChunkProvider {
 
     public boolean unloadChunks() {
         if (!this.world.savingDisabled) {
-            if (!this.unloadQueue.isEmpty()) {
-                Iterator iterator = this.unloadQueue.iterator();
-
-                for (int i = 0; i < 100 && iterator.hasNext(); iterator.remove()) {
-                    Long olong = (Long) iterator.next();
-                    Chunk chunk = (Chunk) this.chunks.get(olong);
-
-                    if (chunk != null && chunk.d) {
-                        // CraftBukkit start - move unload logic to own method
-                        if (!unloadChunk(chunk, true)) {
-                            continue;
-                        }
-                        // CraftBukkit end
-
-                        ++i;
-                    }
+            // CraftBukkit start - unload chunks which have waited out the delay, for as long as the budget allows
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(this.world.getServer().chunkUnloadBudget);
+            long due = (long) (MinecraftServer.currentTick - this.world.getServer().chunkUnloadDelay);
+            int i = 0;
+
+            while (!this.unloadQueue.isEmpty()) {
+                long j = this.unloadQueue.firstLongKey();
+                Chunk chunk = (Chunk) this.chunks.get(j);
+
+                if (chunk == null) {
+                    this.unloadQueue.removeFirstLong();
+                    continue;
+                }
+
+                if (!chunk.d) {
+                    // Touched again while waiting
+                    this.unloadQueue.removeFirstLong();
+                    ++this.resurrectedChunks;
+                    continue;
+                }
+
+                if (this.unloadQueue.get(j) > due) {
+                    break;
+                }
+
+                // Always make some progress, even if a single save takes longer than the budget
+                if (i > 0 && System.nanoTime() >= deadline) {
+                    this.deferredChunks += this.countDue(due);
+                    break;
+                }
+
+                this.unloadQueue.removeFirstLong();
+                // Moved unload logic to own method
+                if (unloadChunk(chunk, true)) {
+                    ++i;
+                    ++this.unloadedChunks;
                 }
             }
+            // CraftBukkit end
 
             this.chunkLoader.b();
         }
@@ -271,6 +318,37 @@ public class ChunkProviderServer implements IChunkProvider {
     }
 
     // CraftBukkit start
+    private int countDue(long due) {
+        LongIterator iterator = this.unloadQueue.values().iterator();
+        int i = 0;
+
+        while (iterator.hasNext() && iterator.nextLong() <= due) {
+            ++i;
+        }
+
+        return i;
+    }
+
+    public long getUnloadedChunks() {
+        return this.unloadedChunks;
+    }
+
+    /**
+     * @return number of times a chunk due to be unloaded had to wait for a
+     *     later tick because the unload budget ran out
+     */
+    public long getDeferredChunks() {
+        return this.deferredChunks;
+    }
+
+    /**
+     * @return number of chunks taken off the unload queue because they were
+     *     used again before their delay ran out
+     */
+    public long getResurrectedChunks() {
+        return this.resurrectedChunks;
+    }
+
     public boolean unloadChunk(Chunk chunk, boolean save) {
         ChunkUnloadEvent event = new ChunkUnloadEvent(chunk.bukkitChunk, save);
         this.world.getServer().getPluginManager().callEvent(event);
@@ -1,24 +1,41 @@
 package net.minecraft.server;
 
 import com.google.common.collect.Maps;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufOutputStream;
+import io.netty.buffer.Unpooled;
 import java.io.DataInputStream;
 import java.io.DataOutput;
-import java.io.DataOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
 import javax.annotation.Nullable;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.bukkit.craftbukkit.chunkio.ChunkSaveExecutor; // CraftBukkit
+import org.bukkit.craftbukkit.util.CompressionBackend; // CraftBukkit
 
 public class ChunkRegionLoader implements IChunkLoader, IAsyncChunkSaver {
 
     private static final Logger a = LogManager.getLogger();
-    private final Map<ChunkCoordIntPair, NBTTagCompound> b = Maps.newConcurrentMap();
+    private final Map<ChunkCoordIntPair, ChunkRegionLoader.QueuedSave> b = Maps.newConcurrentMap(); // CraftBukkit
+    private final Queue<ChunkRegionLoader.QueuedSave> serialized = new ConcurrentLinkedQueue<ChunkRegionLoader.QueuedSave>(); // CraftBukkit
+    // CraftBukkit start - chunks are written out uncompressed here first, then compressed in one go
+    private static final ThreadLocal<ByteBuf> uncompressed = new ThreadLocal<ByteBuf>() {
+        protected ByteBuf initialValue() {
+            return Unpooled.buffer(65536);
+        }
+    };
+    // CraftBukkit end
     // CraftBukkit
     // private final Set<ChunkCoordIntPair> c = Collections.newSetFromMap(Maps.newConcurrentMap());
     private final File d;
@@ -48,7 +65,8 @@ public class ChunkRegionLoader implements IChunkLoader, IAsyncChunkSaver {
     public Object[] loadChunk(World world, int i, int j) throws IOException {
         // CraftBukkit end
         ChunkCoordIntPair chunkcoordintpair = new ChunkCoordIntPair(i, j);
-        NBTTagCompound nbttagcompound = (NBTTagCompound) this.b.get(chunkcoordintpair);
+        ChunkRegionLoader.QueuedSave queuedsave = this.b.get(chunkcoordintpair); // CraftBukkit
+        NBTTagCompound nbttagcompound = queuedsave != null ? queuedsave.compound() : null; // CraftBukkit
 
         if (nbttagcompound == null) {
             // CraftBukkit start
@@ -67,9 +85,9 @@ public class ChunkRegionLoader implements IChunkLoader, IAsyncChunkSaver {
 
     public boolean chunkExists(int i, int j) {
         ChunkCoordIntPair chunkcoordintpair = new ChunkCoordIntPair(i, j);
-        NBTTagCompound nbttagcompound = (NBTTagCompound) this.b.get(chunkcoordintpair);
+        ChunkRegionLoader.QueuedSave queuedsave = this.b.get(chunkcoordintpair); // CraftBukkit
 
-        return nbttagcompound != null ? true : RegionFileCache.chunkExists(this.d, i, j);
+        return queuedsave != null ? true : RegionFileCache.chunkExists(this.d, i, j);
     }
 
     @Nullable
@@ -125,8 +143,15 @@ public class ChunkRegionLoader implements IChunkLoader, IAsyncChunkSaver {
 
             nbttagcompound.set("Level", nbttagcompound1);
             nbttagcompound.setInt("DataVersion", 1343);
-            this.saveBody(chunk, world, nbttagcompound1);
-            this.a(chunk.k(), nbttagcompound);
+            // CraftBukkit start - only copy the sections here, the save pipeline turns them into NBT
+            if (world.getServer().snapshotChunkSections) {
+                this.saveBody(chunk, world, nbttagcompound1, false);
+                this.a(chunk.k(), nbttagcompound, snapshotSections(chunk.getSections()), world.worldProvider.m());
+            } else {
+                this.saveBody(chunk, world, nbttagcompound1, true);
+                this.a(chunk.k(), nbttagcompound);
+            }
+            // CraftBukkit end
         } catch (Exception exception) {
             ChunkRegionLoader.a.error("Failed to save chunk", exception);
         }
@@ -134,23 +159,62 @@ public class ChunkRegionLoader implements IChunkLoader, IAsyncChunkSaver {
     }
 
     protected void a(ChunkCoordIntPair chunkcoordintpair, NBTTagCompound nbttagcompound) {
-        // CraftBukkit
-        // if (!this.c.contains(chunkcoordintpair))
-        {
-            this.b.put(chunkcoordintpair, nbttagcompound);
-        }
+        // CraftBukkit start
+        this.a(chunkcoordintpair, nbttagcompound, null, false);
+    }
+
+    private void a(ChunkCoordIntPair chunkcoordintpair, NBTTagCompound nbttagcompound, @Nullable ChunkSection[] achunksection, boolean flag) {
+        // Hand the snapshot to the save pipeline, replacing any older save of this chunk
+        ChunkSaveExecutor.awaitCapacity();
+
+        final ChunkRegionLoader.QueuedSave queuedsave = new ChunkRegionLoader.QueuedSave(chunkcoordintpair, nbttagcompound, achunksection, flag);
+
+        ChunkSaveExecutor.chunkQueued(this.b.put(chunkcoordintpair, queuedsave) != null);
+        ChunkSaveExecutor.submit(new Runnable() {
+            public void run() {
+                ChunkRegionLoader.this.serialize(queuedsave);
+            }
+        });
+        // CraftBukkit end
 
         FileIOThread.a().a(this);
     }
 
+    // CraftBukkit start
+    private boolean serialize(ChunkRegionLoader.QueuedSave queuedsave) {
+        if (!queuedsave.claimed.compareAndSet(false, true)) {
+            return false;
+        }
+
+        if (this.b.get(queuedsave.coords) != queuedsave) {
+            // A newer save of this chunk has been queued, don't bother compressing this one
+            return true;
+        }
+
+        try {
+            ByteBuf bytebuf = ChunkRegionLoader.uncompressed.get();
+            ByteBuf bytebuf1 = Unpooled.buffer(8096);
+
+            bytebuf.clear();
+            NBTCompressedStreamTools.a(queuedsave.compound(), (DataOutput) new ByteBufOutputStream(bytebuf));
+            CompressionBackend.get().deflate(bytebuf, bytebuf1);
+            queuedsave.data = bytebuf1.array();
+            queuedsave.length = bytebuf1.writerIndex();
+        } catch (Exception exception) {
+            ChunkRegionLoader.a.error("Failed to save chunk", exception);
+        }
+
+        ChunkSaveExecutor.chunkSerialized(queuedsave.length);
+        this.serialized.add(queuedsave);
+        return true;
+    }
+
     public boolean a() {
-        // CraftBukkit start
         return this.processSaveQueueEntry(false);
     }
 
     private synchronized boolean processSaveQueueEntry(boolean logCompletion) {
-        Iterator<Map.Entry<ChunkCoordIntPair, NBTTagCompound>> iter = this.b.entrySet().iterator();
-        if (!iter.hasNext()) {
+        if (this.b.isEmpty()) {
             if (logCompletion) {
                 // CraftBukkit end
                 ChunkRegionLoader.a.info("ThreadedAnvilChunkStorage ({}): All chunks are saved", this.d.getName());
@@ -159,46 +223,104 @@ public class ChunkRegionLoader implements IChunkLoader, IAsyncChunkSaver {
             return false;
         } else {
             // CraftBukkit start
-            Map.Entry<ChunkCoordIntPair, NBTTagCompound> entry = iter.next();
-            ChunkCoordIntPair chunkcoordintpair = entry.getKey();
-            NBTTagCompound nbttagcompound = entry.getValue();
-            // CraftBukkit end
+            if (this.serialized.isEmpty()) {
+                // The pool is behind or we are flushing, compress a chunk on this thread
+                Iterator<ChunkRegionLoader.QueuedSave> iterator = this.b.values().iterator();
+
+                while (iterator.hasNext() && !this.serialize(iterator.next())) {
+                    ;
+                }
+            }
 
-            boolean flag;
+            List<ChunkRegionLoader.QueuedSave> batch = new ArrayList<ChunkRegionLoader.QueuedSave>();
+            ChunkRegionLoader.QueuedSave queuedsave;
 
-            try {
-                // this.c.add(chunkcoordintpair);
-                // NBTTagCompound nbttagcompound = (NBTTagCompound) this.b.remove(chunkcoordintpair);
-                // CraftBukkit
+            while ((queuedsave = this.serialized.poll()) != null) {
+                batch.add(queuedsave);
+            }
 
-                if (nbttagcompound != null) {
-                    try {
-                        this.b(chunkcoordintpair, nbttagcompound);
-                    } catch (Exception exception) {
-                        ChunkRegionLoader.a.error("Failed to save chunk", exception);
-                    }
+            // Group the batch by region file, then by position within the region
+            Collections.sort(batch, ChunkRegionLoader.QueuedSave.REGION_ORDER);
+
+            for (int i = 0; i < batch.size(); ++i) {
+                queuedsave = batch.get(i);
+                ChunkCoordIntPair chunkcoordintpair = queuedsave.coords;
+
+                if (this.b.get(chunkcoordintpair) != queuedsave) {
+                    ChunkSaveExecutor.chunkDropped(queuedsave.length);
+                    continue;
                 }
 
-                flag = true;
-            } finally {
-                this.b.remove(chunkcoordintpair, nbttagcompound); // CraftBukkit
+                try {
+                    if (queuedsave.data != null) {
+                        RegionFileCache.writeCompressed(this.d, chunkcoordintpair.x, chunkcoordintpair.z, queuedsave.data, queuedsave.length);
+                    }
+                } catch (Exception exception) {
+                    ChunkRegionLoader.a.error("Failed to save chunk", exception);
+                } finally {
+                    if (this.b.remove(chunkcoordintpair, queuedsave)) {
+                        ChunkSaveExecutor.chunkWritten(queuedsave.length, queuedsave.queued);
+                    } else {
+                        ChunkSaveExecutor.chunkDropped(queuedsave.length);
+                    }
+                }
             }
 
-            return flag;
+            return true;
+            // CraftBukkit end
         }
     }
 
-    private void b(ChunkCoordIntPair chunkcoordintpair, NBTTagCompound nbttagcompound) throws IOException {
-        // CraftBukkit start
-        RegionFileCache.e(this.d, chunkcoordintpair.x, chunkcoordintpair.z, nbttagcompound);
+    // CraftBukkit start
+    private static class QueuedSave {
 
-        /*
-        NBTCompressedStreamTools.a(nbttagcompound, (DataOutput) dataoutputstream);
-        dataoutputstream.close();
-        */
-        // CraftBukkit end
+        private static final Comparator<ChunkRegionLoader.QueuedSave> REGION_ORDER = new Comparator<ChunkRegionLoader.QueuedSave>() {
+            public int compare(ChunkRegionLoader.QueuedSave queuedsave, ChunkRegionLoader.QueuedSave queuedsave1) {
+                int i = Integer.compare(queuedsave.coords.x >> 5, queuedsave1.coords.x >> 5);
+
+                if (i == 0) {
+                    i = Integer.compare(queuedsave.coords.z >> 5, queuedsave1.coords.z >> 5);
+                }
+
+                if (i == 0) {
+                    i = Integer.compare((queuedsave.coords.x & 31) + (queuedsave.coords.z & 31) * 32, (queuedsave1.coords.x & 31) + (queuedsave1.coords.z & 31) * 32);
+                }
+
+                return i;
+            }
+        };
+
+        private final ChunkCoordIntPair coords;
+        private final NBTTagCompound compound;
+        private final long queued = System.nanoTime();
+        private final AtomicBoolean claimed = new AtomicBoolean();
+        // Section snapshots still to be turned into NBT, null once the compound is complete
+        private ChunkSection[] sections;
+        private final boolean skylight;
+        // Written by the serializing thread before being published through the serialized queue
+        private byte[] data;
+        private int length;
+
+        private QueuedSave(ChunkCoordIntPair chunkcoordintpair, NBTTagCompound nbttagcompound, @Nullable ChunkSection[] achunksection, boolean flag) {
+            this.coords = chunkcoordintpair;
+            this.compound = nbttagcompound;
+            this.sections = achunksection;
+            this.skylight = flag;
+        }
+
+        // Loads of a queued chunk may need the compound before the pool got to it
+        private synchronized NBTTagCompound compound() {
+            if (this.sections != null) {
+                this.compound.getCompound("Level").set("Sections", ChunkRegionLoader.saveSections(this.sections, this.skylight));
+                this.sections = null;
+            }
+
+            return this.compound;
+        }
     }
 
+    // CraftBukkit end
+
     public void b(World world, Chunk chunk) throws IOException {}
 
     public void b() {}
@@ -249,7 +371,7 @@ public class ChunkRegionLoader implements IChunkLoader, IAsyncChunkSaver {
         });
     }
 
-    private void saveBody(Chunk chunk, World world, NBTTagCompound nbttagcompound) {
+    private void saveBody(Chunk chunk, World world, NBTTagCompound nbttagcompound, boolean saveSections) { // CraftBukkit - add saveSections
         nbttagcompound.setInt("xPos", chunk.locX);
         nbttagcompound.setInt("zPos", chunk.locZ);
         nbttagcompound.setLong("LastUpdate", world.getTime());
@@ -257,49 +379,19 @@ public class ChunkRegionLoader implements IChunkLoader, IAsyncChunkSaver {
         nbttagcompound.setBoolean("TerrainPopulated", chunk.isDone());
         nbttagcompound.setBoolean("LightPopulated", chunk.v());
         nbttagcompound.setLong("InhabitedTime", chunk.x());
-        ChunkSection[] achunksection = chunk.getSections();
-        NBTTagList nbttaglist = new NBTTagList();
-        boolean flag = world.worldProvider.m();
-        ChunkSection[] achunksection1 = achunksection;
-        int i = achunksection.length;
-
-        NBTTagCompound nbttagcompound1;
-
-        for (int j = 0; j < i; ++j) {
-            ChunkSection chunksection = achunksection1[j];
-
-            if (chunksection != Chunk.a) {
-                nbttagcompound1 = new NBTTagCompound();
-                nbttagcompound1.setByte("Y", (byte) (chunksection.getYPosition() >> 4 & 255));
-                byte[] abyte = new byte[4096];
-                NibbleArray nibblearray = new NibbleArray();
-                NibbleArray nibblearray1 = chunksection.getBlocks().exportData(abyte, nibblearray);
-
-                nbttagcompound1.setByteArray("Blocks", abyte);
-                nbttagcompound1.setByteArray("Data", nibblearray.asBytes());
-                if (nibblearray1 != null) {
-                    nbttagcompound1.setByteArray("Add", nibblearray1.asBytes());
-                }
-
-                nbttagcompound1.setByteArray("BlockLight", chunksection.getEmittedLightArray().asBytes());
-                if (flag) {
-                    nbttagcompound1.setByteArray("SkyLight", chunksection.getSkyLightArray().asBytes());
-                } else {
-                    nbttagcompound1.setByteArray("SkyLight", new byte[chunksection.getEmittedLightArray().asBytes().length]);
-                }
-
-                nbttaglist.add(nbttagcompound1);
-            }
+        // CraftBukkit start - sections may be serialized later from a snapshot
+        if (saveSections) {
+            nbttagcompound.set("Sections", saveSections(chunk.getSections(), world.worldProvider.m()));
         }
-
-        nbttagcompound.set("Sections", nbttaglist);
+        // CraftBukkit end
         nbttagcompound.setByteArray("Biomes", chunk.getBiomeIndex());
         chunk.g(false);
         NBTTagList nbttaglist1 = new NBTTagList();
 
         Iterator iterator;
+        NBTTagCompound nbttagcompound1; // CraftBukkit
 
-        for (i = 0; i < chunk.getEntitySlices().length; ++i) {
+        for (int i = 0; i < chunk.getEntitySlices().length; ++i) { // CraftBukkit - declare i
             iterator = chunk.getEntitySlices()[i].iterator();
 
             while (iterator.hasNext()) {
@@ -352,6 +444,57 @@ public class ChunkRegionLoader implements IChunkLoader, IAsyncChunkSaver {
 
     }
 
+    // CraftBukkit start - split out of saveBody so snapshots can be serialized off the main thread
+    public static NBTTagList saveSections(ChunkSection[] achunksection, boolean flag) {
+        NBTTagList nbttaglist = new NBTTagList();
+        ChunkSection[] achunksection1 = achunksection;
+        int i = achunksection.length;
+
+        NBTTagCompound nbttagcompound1;
+
+        for (int j = 0; j < i; ++j) {
+            ChunkSection chunksection = achunksection1[j];
+
+            if (chunksection != Chunk.a) {
+                nbttagcompound1 = new NBTTagCompound();
+                nbttagcompound1.setByte("Y", (byte) (chunksection.getYPosition() >> 4 & 255));
+                byte[] abyte = new byte[4096];
+                NibbleArray nibblearray = new NibbleArray();
+                NibbleArray nibblearray1 = chunksection.getBlocks().exportData(abyte, nibblearray);
+
+                nbttagcompound1.setByteArray("Blocks", abyte);
+                nbttagcompound1.setByteArray("Data", nibblearray.asBytes());
+                if (nibblearray1 != null) {
+                    nbttagcompound1.setByteArray("Add", nibblearray1.asBytes());
+                }
+
+                nbttagcompound1.setByteArray("BlockLight", chunksection.getEmittedLightArray().asBytes());
+                if (flag) {
+                    nbttagcompound1.setByteArray("SkyLight", chunksection.getSkyLightArray().asBytes());
+                } else {
+                    nbttagcompound1.setByteArray("SkyLight", new byte[chunksection.getEmittedLightArray().asBytes().length]);
+                }
+
+                nbttaglist.add(nbttagcompound1);
+            }
+        }
+
+        return nbttaglist;
+    }
+
+    private static ChunkSection[] snapshotSections(ChunkSection[] achunksection) {
+        ChunkSection[] achunksection1 = new ChunkSection[achunksection.length];
+
+        for (int i = 0; i < achunksection.length; ++i) {
+            if (achunksection[i] != Chunk.a) {
+                achunksection1[i] = achunksection[i].snapshot();
+            }
+        }
+
+        return achunksection1;
+    }
+    // CraftBukkit end
+
     private Chunk a(World world, NBTTagCompound nbttagcompound) {
         int i = nbttagcompound.getInt("xPos");
         int j = nbttagcompound.getInt("zPos");
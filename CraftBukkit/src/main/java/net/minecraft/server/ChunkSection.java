@@ -8,6 +8,7 @@ public class ChunkSection {
     private final DataPaletteBlock blockIds;
     private NibbleArray emittedLight;
     private NibbleArray skyLight;
+    private int version; // CraftBukkit - bumped on every change to blocks or light
 
     public ChunkSection(int i, boolean flag) {
         this.yPos = i;
@@ -35,6 +36,58 @@ public class ChunkSection {
         }
         recalcBlockCounts();
     }
+
+    private ChunkSection(ChunkSection chunksection) {
+        this.yPos = chunksection.yPos;
+        this.nonEmptyBlockCount = chunksection.nonEmptyBlockCount;
+        this.tickingBlockCount = chunksection.tickingBlockCount;
+        this.blockIds = chunksection.blockIds.snapshot();
+        this.emittedLight = new NibbleArray(chunksection.emittedLight.asBytes().clone());
+        if (chunksection.skyLight != null) {
+            this.skyLight = new NibbleArray(chunksection.skyLight.asBytes().clone());
+        }
+    }
+
+    /**
+     * Copies the block storage and light of this section so it can be
+     * serialized by another thread while the original keeps changing.
+     */
+    public ChunkSection snapshot() {
+        return new ChunkSection(this);
+    }
+
+    public int getVersion() {
+        return this.version;
+    }
+
+    // Bits for the blocks colliding as full cubes, then for the blocks that have to be asked; built when first needed
+    private long[] collisionShapes;
+
+    int getCollisionShape(int i, int j, int k) {
+        long[] along = this.collisionShapes;
+
+        if (along == null) {
+            along = this.collisionShapes = new long[128];
+            for (int l = 0; l < 4096; ++l) {
+                this.setCollisionShape(along, l, this.blockIds.a(l & 15, l >> 8, l >> 4 & 15));
+            }
+        }
+
+        int l = j << 8 | k << 4 | i;
+
+        if ((along[l >> 6] & 1L << l) != 0L) {
+            return Block.COLLISION_FULL;
+        }
+        return (along[64 + (l >> 6)] & 1L << l) != 0L ? Block.COLLISION_OTHER : Block.COLLISION_EMPTY;
+    }
+
+    private void setCollisionShape(long[] along, int i, IBlockData iblockdata) {
+        int j = iblockdata.getBlock().getCollisionShape();
+        long l = 1L << i;
+
+        along[i >> 6] = j == Block.COLLISION_FULL ? along[i >> 6] | l : along[i >> 6] & ~l;
+        along[64 + (i >> 6)] = j == Block.COLLISION_OTHER ? along[64 + (i >> 6)] | l : along[64 + (i >> 6)] & ~l;
+    }
     // CraftBukkit end
 
     public IBlockData getType(int i, int j, int k) {
@@ -61,6 +114,12 @@ public class ChunkSection {
         }
 
         this.blockIds.setBlock(i, j, k, iblockdata);
+        // CraftBukkit start
+        ++this.version;
+        if (this.collisionShapes != null) {
+            this.setCollisionShape(this.collisionShapes, j << 8 | k << 4 | i, iblockdata);
+        }
+        // CraftBukkit end
     }
 
     public boolean a() {
@@ -77,6 +136,7 @@ public class ChunkSection {
 
     public void a(int i, int j, int k, int l) {
         this.skyLight.a(i, j, k, l);
+        ++this.version; // CraftBukkit
     }
 
     public int b(int i, int j, int k) {
@@ -85,6 +145,7 @@ public class ChunkSection {
 
     public void b(int i, int j, int k, int l) {
         this.emittedLight.a(i, j, k, l);
+        ++this.version; // CraftBukkit
     }
 
     public int c(int i, int j, int k) {
@@ -126,9 +187,11 @@ public class ChunkSection {
 
     public void a(NibbleArray nibblearray) {
         this.emittedLight = nibblearray;
+        ++this.version; // CraftBukkit
     }
 
     public void b(NibbleArray nibblearray) {
         this.skyLight = nibblearray;
+        ++this.version; // CraftBukkit
     }
 }
@@ -0,0 +1,175 @@
+package net.minecraft.server;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Collision boxes kept as plain coordinates, so that a collision query can
+ * be answered without creating a box for every block it touches. Used like
+ * the list {@link World#getCubes(Entity, AxisAlignedBB)} returns, but
+ * {@link #get(int)} creates a box each time; hot callers use the offset
+ * methods instead, which work the same as those on {@link AxisAlignedBB}.
+ */
+public class CollisionBuffer extends AbstractList<AxisAlignedBB> {
+
+    private static final ThreadLocal<CollisionBuffer[]> buffers = new ThreadLocal<CollisionBuffer[]>() {
+        @Override
+        protected CollisionBuffer[] initialValue() {
+            return new CollisionBuffer[] { new CollisionBuffer(), new CollisionBuffer() };
+        }
+    };
+
+    private double[] boxes = new double[6 * 16];
+    private int size;
+    final List<Entity> entities = new ArrayList<Entity>(); // scratch for the entity scan in World.getCubes
+
+    /**
+     * The current thread's buffers. There are two so that a query can be
+     * made while the result of another is still being used, as entity
+     * movement does when stepping up.
+     */
+    public static CollisionBuffer local(int i) {
+        return buffers.get()[i];
+    }
+
+    @Override
+    public AxisAlignedBB get(int i) {
+        if (i < 0 || i >= size) {
+            throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + size);
+        }
+
+        int j = i * 6;
+        return new AxisAlignedBB(boxes[j], boxes[j + 1], boxes[j + 2], boxes[j + 3], boxes[j + 4], boxes[j + 5]);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean add(AxisAlignedBB axisalignedbb) {
+        add(axisalignedbb.a, axisalignedbb.b, axisalignedbb.c, axisalignedbb.d, axisalignedbb.e, axisalignedbb.f);
+        return true;
+    }
+
+    public void add(double minX, double minY, double minZ, double maxX, double maxY, double maxZ) {
+        int j = size * 6;
+
+        if (j == boxes.length) {
+            boxes = Arrays.copyOf(boxes, j * 2);
+        }
+
+        boxes[j] = minX;
+        boxes[j + 1] = minY;
+        boxes[j + 2] = minZ;
+        boxes[j + 3] = maxX;
+        boxes[j + 4] = maxY;
+        boxes[j + 5] = maxZ;
+        size++;
+        modCount++;
+    }
+
+    /**
+     * Adds the block shape moved to the position, if it intersects the
+     * query box. Same as Block's helper, without creating the moved box.
+     */
+    public void addIntersecting(AxisAlignedBB shape, BlockPosition blockposition, AxisAlignedBB query) {
+        double x = blockposition.getX();
+        double y = blockposition.getY();
+        double z = blockposition.getZ();
+        double minX = shape.a + x;
+        double minY = shape.b + y;
+        double minZ = shape.c + z;
+        double maxX = shape.d + x;
+        double maxY = shape.e + y;
+        double maxZ = shape.f + z;
+
+        if (query.a(minX, minY, minZ, maxX, maxY, maxZ)) {
+            add(minX, minY, minZ, maxX, maxY, maxZ);
+        }
+    }
+
+    @Override
+    public void clear() {
+        size = 0;
+        modCount++;
+    }
+
+    /**
+     * @see AxisAlignedBB#a(AxisAlignedBB, double)
+     */
+    public double offsetX(AxisAlignedBB other, double d0) {
+        for (int i = 0, j = 0; i < size; i++, j += 6) {
+            if (other.e > boxes[j + 1] && other.b < boxes[j + 4] && other.f > boxes[j + 2] && other.c < boxes[j + 5]) {
+                if (d0 > 0.0D && other.d <= boxes[j]) {
+                    double d1 = boxes[j] - other.d;
+
+                    if (d1 < d0) {
+                        d0 = d1;
+                    }
+                } else if (d0 < 0.0D && other.a >= boxes[j + 3]) {
+                    double d1 = boxes[j + 3] - other.a;
+
+                    if (d1 > d0) {
+                        d0 = d1;
+                    }
+                }
+            }
+        }
+
+        return d0;
+    }
+
+    /**
+     * @see AxisAlignedBB#b(AxisAlignedBB, double)
+     */
+    public double offsetY(AxisAlignedBB other, double d0) {
+        for (int i = 0, j = 0; i < size; i++, j += 6) {
+            if (other.d > boxes[j] && other.a < boxes[j + 3] && other.f > boxes[j + 2] && other.c < boxes[j + 5]) {
+                if (d0 > 0.0D && other.e <= boxes[j + 1]) {
+                    double d1 = boxes[j + 1] - other.e;
+
+                    if (d1 < d0) {
+                        d0 = d1;
+                    }
+                } else if (d0 < 0.0D && other.b >= boxes[j + 4]) {
+                    double d1 = boxes[j + 4] - other.b;
+
+                    if (d1 > d0) {
+                        d0 = d1;
+                    }
+                }
+            }
+        }
+
+        return d0;
+    }
+
+    /**
+     * @see AxisAlignedBB#c(AxisAlignedBB, double)
+     */
+    public double offsetZ(AxisAlignedBB other, double d0) {
+        for (int i = 0, j = 0; i < size; i++, j += 6) {
+            if (other.d > boxes[j] && other.a < boxes[j + 3] && other.e > boxes[j + 1] && other.b < boxes[j + 4]) {
+                if (d0 > 0.0D && other.f <= boxes[j + 2]) {
+                    double d1 = boxes[j + 2] - other.f;
+
+                    if (d1 < d0) {
+                        d0 = d1;
+                    }
+                } else if (d0 < 0.0D && other.c >= boxes[j + 5]) {
+                    double d1 = boxes[j + 5] - other.c;
+
+                    if (d1 > d0) {
+                        d0 = d1;
+                    }
+                }
+            }
+        }
+
+        return d0;
+    }
+}
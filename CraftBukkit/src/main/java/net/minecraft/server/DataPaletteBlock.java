@@ -134,4 +134,27 @@ public class DataPaletteBlock implements DataPaletteExpandable {
     public int a() {
         return 1 + this.c.a() + PacketDataSerializer.a(this.b.b()) + this.b.a().length * 8;
     }
+
+    // CraftBukkit start - detached copy of the storage, used to serialize chunks off the main thread
+    public DataPaletteBlock snapshot() {
+        DataPaletteBlock datapaletteblock = new DataPaletteBlock();
+
+        datapaletteblock.b(this.e);
+        if (this.c != DataPaletteBlock.d) {
+            // Palette ids are handed out in insertion order, re-adding them in order keeps every id the same
+            for (int i = 0; i < 1 << this.e; ++i) {
+                IBlockData iblockdata = this.c.a(i);
+
+                if (iblockdata == null) {
+                    break;
+                }
+
+                datapaletteblock.c.a(iblockdata);
+            }
+        }
+
+        System.arraycopy(this.b.a(), 0, datapaletteblock.b.a(), 0, this.b.a().length);
+        return datapaletteblock;
+    }
+    // CraftBukkit end
 }
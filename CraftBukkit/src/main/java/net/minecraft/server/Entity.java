@@ -154,6 +154,21 @@ public abstract class Entity implements ICommandListener {
     // craft entity (shooter) to ProjectileSource
     public org.bukkit.projectiles.ProjectileSource projectileSource; // For projectiles only
     public boolean forceExplosionKnockback; // SPIGOT-949
+    public int activatedTick = Integer.MIN_VALUE; // last tick this entity is active until, see ActivationRange
+    private byte activationCategory;
+
+    public byte getActivationCategory() {
+        if (this.activationCategory == 0) {
+            this.activationCategory = ActivationRange.getCategory(this);
+        }
+        return this.activationCategory;
+    }
+
+    /**
+     * Called instead of the full tick while no player is in range. Only
+     * advances timers that must keep counting, such as despawn timers.
+     */
+    public void inactiveTick() {}
 
     public float getBukkitYaw() {
         return this.yaw;
@@ -532,7 +547,7 @@ public abstract class Entity implements ICommandListener {
     }
 
     private boolean b(AxisAlignedBB axisalignedbb) {
-        return this.world.getCubes(this, axisalignedbb).isEmpty() && !this.world.containsLiquid(axisalignedbb);
+        return this.world.getCubes(this, axisalignedbb, CollisionBuffer.local(0)).isEmpty() && !this.world.containsLiquid(axisalignedbb); // CraftBukkit
     }
 
     public void move(EnumMoveType enummovetype, double d0, double d1, double d2) {
@@ -621,7 +636,7 @@ public abstract class Entity implements ICommandListener {
             double d9 = d2;
 
             if ((enummovetype == EnumMoveType.SELF || enummovetype == EnumMoveType.PLAYER) && this.onGround && this.isSneaking() && this instanceof EntityHuman) {
-                for (double d10 = 0.05D; d0 != 0.0D && this.world.getCubes(this, this.getBoundingBox().d(d0, (double) (-this.P), 0.0D)).isEmpty(); d7 = d0) {
+                for (double d10 = 0.05D; d0 != 0.0D && this.world.getCubes(this, this.getBoundingBox().d(d0, (double) (-this.P), 0.0D), CollisionBuffer.local(0)).isEmpty(); d7 = d0) { // CraftBukkit
                     if (d0 < 0.05D && d0 >= -0.05D) {
                         d0 = 0.0D;
                     } else if (d0 > 0.0D) {
@@ -631,7 +646,7 @@ public abstract class Entity implements ICommandListener {
                     }
                 }
 
-                for (; d2 != 0.0D && this.world.getCubes(this, this.getBoundingBox().d(0.0D, (double) (-this.P), d2)).isEmpty(); d9 = d2) {
+                for (; d2 != 0.0D && this.world.getCubes(this, this.getBoundingBox().d(0.0D, (double) (-this.P), d2), CollisionBuffer.local(0)).isEmpty(); d9 = d2) { // CraftBukkit
                     if (d2 < 0.05D && d2 >= -0.05D) {
                         d2 = 0.0D;
                     } else if (d2 > 0.0D) {
@@ -641,7 +656,7 @@ public abstract class Entity implements ICommandListener {
                     }
                 }
 
-                for (; d0 != 0.0D && d2 != 0.0D && this.world.getCubes(this, this.getBoundingBox().d(d0, (double) (-this.P), d2)).isEmpty(); d9 = d2) {
+                for (; d0 != 0.0D && d2 != 0.0D && this.world.getCubes(this, this.getBoundingBox().d(d0, (double) (-this.P), d2), CollisionBuffer.local(0)).isEmpty(); d9 = d2) { // CraftBukkit
                     if (d0 < 0.05D && d0 >= -0.05D) {
                         d0 = 0.0D;
                     } else if (d0 > 0.0D) {
@@ -661,28 +676,19 @@ public abstract class Entity implements ICommandListener {
                 }
             }
 
-            List list = this.world.getCubes(this, this.getBoundingBox().b(d0, d1, d2));
+            CollisionBuffer list = this.world.getCubes(this, this.getBoundingBox().b(d0, d1, d2), CollisionBuffer.local(0)); // CraftBukkit
             AxisAlignedBB axisalignedbb = this.getBoundingBox();
-            int k;
             int l;
 
             // Y
             if (d1 != 0.0D) {
-                k = 0;
-
-                for (l = list.size(); k < l; ++k) {
-                    d1 = ((AxisAlignedBB) list.get(k)).b(this.getBoundingBox(), d1);
-                }
+                d1 = list.offsetY(this.getBoundingBox(), d1); // CraftBukkit
 
                 this.a(this.getBoundingBox().d(0.0D, d1, 0.0D));
             }
             // X
             if (d0 != 0.0D) {
-                k = 0;
-
-                for (l = list.size(); k < l; ++k) {
-                    d0 = ((AxisAlignedBB) list.get(k)).a(this.getBoundingBox(), d0);
-                }
+                d0 = list.offsetX(this.getBoundingBox(), d0); // CraftBukkit
 
                 if (d0 != 0.0D) {
                     this.a(this.getBoundingBox().d(d0, 0.0D, 0.0D));
@@ -690,11 +696,7 @@ public abstract class Entity implements ICommandListener {
             }
             // Z
             if (d2 != 0.0D) {
-                k = 0;
-
-                for (l = list.size(); k < l; ++k) {
-                    d2 = ((AxisAlignedBB) list.get(k)).c(this.getBoundingBox(), d2);
-                }
+                d2 = list.offsetZ(this.getBoundingBox(), d2); // CraftBukkit
 
                 if (d2 != 0.0D) {
                     this.a(this.getBoundingBox().d(0.0D, 0.0D, d2));
@@ -717,7 +719,7 @@ public abstract class Entity implements ICommandListener {
 
                 this.a(axisalignedbb);
                 d1 = (double) this.P;
-                List list1 = this.world.getCubes(this, this.getBoundingBox().b(d7, d1, d9));
+                CollisionBuffer list1 = this.world.getCubes(this, this.getBoundingBox().b(d7, d1, d9), CollisionBuffer.local(1)); // CraftBukkit
 
                 /////
 
@@ -725,30 +727,15 @@ public abstract class Entity implements ICommandListener {
 
                 AxisAlignedBB axisalignedbb3 = axisalignedbb2.b(d7, 0.0D, d9);
 
-                d11 = d1;
-                int i1 = 0;
-
-                for (int j1 = list1.size(); i1 < j1; ++i1) {
-                    d11 = ((AxisAlignedBB) list1.get(i1)).b(axisalignedbb3, d11);
-                }
+                d11 = list1.offsetY(axisalignedbb3, d1); // CraftBukkit
 
                 axisalignedbb2 = axisalignedbb2.d(0.0D, d11, 0.0D);
 
-                double d15 = d7;
-                int k1 = 0;
-
-                for (int l1 = list1.size(); k1 < l1; ++k1) {
-                    d15 = ((AxisAlignedBB) list1.get(k1)).a(axisalignedbb2, d15);
-                }
+                double d15 = list1.offsetX(axisalignedbb2, d7); // CraftBukkit
 
                 axisalignedbb2 = axisalignedbb2.d(d15, 0.0D, 0.0D);
 
-                double d16 = d9;
-                int i2 = 0;
-
-                for (int j2 = list1.size(); i2 < j2; ++i2) {
-                    d16 = ((AxisAlignedBB) list1.get(i2)).c(axisalignedbb2, d16);
-                }
+                double d16 = list1.offsetZ(axisalignedbb2, d9); // CraftBukkit
 
                 axisalignedbb2 = axisalignedbb2.d(0.0D, 0.0D, d16);
 
@@ -756,30 +743,15 @@ public abstract class Entity implements ICommandListener {
                 /////  axisalignedbb4
                 AxisAlignedBB axisalignedbb4 = this.getBoundingBox();
 
-                double d17 = d1;
-                int k2 = 0;
-
-                for (int l2 = list1.size(); k2 < l2; ++k2) {
-                    d17 = ((AxisAlignedBB) list1.get(k2)).b(axisalignedbb4, d17);  //
-                }
+                double d17 = list1.offsetY(axisalignedbb4, d1); // CraftBukkit
 
                 axisalignedbb4 = axisalignedbb4.d(0.0D, d17, 0.0D);
 
-                double d18 = d7;
-                int i3 = 0;
-
-                for (int j3 = list1.size(); i3 < j3; ++i3) {
-                    d18 = ((AxisAlignedBB) list1.get(i3)).a(axisalignedbb4, d18);
-                }
+                double d18 = list1.offsetX(axisalignedbb4, d7); // CraftBukkit
 
                 axisalignedbb4 = axisalignedbb4.d(d18, 0.0D, 0.0D);
 
-                double d19 = d9;
-                int k3 = 0;
-
-                for (int l3 = list1.size(); k3 < l3; ++k3) {
-                    d19 = ((AxisAlignedBB) list1.get(k3)).c(axisalignedbb4, d19);
-                }
+                double d19 = list1.offsetZ(axisalignedbb4, d9); // CraftBukkit
 
                 axisalignedbb4 = axisalignedbb4.d(0.0D, 0.0D, d19);
 
@@ -800,11 +772,7 @@ public abstract class Entity implements ICommandListener {
                     this.a(axisalignedbb4);
                 }
 
-                int i4 = 0;
-
-                for (int j4 = list1.size(); i4 < j4; ++i4) {
-                    d1 = ((AxisAlignedBB) list1.get(i4)).b(this.getBoundingBox(), d1);  //
-                }
+                d1 = list1.offsetY(this.getBoundingBox(), d1); // CraftBukkit
 
                 this.a(this.getBoundingBox().d(0.0D, d1, 0.0D));
                 if (d12 * d12 + d14 * d14 >= d0 * d0 + d2 * d2) {
@@ -1075,6 +1043,18 @@ public abstract class Entity implements ICommandListener {
         return null;
     }
 
+    // CraftBukkit start - let World.getCubes skip looking for entities when nothing can be collided with
+    // Has to be true for anything overriding al()
+    public boolean hasCollisionBox() {
+        return false;
+    }
+
+    // Has to be true for anything overriding j(Entity)
+    public boolean collidesWithEntities() {
+        return false;
+    }
+    // CraftBukkit end
+
     protected void burn(float i) { // CraftBukkit - int -> float
         if (!this.fireProof) {
             this.damageEntity(DamageSource.FIRE, (float) i);
@@ -140,21 +140,35 @@ public abstract class EntityAgeable extends EntityCreature {
                 --this.c;
             }
         } else {
-            int i = this.getAge();
+            this.tickAge(); // CraftBukkit - moved to method
+        }
 
-            if (i < 0) {
-                ++i;
-                this.setAgeRaw(i);
-                if (i == 0) {
-                    this.p();
-                }
-            } else if (i > 0) {
-                --i;
-                this.setAgeRaw(i);
+    }
+
+    // CraftBukkit start - babies keep growing up and breeding cooldowns keep running while inactive
+    private void tickAge() {
+        int i = this.getAge();
+
+        if (i < 0) {
+            ++i;
+            this.setAgeRaw(i);
+            if (i == 0) {
+                this.p();
             }
+        } else if (i > 0) {
+            --i;
+            this.setAgeRaw(i);
         }
+    }
 
+    @Override
+    public void inactiveTick() {
+        super.inactiveTick();
+        if (!this.world.isClientSide && !this.ageLocked) {
+            this.tickAge();
+        }
     }
+    // CraftBukkit end
 
     protected void p() {}
 
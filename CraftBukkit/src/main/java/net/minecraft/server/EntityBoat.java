@@ -97,6 +97,18 @@ public class EntityBoat extends Entity {
         return this.getBoundingBox();
     }
 
+    // CraftBukkit start
+    @Override
+    public boolean hasCollisionBox() {
+        return true;
+    }
+
+    @Override
+    public boolean collidesWithEntities() {
+        return true;
+    }
+    // CraftBukkit end
+
     public boolean isCollidable() {
         return true;
     }
@@ -645,6 +645,15 @@ public abstract class EntityInsentient extends EntityLiving {
         }
     }
 
+    // CraftBukkit start - inactive mobs still despawn, the check is the same as in doTick
+    @Override
+    public void inactiveTick() {
+        super.inactiveTick();
+        ++this.ticksFarFromPlayer;
+        this.L();
+    }
+    // CraftBukkit end
+
     protected final void doTick() {
         ++this.ticksFarFromPlayer;
         this.world.methodProfiler.a("checkDespawn");
@@ -735,7 +744,7 @@ public abstract class EntityInsentient extends EntityLiving {
     }
 
     public boolean canSpawn() {
-        return !this.world.containsLiquid(this.getBoundingBox()) && this.world.getCubes(this, this.getBoundingBox()).isEmpty() && this.world.a(this.getBoundingBox(), (Entity) this);
+        return !this.world.containsLiquid(this.getBoundingBox()) && this.world.getCubes(this, this.getBoundingBox(), CollisionBuffer.local(0)).isEmpty() && this.world.a(this.getBoundingBox(), (Entity) this); // CraftBukkit
     }
 
     public int cU() {
@@ -147,6 +147,24 @@ public class EntityItem extends Entity {
         }
     }
 
+    // CraftBukkit start - pickup and despawn timers run on wall time, so only the despawn needs checking
+    @Override
+    public void inactiveTick() {
+        int elapsedTicks = MinecraftServer.currentTick - this.lastTick;
+        if (this.pickupDelay != 32767) this.pickupDelay -= elapsedTicks;
+        if (this.age != -32768) this.age += elapsedTicks;
+        this.lastTick = MinecraftServer.currentTick;
+
+        if (!this.world.isClientSide && this.age >= 6000) {
+            if (org.bukkit.craftbukkit.event.CraftEventFactory.callItemDespawnEvent(this).isCancelled()) {
+                this.age = 0;
+                return;
+            }
+            this.die();
+        }
+    }
+    // CraftBukkit end
+
     private void x() {
         Iterator iterator = this.world.a(EntityItem.class, this.getBoundingBox().grow(0.5D, 0.0D, 0.5D)).iterator();
 
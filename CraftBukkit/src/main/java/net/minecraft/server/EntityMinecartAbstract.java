@@ -97,6 +97,13 @@ public abstract class EntityMinecartAbstract extends Entity implements INamableT
         return null;
     }
 
+    // CraftBukkit start
+    @Override
+    public boolean collidesWithEntities() {
+        return true;
+    }
+    // CraftBukkit end
+
     public boolean isCollidable() {
         return true;
     }
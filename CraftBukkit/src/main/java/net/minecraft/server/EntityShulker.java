@@ -432,6 +432,13 @@ public class EntityShulker extends EntityGolem implements IMonster {
         return this.isAlive() ? this.getBoundingBox() : null;
     }
 
+    // CraftBukkit start
+    @Override
+    public boolean hasCollisionBox() {
+        return true;
+    }
+    // CraftBukkit end
+
     public EnumDirection dl() {
         return (EnumDirection) this.datawatcher.get(EntityShulker.a);
     }
@@ -3,10 +3,19 @@ package net.minecraft.server;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+// CraftBukkit start
+import org.bukkit.craftbukkit.CraftServer;
+import org.bukkit.craftbukkit.util.CellIndex;
+// CraftBukkit end
 
 public class EntityTracker {
 
@@ -15,6 +24,11 @@ public class EntityTracker {
     private final Set<EntityTrackerEntry> c = Sets.newHashSet();
     public final IntHashMap<EntityTrackerEntry> trackedEntities = new IntHashMap();
     private int e;
+    // CraftBukkit start - players and entries by chunk, so each only looks at what can be in range
+    private final CellIndex<EntityTrackerEntry> entryCells = new CellIndex<EntityTrackerEntry>();
+    private final CellIndex<EntityPlayer> playerCells = new CellIndex<EntityPlayer>();
+    private int maxRange;
+    // CraftBukkit end
 
     public EntityTracker(WorldServer worldserver) {
         this.world = worldserver;
@@ -114,6 +128,10 @@ public class EntityTracker {
 
             this.c.add(entitytrackerentry);
             this.trackedEntities.a(entity.getId(), entitytrackerentry);
+            // CraftBukkit start
+            entitytrackerentry.addToCell(this.entryCells);
+            this.maxRange = Math.max(this.maxRange, i);
+            // CraftBukkit end
             entitytrackerentry.scanPlayers(this.world.players);
         } catch (Throwable throwable) {
             CrashReport crashreport = CrashReport.a(throwable, "Adding entity to track");
@@ -164,6 +182,7 @@ public class EntityTracker {
 
         if (entitytrackerentry1 != null) {
             this.c.remove(entitytrackerentry1);
+            entitytrackerentry1.removeFromCell(this.entryCells); // CraftBukkit
             entitytrackerentry1.a();
         }
 
@@ -173,10 +192,51 @@ public class EntityTracker {
         ArrayList arraylist = Lists.newArrayList();
         Iterator iterator = this.c.iterator();
 
+        // CraftBukkit start - players don't move while entries are tracked
+        this.playerCells.clear();
+        for (int i = 0; i < this.world.players.size(); ++i) {
+            EntityPlayer entityplayer = (EntityPlayer) this.world.players.get(i);
+
+            this.playerCells.add(entityplayer, CellIndex.key(entityplayer.locX, entityplayer.locZ));
+        }
+        // CraftBukkit end
+
+        // CraftBukkit start - work out movement and metadata of many entries at once, then send it here
+        ArrayList<EntityTrackerEntry> arraylist1 = new ArrayList<EntityTrackerEntry>();
+        ArrayList<EntityTrackerEntry> arraylist2 = new ArrayList<EntityTrackerEntry>();
+
         while (iterator.hasNext()) {
             EntityTrackerEntry entitytrackerentry = (EntityTrackerEntry) iterator.next();
 
-            entitytrackerentry.track(this.world.players);
+            if (entitytrackerentry.beginTrack(this.world.players, this.playerCells)) {
+                // Player entries call into CraftPlayer, keep them on this thread
+                if (entitytrackerentry.b() instanceof EntityPlayer) {
+                    arraylist2.add(entitytrackerentry);
+                } else {
+                    arraylist1.add(entitytrackerentry);
+                }
+            }
+        }
+
+        CraftServer server = this.world.getServer();
+
+        if (server.trackerThreads != 1 && arraylist1.size() >= server.trackerParallelThreshold) {
+            getPool(server.trackerThreads).invoke(new ComputeDeltas(arraylist1, 0, arraylist1.size()));
+        } else {
+            arraylist2.addAll(arraylist1);
+        }
+
+        for (int i = 0; i < arraylist2.size(); ++i) {
+            arraylist2.get(i).computeDeltas();
+        }
+
+        iterator = this.c.iterator();
+        while (iterator.hasNext()) {
+            EntityTrackerEntry entitytrackerentry = (EntityTrackerEntry) iterator.next();
+
+            entitytrackerentry.sendDeltas();
+            entitytrackerentry.updateCell(this.entryCells);
+            // CraftBukkit end
             if (entitytrackerentry.b) {
                 Entity entity = entitytrackerentry.b();
 
@@ -188,7 +248,7 @@ public class EntityTracker {
 
         for (int i = 0; i < arraylist.size(); ++i) {
             EntityPlayer entityplayer = (EntityPlayer) arraylist.get(i);
-            Iterator iterator1 = this.c.iterator();
+            Iterator iterator1 = getCandidates(entityplayer, entityplayer.trackedBy, this.entryCells, this.trackedEntities, this.maxRange, this.e).iterator(); // CraftBukkit
 
             while (iterator1.hasNext()) {
                 EntityTrackerEntry entitytrackerentry1 = (EntityTrackerEntry) iterator1.next();
@@ -299,4 +359,84 @@ public class EntityTracker {
         }
 
     }
+
+    // CraftBukkit start
+    /**
+     * Entries that may have to start or stop tracking a player that moved:
+     * those whose cell is close enough for the player to be in range, and
+     * those tracking it already, which may be out of range now. Checking
+     * only these finds the same changes as checking every entry.
+     *
+     * @param entity the player
+     * @param collection the entries tracking the player, of any world
+     * @param cellindex this world's entries by cell
+     * @param inthashmap this world's entries by entity id
+     * @param i the longest range of any entry
+     * @param j the view distance, no entry tracks further
+     */
+    public static List<EntityTrackerEntry> getCandidates(Entity entity, Collection<EntityTrackerEntry> collection, CellIndex<EntityTrackerEntry> cellindex, IntHashMap<EntityTrackerEntry> inthashmap, int i, int j) {
+        ArrayList<EntityTrackerEntry> arraylist = new ArrayList<EntityTrackerEntry>(collection.size() + 16);
+        int k = Math.min(i, j);
+
+        // The player may still be tracked by entries of the world it came from
+        for (EntityTrackerEntry entitytrackerentry : collection) {
+            if (inthashmap.get(entitytrackerentry.b().getId()) == entitytrackerentry) {
+                arraylist.add(entitytrackerentry);
+            }
+        }
+
+        cellindex.query(entity.locX - (double) k, entity.locZ - (double) k, entity.locX + (double) k, entity.locZ + (double) k, arraylist);
+        return arraylist;
+    }
+
+    private static ForkJoinPool pool;
+    private static int poolThreads = -1;
+
+    private static ForkJoinPool getPool(int i) {
+        if (i != poolThreads) {
+            if (pool != null) {
+                pool.shutdown();
+            }
+
+            poolThreads = i;
+            pool = new ForkJoinPool(i > 0 ? i : Math.max(1, Runtime.getRuntime().availableProcessors() - 1), new ForkJoinPool.ForkJoinWorkerThreadFactory() {
+                public ForkJoinWorkerThread newThread(ForkJoinPool forkjoinpool) {
+                    ForkJoinWorkerThread forkjoinworkerthread = new ForkJoinWorkerThread(forkjoinpool) {};
+
+                    forkjoinworkerthread.setName("Entity Tracker #" + forkjoinworkerthread.getPoolIndex());
+                    forkjoinworkerthread.setDaemon(true);
+                    return forkjoinworkerthread;
+                }
+            }, null, false);
+        }
+
+        return pool;
+    }
+
+    // The main thread waits in invoke(), so entities can't change under the workers
+    private static class ComputeDeltas extends RecursiveAction {
+
+        private final List<EntityTrackerEntry> entries;
+        private final int from;
+        private final int to;
+
+        ComputeDeltas(List<EntityTrackerEntry> list, int i, int j) {
+            this.entries = list;
+            this.from = i;
+            this.to = j;
+        }
+
+        protected void compute() {
+            if (this.to - this.from <= 32) {
+                for (int i = this.from; i < this.to; ++i) {
+                    this.entries.get(i).computeDeltas();
+                }
+            } else {
+                int i = (this.from + this.to) >>> 1;
+
+                invokeAll(new ComputeDeltas(this.entries, this.from, i), new ComputeDeltas(this.entries, i, this.to));
+            }
+        }
+    }
+    // CraftBukkit end
 }
@@ -1,15 +1,18 @@
 package net.minecraft.server;
 
 import com.google.common.collect.Sets;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
+import javax.annotation.Nullable;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 // CraftBukkit start
+import org.bukkit.craftbukkit.util.CellIndex;
 import org.bukkit.entity.Player;
 import org.bukkit.event.player.PlayerVelocityEvent;
 // CraftBukkit end
@@ -42,6 +45,12 @@ public class EntityTrackerEntry {
     private boolean y;
     public boolean b;
     public final Set<EntityPlayer> trackedPlayers = Sets.newHashSet();
+    // CraftBukkit start
+    long cell; // where EntityTracker has this indexed
+    private final List<Packet<?>> queued = new ArrayList<Packet<?>>(4);
+    private long queuedIncludingSelf; // bit i set when queued.get(i) also goes to the tracked player
+    private boolean rescan;
+    // CraftBukkit end
 
     public EntityTrackerEntry(Entity entity, int i, int j, int k, boolean flag) {
         this.tracker = entity;
@@ -67,6 +76,24 @@ public class EntityTrackerEntry {
     }
 
     public void track(List<EntityHuman> list) {
+        // CraftBukkit start
+        this.track(list, null);
+    }
+
+    void track(List<EntityHuman> list, @Nullable CellIndex<EntityPlayer> cellindex) {
+        if (this.beginTrack(list, cellindex)) {
+            this.computeDeltas();
+        }
+        this.sendDeltas();
+    }
+
+    /**
+     * First part of {@link #track(List)}, updating who can see the entity.
+     *
+     * @return if {@link #computeDeltas()} has anything to do this tick
+     */
+    boolean beginTrack(List<EntityHuman> list, @Nullable CellIndex<EntityPlayer> cellindex) {
+        // CraftBukkit end
         this.b = false;
         if (!this.isMoving || this.tracker.d(this.q, this.r, this.s) > 16.0D) {
             this.q = this.tracker.locX;
@@ -74,14 +101,20 @@ public class EntityTrackerEntry {
             this.s = this.tracker.locZ;
             this.isMoving = true;
             this.b = true;
-            this.scanPlayers(list);
+            // CraftBukkit start
+            if (cellindex != null) {
+                this.scanPlayers(cellindex);
+            } else {
+                this.scanPlayers(list);
+            }
+            // CraftBukkit end
         }
 
         List list1 = this.tracker.bF();
 
         if (!list1.equals(this.w)) {
             this.w = list1;
-            this.broadcastIncludingSelf(new PacketPlayOutMount(this.tracker)); // CraftBukkit
+            this.queue(new PacketPlayOutMount(this.tracker), true); // CraftBukkit
         }
 
         // PAIL : rename
@@ -109,7 +142,19 @@ public class EntityTrackerEntry {
             this.d();
         }
 
-        if (this.a % this.g == 0 || this.tracker.impulse || this.tracker.getDataWatcher().a()) {
+        // CraftBukkit start - split into beginTrack, computeDeltas and sendDeltas
+        return this.a % this.g == 0 || this.tracker.impulse || this.tracker.getDataWatcher().a();
+    }
+
+    /**
+     * Works out the movement and metadata packets for this tick. Only reads
+     * the tracked entity and writes this entry, so EntityTracker may run it
+     * for many entries at once while the rest of the world is paused; the
+     * packets are held until {@link #sendDeltas()}.
+     */
+    void computeDeltas() {
+        {
+            // CraftBukkit end
             int i;
 
             if (this.tracker.isPassenger()) {
@@ -118,7 +163,7 @@ public class EntityTrackerEntry {
                 boolean flag = Math.abs(i - this.yRot) >= 1 || Math.abs(j - this.xRot) >= 1;
 
                 if (flag) {
-                    this.broadcast(new PacketPlayOutEntity.PacketPlayOutEntityLook(this.tracker.getId(), (byte) i, (byte) j, this.tracker.onGround));
+                    this.queue(new PacketPlayOutEntity.PacketPlayOutEntityLook(this.tracker.getId(), (byte) i, (byte) j, this.tracker.onGround), false); // CraftBukkit
                     this.yRot = i;
                     this.xRot = j;
                 }
@@ -171,7 +216,7 @@ public class EntityTrackerEntry {
                         this.v = 0;
                         // CraftBukkit start - Refresh list of who can see a player before sending teleport packet
                         if (this.tracker instanceof EntityPlayer) {
-                            this.scanPlayers(new java.util.ArrayList(this.trackedPlayers));
+                            this.rescan = true; // done in sendDeltas
                         }
                         // CraftBukkit end
                         this.c();
@@ -196,12 +241,12 @@ public class EntityTrackerEntry {
                         this.n = this.tracker.motX;
                         this.o = this.tracker.motY;
                         this.p = this.tracker.motZ;
-                        this.broadcast(new PacketPlayOutEntityVelocity(this.tracker.getId(), this.n, this.o, this.p));
+                        this.queue(new PacketPlayOutEntityVelocity(this.tracker.getId(), this.n, this.o, this.p), false); // CraftBukkit
                     }
                 }
 
                 if (object != null) {
-                    this.broadcast((Packet) object);
+                    this.queue((Packet) object, false); // CraftBukkit
                 }
 
                 this.d();
@@ -223,13 +268,37 @@ public class EntityTrackerEntry {
 
             i = MathHelper.d(this.tracker.getHeadRotation() * 256.0F / 360.0F);
             if (Math.abs(i - this.headYaw) >= 1) {
-                this.broadcast(new PacketPlayOutEntityHeadRotation(this.tracker, (byte) i));
+                this.queue(new PacketPlayOutEntityHeadRotation(this.tracker, (byte) i), false); // CraftBukkit
                 this.headYaw = i;
             }
 
             this.tracker.impulse = false;
         }
 
+    }
+
+    /**
+     * Last part of {@link #track(List)}, back on the main thread.
+     */
+    void sendDeltas() {
+        if (this.rescan) {
+            // Refresh list of who can see a player before sending teleport packet
+            this.rescan = false;
+            this.scanPlayers(new ArrayList(this.trackedPlayers));
+        }
+
+        for (int j = 0; j < this.queued.size(); ++j) {
+            SharedPacket sharedpacket = new SharedPacket(this.queued.get(j));
+
+            this.broadcast(sharedpacket);
+            if ((this.queuedIncludingSelf & 1L << j) != 0L && this.tracker instanceof EntityPlayer) {
+                ((EntityPlayer) this.tracker).playerConnection.sendPacket(sharedpacket);
+            }
+        }
+
+        this.queued.clear();
+        this.queuedIncludingSelf = 0L;
+        // CraftBukkit end
         ++this.a;
         if (this.tracker.velocityChanged) {
             // CraftBukkit start - Create PlayerVelocity event
@@ -262,7 +331,7 @@ public class EntityTrackerEntry {
         DataWatcher datawatcher = this.tracker.getDataWatcher();
 
         if (datawatcher.a()) {
-            this.broadcastIncludingSelf(new PacketPlayOutEntityMetadata(this.tracker.getId(), datawatcher, false));
+            this.queue(new PacketPlayOutEntityMetadata(this.tracker.getId(), datawatcher, false), true); // CraftBukkit
         }
 
         if (this.tracker instanceof EntityLiving) {
@@ -275,7 +344,7 @@ public class EntityTrackerEntry {
                     ((EntityPlayer) this.tracker).getBukkitEntity().injectScaledMaxHealth(set, false);
                 }
                 // CraftBukkit end
-                this.broadcastIncludingSelf(new PacketPlayOutUpdateAttributes(this.tracker.getId(), set));
+                this.queue(new PacketPlayOutUpdateAttributes(this.tracker.getId(), set), true); // CraftBukkit
             }
 
             set.clear();
@@ -283,21 +352,38 @@ public class EntityTrackerEntry {
 
     }
 
+    // CraftBukkit start
+    private void queue(Packet<?> packet, boolean flag) {
+        if (flag) {
+            this.queuedIncludingSelf |= 1L << this.queued.size();
+        }
+        this.queued.add(packet);
+    }
+    // CraftBukkit end
+
     public void broadcast(Packet<?> packet) {
+        // CraftBukkit start - encode once for all viewers
+        this.broadcast(new SharedPacket(packet));
+    }
+
+    private void broadcast(SharedPacket sharedpacket) {
+        // CraftBukkit end
         Iterator iterator = this.trackedPlayers.iterator();
 
         while (iterator.hasNext()) {
             EntityPlayer entityplayer = (EntityPlayer) iterator.next();
 
-            entityplayer.playerConnection.sendPacket(packet);
+            entityplayer.playerConnection.sendPacket(sharedpacket); // CraftBukkit
         }
 
     }
 
     public void broadcastIncludingSelf(Packet<?> packet) {
-        this.broadcast(packet);
+        SharedPacket sharedpacket = new SharedPacket(packet); // CraftBukkit
+
+        this.broadcast(sharedpacket); // CraftBukkit
         if (this.tracker instanceof EntityPlayer) {
-            ((EntityPlayer) this.tracker).playerConnection.sendPacket(packet);
+            ((EntityPlayer) this.tracker).playerConnection.sendPacket(sharedpacket); // CraftBukkit
         }
 
     }
@@ -310,6 +396,7 @@ public class EntityTrackerEntry {
 
             this.tracker.c(entityplayer);
             entityplayer.c(this.tracker);
+            entityplayer.trackedBy.remove(this); // CraftBukkit
         }
 
     }
@@ -319,6 +406,7 @@ public class EntityTrackerEntry {
             this.tracker.c(entityplayer);
             entityplayer.c(this.tracker);
             this.trackedPlayers.remove(entityplayer);
+            entityplayer.trackedBy.remove(this); // CraftBukkit
         }
 
     }
@@ -338,6 +426,7 @@ public class EntityTrackerEntry {
                     entityplayer.removeQueue.remove(Integer.valueOf(this.tracker.getId()));
                     // CraftBukkit end
                     this.trackedPlayers.add(entityplayer);
+                    entityplayer.trackedBy.add(this); // CraftBukkit
                     Packet packet = this.e();
 
                     entityplayer.playerConnection.sendPacket(packet);
@@ -424,6 +513,7 @@ public class EntityTrackerEntry {
                 }
             } else if (this.trackedPlayers.contains(entityplayer)) {
                 this.trackedPlayers.remove(entityplayer);
+                entityplayer.trackedBy.remove(this); // CraftBukkit
                 this.tracker.c(entityplayer);
                 entityplayer.c(this.tracker);
             }
@@ -432,11 +522,7 @@ public class EntityTrackerEntry {
     }
 
     public boolean c(EntityPlayer entityplayer) {
-        double d0 = entityplayer.locX - (double) this.xLoc / 4096.0D;
-        double d1 = entityplayer.locZ - (double) this.zLoc / 4096.0D;
-        int i = Math.min(this.e, this.f);
-
-        return d0 >= (double) (-i) && d0 <= (double) i && d1 >= (double) (-i) && d1 <= (double) i && this.tracker.a(entityplayer);
+        return this.isInRange(entityplayer.locX, entityplayer.locZ) && this.tracker.a(entityplayer); // CraftBukkit - moved to isInRange
     }
 
     private boolean e(EntityPlayer entityplayer) {
@@ -450,6 +536,70 @@ public class EntityTrackerEntry {
 
     }
 
+    // CraftBukkit start
+    /**
+     * The same as scanning every player in the world, as players neither in
+     * range nor tracked are left alone by {@link #updatePlayer(EntityPlayer)}.
+     */
+    private void scanPlayers(CellIndex<EntityPlayer> cellindex) {
+        ArrayList<EntityPlayer> arraylist = new ArrayList<EntityPlayer>(this.trackedPlayers);
+        int i = this.getRange();
+        double d0 = this.getX();
+        double d1 = this.getZ();
+
+        cellindex.query(d0 - (double) i, d1 - (double) i, d0 + (double) i, d1 + (double) i, arraylist);
+        for (int j = 0; j < arraylist.size(); ++j) {
+            this.updatePlayer(arraylist.get(j));
+        }
+
+    }
+
+    // Position players are measured against in c(EntityPlayer), the last one sent
+    double getX() {
+        return (double) this.xLoc / 4096.0D;
+    }
+
+    double getZ() {
+        return (double) this.zLoc / 4096.0D;
+    }
+
+    int getRange() {
+        return Math.min(this.e, this.f);
+    }
+
+    /**
+     * Whether a player at the coordinates is close enough to see the entity,
+     * leaving out what the entity itself has to say about it.
+     */
+    public boolean isInRange(double d0, double d1) {
+        double d2 = d0 - this.getX();
+        double d3 = d1 - this.getZ();
+        int i = this.getRange();
+
+        return d2 >= (double) (-i) && d2 <= (double) i && d3 >= (double) (-i) && d3 <= (double) i;
+    }
+
+    /**
+     * Indexes the entry by the cell of the position players are measured
+     * against, not the entity's current one.
+     */
+    public void addToCell(CellIndex<EntityTrackerEntry> cellindex) {
+        this.cell = CellIndex.key(this.getX(), this.getZ());
+        cellindex.add(this, this.cell);
+    }
+
+    public void updateCell(CellIndex<EntityTrackerEntry> cellindex) {
+        long i = CellIndex.key(this.getX(), this.getZ());
+
+        cellindex.move(this, this.cell, i);
+        this.cell = i;
+    }
+
+    public void removeFromCell(CellIndex<EntityTrackerEntry> cellindex) {
+        cellindex.remove(this, this.cell);
+    }
+    // CraftBukkit end
+
     private Packet<?> e() {
         if (this.tracker.dead) {
             // CraftBukkit start - Remove useless error spam, just return
@@ -565,6 +715,7 @@ public class EntityTrackerEntry {
     public void clear(EntityPlayer entityplayer) {
         if (this.trackedPlayers.contains(entityplayer)) {
             this.trackedPlayers.remove(entityplayer);
+            entityplayer.trackedBy.remove(this); // CraftBukkit
             this.tracker.c(entityplayer);
             entityplayer.c(this.tracker);
         }
@@ -0,0 +1,168 @@
+package net.minecraft.server;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// CraftBukkit - new class
+/**
+ * Looks at play packets on the connection's event loop before they are
+ * queued for the main thread.
+ * <p>
+ * Movement with impossible coordinates gets the client kicked without the
+ * main thread ever seeing it, block actions far out of reach or sent faster
+ * than any client would are dropped, and movement packets that arrive while
+ * the previous one is still waiting for the tick are merged into it. A
+ * client flooding movement then costs one handler call per tick.
+ */
+public class InboundPacketFilter {
+
+    // Well beyond the reach checks on the main thread, as the player may still move before the packet is handled
+    private static final double MAX_REACH_SQUARED = 32.0D * 32.0D;
+    private static final int MAX_ACTIONS_PER_SECOND = 200;
+    private static final long ACTION_WINDOW_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final AtomicLong mergedMoves = new AtomicLong();
+    private static final AtomicLong droppedPackets = new AtomicLong();
+    private static final AtomicLong rejectedConnections = new AtomicLong();
+    private final PlayerConnection connection;
+    // Event loop only
+    private boolean rejected;
+    private long actionWindow;
+    private int actions;
+    // Last movement still waiting for the main thread, guarded by this
+    private PacketPlayInFlying pendingMove;
+
+    InboundPacketFilter(PlayerConnection playerconnection) {
+        this.connection = playerconnection;
+    }
+
+    /**
+     * Called on the event loop for every packet before it is handled.
+     *
+     * @return false if the packet must not be handled
+     */
+    boolean a(Packet<?> packet) {
+        if (this.rejected) {
+            return false;
+        }
+
+        if (packet instanceof PacketPlayInFlying) {
+            return this.a((PacketPlayInFlying) packet);
+        }
+
+        synchronized (this) {
+            // Anything else has to be handled after the movement sent before it, and before any sent after it
+            this.pendingMove = null;
+        }
+
+        if (packet instanceof PacketPlayInBlockDig || packet instanceof PacketPlayInUseItem || packet instanceof PacketPlayInBlockPlace || packet instanceof PacketPlayInArmAnimation) {
+            long i = System.nanoTime();
+
+            if (i - this.actionWindow >= InboundPacketFilter.ACTION_WINDOW_NANOS) {
+                this.actionWindow = i;
+                this.actions = 0;
+            }
+
+            if (++this.actions > InboundPacketFilter.MAX_ACTIONS_PER_SECOND || !this.inReach(packet)) {
+                InboundPacketFilter.droppedPackets.incrementAndGet();
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private boolean a(PacketPlayInFlying packetplayinflying) {
+        if (PlayerConnection.b(packetplayinflying)) {
+            this.reject(new ChatMessage("multiplayer.disconnect.invalid_player_movement", new Object[0]));
+            return false;
+        }
+
+        synchronized (this) {
+            PacketPlayInFlying packetplayinflying1 = this.pendingMove;
+
+            if (packetplayinflying1 != null) {
+                if (packetplayinflying.hasPos) {
+                    packetplayinflying1.x = packetplayinflying.x;
+                    packetplayinflying1.y = packetplayinflying.y;
+                    packetplayinflying1.z = packetplayinflying.z;
+                    packetplayinflying1.hasPos = true;
+                }
+
+                if (packetplayinflying.hasLook) {
+                    packetplayinflying1.yaw = packetplayinflying.yaw;
+                    packetplayinflying1.pitch = packetplayinflying.pitch;
+                    packetplayinflying1.hasLook = true;
+                }
+
+                packetplayinflying1.f = packetplayinflying.f;
+                ++packetplayinflying1.moves;
+                InboundPacketFilter.mergedMoves.incrementAndGet();
+                return false;
+            }
+
+            this.pendingMove = packetplayinflying;
+            return true;
+        }
+    }
+
+    /**
+     * Called on the main thread as a movement packet is handled, nothing
+     * can be merged into it from then on.
+     *
+     * @return number of packets the movement stands for
+     */
+    synchronized int b(PacketPlayInFlying packetplayinflying) {
+        if (this.pendingMove == packetplayinflying) {
+            this.pendingMove = null;
+        }
+
+        return packetplayinflying.moves;
+    }
+
+    private boolean inReach(Packet<?> packet) {
+        BlockPosition blockposition;
+
+        if (packet instanceof PacketPlayInBlockDig) {
+            PacketPlayInBlockDig.EnumPlayerDigType packetplayinblockdig_enumplayerdigtype = ((PacketPlayInBlockDig) packet).c();
+
+            if (packetplayinblockdig_enumplayerdigtype != PacketPlayInBlockDig.EnumPlayerDigType.START_DESTROY_BLOCK && packetplayinblockdig_enumplayerdigtype != PacketPlayInBlockDig.EnumPlayerDigType.ABORT_DESTROY_BLOCK && packetplayinblockdig_enumplayerdigtype != PacketPlayInBlockDig.EnumPlayerDigType.STOP_DESTROY_BLOCK) {
+                return true;
+            }
+
+            blockposition = ((PacketPlayInBlockDig) packet).a();
+        } else if (packet instanceof PacketPlayInUseItem) {
+            blockposition = ((PacketPlayInUseItem) packet).a();
+        } else {
+            return true;
+        }
+
+        EntityPlayer entityplayer = this.connection.player;
+        double d0 = entityplayer.locX - ((double) blockposition.getX() + 0.5D);
+        double d1 = entityplayer.locY - ((double) blockposition.getY() + 0.5D) + 1.5D;
+        double d2 = entityplayer.locZ - ((double) blockposition.getZ() + 0.5D);
+
+        return d0 * d0 + d1 * d1 + d2 * d2 <= InboundPacketFilter.MAX_REACH_SQUARED;
+    }
+
+    private void reject(final IChatBaseComponent ichatbasecomponent) {
+        this.rejected = true;
+        InboundPacketFilter.rejectedConnections.incrementAndGet();
+        MinecraftServer.getServer().postToMainThread(new Runnable() {
+            public void run() {
+                InboundPacketFilter.this.connection.disconnect(ichatbasecomponent);
+            }
+        });
+    }
+
+    public static long getMergedMoves() {
+        return InboundPacketFilter.mergedMoves.get();
+    }
+
+    public static long getDroppedPackets() {
+        return InboundPacketFilter.droppedPackets.get();
+    }
+
+    public static long getRejectedConnections() {
+        return InboundPacketFilter.rejectedConnections.get();
+    }
+}
@@ -2,6 +2,7 @@ package net.minecraft.server;
 
 import com.mojang.authlib.GameProfile;
 import com.mojang.authlib.exceptions.AuthenticationUnavailableException;
+import com.mojang.authlib.minecraft.MinecraftSessionService; // CraftBukkit
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelFutureListener;
 import io.netty.util.concurrent.Future;
@@ -12,10 +13,10 @@ import java.net.InetSocketAddress;
 import java.net.SocketAddress;
 import java.nio.charset.StandardCharsets;
 import java.security.PrivateKey;
+import java.security.PublicKey; // CraftBukkit
 import java.util.Arrays;
 import java.util.Random;
 import java.util.UUID;
-import java.util.concurrent.atomic.AtomicInteger;
 import javax.annotation.Nullable;
 import javax.crypto.SecretKey;
 import org.apache.commons.lang3.Validate;
@@ -30,7 +31,6 @@ import org.bukkit.event.player.PlayerPreLoginEvent;
 
 public class LoginListener implements PacketLoginInListener, ITickable {
 
-    private static final AtomicInteger b = new AtomicInteger(0);
     private static final Logger c = LogManager.getLogger();
     private static final Random random = new Random();
     private final byte[] e = new byte[4];
@@ -164,87 +164,87 @@ public class LoginListener implements PacketLoginInListener, ITickable {
             this.loginKey = packetlogininencryptionbegin.a(privatekey);
             this.g = LoginListener.EnumProtocolState.AUTHENTICATING;
             this.networkManager.a(this.loginKey);
-            (new Thread("User Authenticator #" + LoginListener.b.incrementAndGet()) {
-                public void run() {
-                    GameProfile gameprofile = LoginListener.this.i;
-
-                    try {
-                        String s = (new BigInteger(MinecraftEncryption.a("", LoginListener.this.server.O().getPublic(), LoginListener.this.loginKey))).toString(16);
-
-                        LoginListener.this.i = LoginListener.this.server.az().hasJoinedServer(new GameProfile((UUID) null, gameprofile.getName()), s, this.a());
-                        if (LoginListener.this.i != null) {
-                            // CraftBukkit start - fire PlayerPreLoginEvent
-                            if (!networkManager.isConnected()) {
-                                return;
-                            }
-
-                            String playerName = i.getName();
-                            java.net.InetAddress address = ((java.net.InetSocketAddress) networkManager.getSocketAddress()).getAddress();
-                            java.util.UUID uniqueId = i.getId();
-                            final org.bukkit.craftbukkit.CraftServer server = LoginListener.this.server.server;
-
-                            AsyncPlayerPreLoginEvent asyncEvent = new AsyncPlayerPreLoginEvent(playerName, address, uniqueId);
-                            server.getPluginManager().callEvent(asyncEvent);
-
-                            if (PlayerPreLoginEvent.getHandlerList().getRegisteredListeners().length != 0) {
-                                final PlayerPreLoginEvent event = new PlayerPreLoginEvent(playerName, address, uniqueId);
-                                if (asyncEvent.getResult() != PlayerPreLoginEvent.Result.ALLOWED) {
-                                    event.disallow(asyncEvent.getResult(), asyncEvent.getKickMessage());
-                                }
-                                Waitable<PlayerPreLoginEvent.Result> waitable = new Waitable<PlayerPreLoginEvent.Result>() {
-                                    @Override
-                                    protected PlayerPreLoginEvent.Result evaluate() {
-                                        server.getPluginManager().callEvent(event);
-                                        return event.getResult();
-                                    }};
-
-                                LoginListener.this.server.processQueue.add(waitable);
-                                if (waitable.get() != PlayerPreLoginEvent.Result.ALLOWED) {
-                                    disconnect(event.getKickMessage());
-                                    return;
-                                }
-                            } else {
-                                if (asyncEvent.getLoginResult() != AsyncPlayerPreLoginEvent.Result.ALLOWED) {
-                                    disconnect(asyncEvent.getKickMessage());
-                                    return;
-                                }
-                            }
-                            // CraftBukkit end
-                            LoginListener.c.info("UUID of player {} is {}", LoginListener.this.i.getName(), LoginListener.this.i.getId());
-                            LoginListener.this.g = LoginListener.EnumProtocolState.READY_TO_ACCEPT;
-                        } else if (LoginListener.this.server.R()) {
-                            LoginListener.c.warn("Failed to verify username but will let them in anyway!");
-                            LoginListener.this.i = LoginListener.this.a(gameprofile);
-                            LoginListener.this.g = LoginListener.EnumProtocolState.READY_TO_ACCEPT;
-                        } else {
-                            LoginListener.this.disconnect(new ChatMessage("multiplayer.disconnect.unverified_username", new Object[0]));
-                            LoginListener.c.error("Username \'{}\' tried to join with an invalid session", gameprofile.getName());
+            // CraftBukkit start - authenticate on a bounded pool instead of a thread per login
+            final GameProfile gameprofile = this.i;
+            SocketAddress socketaddress = this.networkManager.getSocketAddress();
+            InetAddress inetaddress = this.server.ac() && socketaddress instanceof InetSocketAddress ? ((InetSocketAddress) socketaddress).getAddress() : null;
+            LoginListener.AuthenticationTask task = new LoginListener.AuthenticationTask(this.server.az(), gameprofile, this.server.O().getPublic(), this.loginKey, inetaddress, new LoginListener.AuthenticationTask.Callback() {
+                public void verified(GameProfile gameprofile1) throws Exception {
+                    LoginListener.this.i = gameprofile1;
+                    // CraftBukkit start - fire PlayerPreLoginEvent
+                    if (!networkManager.isConnected()) {
+                        return;
+                    }
+
+                    String playerName = i.getName();
+                    java.net.InetAddress address = ((java.net.InetSocketAddress) networkManager.getSocketAddress()).getAddress();
+                    java.util.UUID uniqueId = i.getId();
+                    final org.bukkit.craftbukkit.CraftServer server = LoginListener.this.server.server;
+
+                    AsyncPlayerPreLoginEvent asyncEvent = new AsyncPlayerPreLoginEvent(playerName, address, uniqueId);
+                    server.getPluginManager().callEvent(asyncEvent);
+
+                    if (PlayerPreLoginEvent.getHandlerList().getRegisteredListeners().length != 0) {
+                        final PlayerPreLoginEvent event = new PlayerPreLoginEvent(playerName, address, uniqueId);
+                        if (asyncEvent.getResult() != PlayerPreLoginEvent.Result.ALLOWED) {
+                            event.disallow(asyncEvent.getResult(), asyncEvent.getKickMessage());
                         }
-                    } catch (AuthenticationUnavailableException authenticationunavailableexception) {
-                        if (LoginListener.this.server.R()) {
-                            LoginListener.c.warn("Authentication servers are down but will let them in anyway!");
-                            LoginListener.this.i = LoginListener.this.a(gameprofile);
-                            LoginListener.this.g = LoginListener.EnumProtocolState.READY_TO_ACCEPT;
-                        } else {
-                            LoginListener.this.disconnect(new ChatMessage("multiplayer.disconnect.authservers_down", new Object[0]));
-                            LoginListener.c.error("Couldn\'t verify username because servers are unavailable");
+                        Waitable<PlayerPreLoginEvent.Result> waitable = new Waitable<PlayerPreLoginEvent.Result>() {
+                            @Override
+                            protected PlayerPreLoginEvent.Result evaluate() {
+                                server.getPluginManager().callEvent(event);
+                                return event.getResult();
+                            }};
+
+                        LoginListener.this.server.processQueue.add(waitable);
+                        if (waitable.get() != PlayerPreLoginEvent.Result.ALLOWED) {
+                            disconnect(event.getKickMessage());
+                            return;
+                        }
+                    } else {
+                        if (asyncEvent.getLoginResult() != AsyncPlayerPreLoginEvent.Result.ALLOWED) {
+                            disconnect(asyncEvent.getKickMessage());
+                            return;
                         }
-                        // CraftBukkit start - catch all exceptions
-                    } catch (Exception exception) {
-                        disconnect("Failed to verify username!");
-                        server.server.getLogger().log(java.util.logging.Level.WARNING, "Exception verifying " + gameprofile.getName(), exception);
-                        // CraftBukkit end
                     }
+                    // CraftBukkit end
+                    LoginListener.c.info("UUID of player {} is {}", LoginListener.this.i.getName(), LoginListener.this.i.getId());
+                    LoginListener.this.g = LoginListener.EnumProtocolState.READY_TO_ACCEPT;
+                }
 
+                public void unverified() {
+                    if (LoginListener.this.server.R()) {
+                        LoginListener.c.warn("Failed to verify username but will let them in anyway!");
+                        LoginListener.this.i = LoginListener.this.a(gameprofile);
+                        LoginListener.this.g = LoginListener.EnumProtocolState.READY_TO_ACCEPT;
+                    } else {
+                        LoginListener.this.disconnect(new ChatMessage("multiplayer.disconnect.unverified_username", new Object[0]));
+                        LoginListener.c.error("Username \'{}\' tried to join with an invalid session", gameprofile.getName());
+                    }
                 }
 
-                @Nullable
-                private InetAddress a() {
-                    SocketAddress socketaddress = LoginListener.this.networkManager.getSocketAddress();
+                public void unavailable() {
+                    if (LoginListener.this.server.R()) {
+                        LoginListener.c.warn("Authentication servers are down but will let them in anyway!");
+                        LoginListener.this.i = LoginListener.this.a(gameprofile);
+                        LoginListener.this.g = LoginListener.EnumProtocolState.READY_TO_ACCEPT;
+                    } else {
+                        LoginListener.this.disconnect(new ChatMessage("multiplayer.disconnect.authservers_down", new Object[0]));
+                        LoginListener.c.error("Couldn\'t verify username because servers are unavailable");
+                    }
+                }
 
-                    return LoginListener.this.server.ac() && socketaddress instanceof InetSocketAddress ? ((InetSocketAddress) socketaddress).getAddress() : null;
+                public void failed(Exception exception) {
+                    disconnect("Failed to verify username!");
+                    server.server.getLogger().log(java.util.logging.Level.WARNING, "Exception verifying " + gameprofile.getName(), exception);
                 }
-            }).start();
+            });
+
+            if (!this.server.server.getAuthenticationExecutor().submit(task)) {
+                LoginListener.c.warn("Too many logins waiting to be authenticated, disconnecting {}", this.c());
+                this.disconnect("Server is busy, please try again in a moment");
+            }
+            // CraftBukkit end
         }
     }
 
@@ -254,6 +254,73 @@ public class LoginListener implements PacketLoginInListener, ITickable {
         return new GameProfile(uuid, gameprofile.getName());
     }
 
+    // CraftBukkit start
+    /**
+     * The session server check {@link LoginListener#a(PacketLoginInEncryptionBegin)}
+     * hands to the authentication pool. What to do with the answer is up to
+     * the callback, which runs on the same thread.
+     */
+    public static class AuthenticationTask implements Runnable {
+
+        private final MinecraftSessionService sessionService;
+        private final GameProfile profile;
+        private final PublicKey publicKey;
+        private final SecretKey loginKey;
+        @Nullable
+        private final InetAddress address;
+        private final LoginListener.AuthenticationTask.Callback callback;
+
+        public AuthenticationTask(MinecraftSessionService minecraftsessionservice, GameProfile gameprofile, PublicKey publickey, SecretKey secretkey, @Nullable InetAddress inetaddress, LoginListener.AuthenticationTask.Callback callback) {
+            this.sessionService = minecraftsessionservice;
+            this.profile = gameprofile;
+            this.publicKey = publickey;
+            this.loginKey = secretkey;
+            this.address = inetaddress;
+            this.callback = callback;
+        }
+
+        public void run() {
+            try {
+                String s = (new BigInteger(MinecraftEncryption.a("", this.publicKey, this.loginKey))).toString(16);
+                GameProfile gameprofile = this.sessionService.hasJoinedServer(new GameProfile((UUID) null, this.profile.getName()), s, this.address);
+
+                if (gameprofile != null) {
+                    this.callback.verified(gameprofile);
+                } else {
+                    this.callback.unverified();
+                }
+            } catch (AuthenticationUnavailableException authenticationunavailableexception) {
+                this.callback.unavailable();
+            } catch (Exception exception) {
+                this.callback.failed(exception);
+            }
+        }
+
+        public interface Callback {
+
+            /**
+             * The session server knows the player, with this profile.
+             */
+            void verified(GameProfile gameprofile) throws Exception;
+
+            /**
+             * The player has not joined through the session server.
+             */
+            void unverified();
+
+            /**
+             * The session server could not be reached.
+             */
+            void unavailable();
+
+            /**
+             * Checking the session, or {@link #verified(GameProfile)}, threw.
+             */
+            void failed(Exception exception);
+        }
+    }
+    // CraftBukkit end
+
     static enum EnumProtocolState {
 
         HELLO, KEY, AUTHENTICATING, READY_TO_ACCEPT, DELAY_ACCEPT, ACCEPTED;
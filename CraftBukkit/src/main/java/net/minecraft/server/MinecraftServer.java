@@ -1270,6 +1270,7 @@ public abstract class MinecraftServer implements ICommandListener, Runnable, IAs
 
     public void setMotd(String s) {
         this.motd = s;
+        PacketStatusListener.invalidateCache(); // CraftBukkit
     }
 
     public int getMaxBuildHeight() {
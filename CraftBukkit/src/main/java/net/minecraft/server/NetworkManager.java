@@ -6,6 +6,8 @@ import io.netty.channel.Channel;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOutboundBuffer;
+import io.netty.channel.ChannelPromise;
 import io.netty.channel.SimpleChannelInboundHandler;
 import io.netty.channel.epoll.EpollEventLoopGroup;
 import io.netty.channel.local.LocalChannel;
@@ -17,6 +19,10 @@ import io.netty.util.AttributeKey;
 import io.netty.util.concurrent.Future;
 import io.netty.util.concurrent.GenericFutureListener;
 import java.net.SocketAddress;
+import java.nio.channels.ClosedChannelException;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Queue;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import javax.annotation.Nullable;
@@ -70,6 +76,25 @@ public class NetworkManager extends SimpleChannelInboundHandler<Packet<?>> {
     private IChatBaseComponent n;
     private boolean o;
     private boolean p;
+    // CraftBukkit start - write batching, only touched on the event loop unless volatile
+    private int unflushedPackets;
+    private long unflushedBytes;
+    private volatile long flushes;
+    private volatile long flushedPackets;
+    private volatile long flushedBytes;
+    private final Runnable flushTask = new Runnable() {
+        public void run() {
+            NetworkManager.this.writeHeld();
+            NetworkManager.this.flushNow();
+        }
+    };
+    // Packets waiting for a slow client to catch up, only touched on the event loop unless volatile
+    private final ArrayDeque<NetworkManager.HeldPacket> heldPackets = new ArrayDeque<NetworkManager.HeldPacket>();
+    private final Map<Long, NetworkManager.HeldPacket> supersedable = new HashMap<Long, NetworkManager.HeldPacket>();
+    private volatile int heldCount;
+    private volatile long supersededPackets;
+    private volatile long receivedPackets; // Event loop only writes
+    // CraftBukkit end
 
     public NetworkManager(EnumProtocolDirection enumprotocoldirection) {
         this.h = enumprotocoldirection;
@@ -79,6 +104,11 @@ public class NetworkManager extends SimpleChannelInboundHandler<Packet<?>> {
         super.channelActive(channelhandlercontext);
         this.channel = channelhandlercontext.channel();
         this.l = this.channel.remoteAddress();
+        // CraftBukkit start - turn broadcast packets into bytes before they are framed
+        if (this.channel.pipeline().get("prepender") != null) {
+            this.channel.pipeline().addAfter("prepender", "shared_packet", SharedPacket.ENCODER);
+        }
+        // CraftBukkit end
 
         try {
             this.setProtocol(EnumProtocol.HANDSHAKING);
@@ -95,9 +125,17 @@ public class NetworkManager extends SimpleChannelInboundHandler<Packet<?>> {
     }
 
     public void channelInactive(ChannelHandlerContext channelhandlercontext) throws Exception {
+        this.releaseHeld(); // CraftBukkit
         this.close(new ChatMessage("disconnect.endOfStream", new Object[0]));
     }
 
+    // CraftBukkit start
+    public void channelWritabilityChanged(ChannelHandlerContext channelhandlercontext) throws Exception {
+        this.writeHeld();
+        super.channelWritabilityChanged(channelhandlercontext);
+    }
+    // CraftBukkit end
+
     public void exceptionCaught(ChannelHandlerContext channelhandlercontext, Throwable throwable) throws Exception {
         ChatMessage chatmessage;
 
@@ -113,6 +151,13 @@ public class NetworkManager extends SimpleChannelInboundHandler<Packet<?>> {
 
     protected void a(ChannelHandlerContext channelhandlercontext, Packet<?> packet) throws Exception {
         if (this.channel.isOpen()) {
+            // CraftBukkit start - checked, and movement merged, before anything is queued for the main thread
+            ++this.receivedPackets;
+            if (this.m instanceof PlayerConnection && !((PlayerConnection) this.m).packetFilter.a(packet)) {
+                return;
+            }
+            // CraftBukkit end
+
             try {
                 ((Packet) packet).a(this.m); // CraftBukkit - decompile error
             } catch (CancelledPacketHandleException cancelledpackethandleexception) {
@@ -160,9 +205,37 @@ public class NetworkManager extends SimpleChannelInboundHandler<Packet<?>> {
 
     }
 
+    // CraftBukkit start
+    /**
+     * Sends a packet encoded once for every connection it is broadcast to.
+     * Connections not yet in the play state encode it on their own, the
+     * same as any other packet.
+     */
+    public void sendPacket(final SharedPacket sharedpacket) {
+        if (!this.isConnected() || this.channel.attr(NetworkManager.c).get() != EnumProtocol.PLAY) {
+            this.sendPacket(sharedpacket.getPacket());
+            return;
+        }
+
+        this.m();
+        final boolean flag = !this.batchWrites();
+
+        if (this.channel.eventLoop().inEventLoop()) {
+            this.writePacket(sharedpacket, flag).addListener(ChannelFutureListener.FIRE_EXCEPTION_ON_FAILURE);
+        } else {
+            this.channel.eventLoop().execute(new Runnable() {
+                public void run() {
+                    NetworkManager.this.writePacket(sharedpacket, flag).addListener(ChannelFutureListener.FIRE_EXCEPTION_ON_FAILURE);
+                }
+            });
+        }
+    }
+    // CraftBukkit end
+
     private void a(final Packet<?> packet, @Nullable final GenericFutureListener<? extends Future<? super Void>>[] agenericfuturelistener) {
         final EnumProtocol enumprotocol = EnumProtocol.a(packet);
         final EnumProtocol enumprotocol1 = (EnumProtocol) this.channel.attr(NetworkManager.c).get();
+        final boolean flag = !this.batchWrites(); // CraftBukkit
 
         if (enumprotocol1 != enumprotocol) {
             NetworkManager.g.debug("Disabled auto read");
@@ -174,7 +247,7 @@ public class NetworkManager extends SimpleChannelInboundHandler<Packet<?>> {
                 this.setProtocol(enumprotocol);
             }
 
-            ChannelFuture channelfuture = this.channel.writeAndFlush(packet);
+            ChannelFuture channelfuture = this.writePacket(packet, flag); // CraftBukkit
 
             if (agenericfuturelistener != null) {
                 channelfuture.addListeners(agenericfuturelistener);
@@ -188,7 +261,7 @@ public class NetworkManager extends SimpleChannelInboundHandler<Packet<?>> {
                         NetworkManager.this.setProtocol(enumprotocol);
                     }
 
-                    ChannelFuture channelfuture = NetworkManager.this.channel.writeAndFlush(packet);
+                    ChannelFuture channelfuture = NetworkManager.this.writePacket(packet, flag); // CraftBukkit
 
                     if (agenericfuturelistener != null) {
                         channelfuture.addListeners(agenericfuturelistener);
@@ -225,17 +298,231 @@ public class NetworkManager extends SimpleChannelInboundHandler<Packet<?>> {
         }
 
         if (this.channel != null) {
-            this.channel.flush();
+            this.channel.eventLoop().execute(this.flushTask); // CraftBukkit - counted flush, after all writes queued this tick
+        }
+
+    }
+
+    // CraftBukkit start
+    /**
+     * Packets sent from the main thread are only written, and flushed
+     * together once the connection ticks or the configured flush threshold
+     * of bytes is waiting. Anything sent from another thread is flushed
+     * straight away as nothing would flush it in time.
+     */
+    private boolean batchWrites() {
+        MinecraftServer minecraftserver = MinecraftServer.getServer();
+
+        return minecraftserver != null && minecraftserver.server.batchPacketFlush && minecraftserver.isMainThread();
+    }
+
+    // Event loop only
+    private ChannelFuture writePacket(Object object, boolean flag) {
+        if (!this.channel.isWritable() && this.unflushedPackets > 0) {
+            // Maybe the client is keeping up fine and it is only our own batching filling the buffer
+            this.flushNow();
+        }
+
+        if ((!this.channel.isWritable() || !this.heldPackets.isEmpty()) && !isControlPacket(object) && this.channel.attr(NetworkManager.c).get() == EnumProtocol.PLAY) {
+            return this.hold(object);
+        }
+
+        return this.writePacket(object, this.channel.newPromise(), flag);
+    }
+
+    // Event loop only
+    private ChannelFuture writePacket(Object object, ChannelPromise channelpromise, boolean flag) {
+        long i = this.pendingBytes();
+        ChannelFuture channelfuture = this.channel.write(object, channelpromise);
+
+        ++this.unflushedPackets;
+        this.unflushedBytes += this.pendingBytes() - i;
+        if (flag || this.unflushedBytes >= MinecraftServer.getServer().server.packetFlushThreshold) {
+            this.flushNow();
+        }
+
+        return channelfuture;
+    }
+
+    /**
+     * Queues a packet while the client is not taking data as fast as it is
+     * sent. Packets are held in the order they were sent, except that an
+     * absolute entity update replaces the one held for the same entity
+     * before it.
+     */
+    private ChannelFuture hold(Object object) {
+        ChannelPromise channelpromise = this.channel.newPromise();
+        Long key = supersedeKey(object);
+
+        if (key != null) {
+            NetworkManager.HeldPacket networkmanager_heldpacket = this.supersedable.get(key);
+
+            if (networkmanager_heldpacket != null) {
+                if (object instanceof PacketPlayOutEntityMetadata) {
+                    // Changes are not repeated in later updates, so keep the older values this one does not replace
+                    object = PacketPlayOutEntityMetadata.merge((PacketPlayOutEntityMetadata) unwrap(networkmanager_heldpacket.packet), (PacketPlayOutEntityMetadata) unwrap(object));
+                }
+
+                networkmanager_heldpacket.packet = null;
+                networkmanager_heldpacket.promise.trySuccess();
+                --this.heldCount;
+                ++this.supersededPackets;
+            }
+        }
+
+        NetworkManager.HeldPacket networkmanager_heldpacket1 = new NetworkManager.HeldPacket(object, channelpromise, key);
+
+        if (key != null) {
+            this.supersedable.put(key, networkmanager_heldpacket1);
+        }
+
+        this.heldPackets.add(networkmanager_heldpacket1);
+        ++this.heldCount;
+        return channelpromise;
+    }
+
+    // Event loop only
+    private void writeHeld() {
+        boolean flag = false;
+        NetworkManager.HeldPacket networkmanager_heldpacket;
+
+        while (this.channel.isWritable() && (networkmanager_heldpacket = this.heldPackets.poll()) != null) {
+            if (networkmanager_heldpacket.packet != null) {
+                if (networkmanager_heldpacket.key != null) {
+                    this.supersedable.remove(networkmanager_heldpacket.key);
+                }
+
+                --this.heldCount;
+                this.writePacket(networkmanager_heldpacket.packet, networkmanager_heldpacket.promise, false);
+                flag = true;
+            }
+        }
+
+        if (flag) {
+            this.flushNow();
         }
+    }
+
+    // Event loop only
+    private void releaseHeld() {
+        NetworkManager.HeldPacket networkmanager_heldpacket;
+
+        while ((networkmanager_heldpacket = this.heldPackets.poll()) != null) {
+            if (networkmanager_heldpacket.packet != null) {
+                networkmanager_heldpacket.promise.tryFailure(new ClosedChannelException());
+            }
+        }
+
+        this.supersedable.clear();
+        this.heldCount = 0;
+    }
+
+    private static Object unwrap(Object object) {
+        return object instanceof SharedPacket ? ((SharedPacket) object).getPacket() : object;
+    }
 
+    // Keep-alives must get through before the client gives up on us
+    private static boolean isControlPacket(Object object) {
+        object = unwrap(object);
+        return object instanceof PacketPlayOutKeepAlive || object instanceof PacketPlayOutKickDisconnect;
     }
 
+    @Nullable
+    private static Long supersedeKey(Object object) {
+        object = unwrap(object);
+
+        if (object instanceof PacketPlayOutEntityTeleport) {
+            return Long.valueOf(1L << 32 | ((PacketPlayOutEntityTeleport) object).getEntityId() & 0xFFFFFFFFL);
+        } else if (object instanceof PacketPlayOutEntityVelocity) {
+            return Long.valueOf(2L << 32 | ((PacketPlayOutEntityVelocity) object).getEntityId() & 0xFFFFFFFFL);
+        } else if (object instanceof PacketPlayOutEntityHeadRotation) {
+            return Long.valueOf(3L << 32 | ((PacketPlayOutEntityHeadRotation) object).getEntityId() & 0xFFFFFFFFL);
+        } else if (object instanceof PacketPlayOutEntityMetadata) {
+            return Long.valueOf(4L << 32 | ((PacketPlayOutEntityMetadata) object).getEntityId() & 0xFFFFFFFFL);
+        } else {
+            return null;
+        }
+    }
+
+    // Event loop only
+    private void flushNow() {
+        if (this.unflushedPackets > 0) {
+            this.flushedPackets += this.unflushedPackets;
+            this.flushedBytes += this.unflushedBytes;
+            ++this.flushes;
+            this.unflushedPackets = 0;
+            this.unflushedBytes = 0;
+        }
+
+        this.channel.flush();
+    }
+
+    private long pendingBytes() {
+        ChannelOutboundBuffer channeloutboundbuffer = this.channel.unsafe().outboundBuffer();
+
+        return channeloutboundbuffer == null ? 0L : channeloutboundbuffer.totalPendingWriteBytes();
+    }
+
+    public long getFlushes() {
+        return this.flushes;
+    }
+
+    public double getPacketsPerFlush() {
+        long i = this.flushes;
+
+        return i == 0L ? 0.0D : (double) this.flushedPackets / (double) i;
+    }
+
+    public double getBytesPerFlush() {
+        long i = this.flushes;
+
+        return i == 0L ? 0.0D : (double) this.flushedBytes / (double) i;
+    }
+
+    public long getSentPackets() {
+        return this.flushedPackets;
+    }
+
+    /**
+     * @return bytes sent, as they went out on the wire
+     */
+    public long getSentBytes() {
+        return this.flushedBytes;
+    }
+
+    public long getReceivedPackets() {
+        return this.receivedPackets;
+    }
+
+    /**
+     * @return packets held back because the client is not keeping up
+     */
+    public int getHeldPackets() {
+        return this.heldCount;
+    }
+
+    /**
+     * @return held entity updates dropped or merged because a newer one
+     *     for the same entity replaced them
+     */
+    public long getSupersededPackets() {
+        return this.supersededPackets;
+    }
+    // CraftBukkit end
+
     public SocketAddress getSocketAddress() {
         return this.l;
     }
 
     public void close(IChatBaseComponent ichatbasecomponent) {
         if (this.channel.isOpen()) {
+            // CraftBukkit start - a disconnect message may still be unflushed
+            if (this.channel.eventLoop().inEventLoop()) {
+                this.flushNow();
+            } else {
+                this.channel.eventLoop().execute(this.flushTask);
+            }
+            // CraftBukkit end
             this.channel.close(); // We can't wait as this may be called from an event loop.
             this.n = ichatbasecomponent;
         }
@@ -317,6 +604,21 @@ public class NetworkManager extends SimpleChannelInboundHandler<Packet<?>> {
         this.a(channelhandlercontext, (Packet) object);
     }
 
+    // CraftBukkit start
+    private static class HeldPacket {
+
+        private Object packet;
+        private final ChannelPromise promise;
+        private final Long key;
+
+        private HeldPacket(Object object, ChannelPromise channelpromise, @Nullable Long key) {
+            this.packet = object;
+            this.promise = channelpromise;
+            this.key = key;
+        }
+    }
+    // CraftBukkit end
+
     static class QueuedPacket {
 
         private final Packet<?> a;
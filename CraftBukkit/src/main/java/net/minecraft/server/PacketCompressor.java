@@ -0,0 +1,55 @@
+package net.minecraft.server;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.MessageToByteEncoder;
+import org.bukkit.craftbukkit.util.CompressionBackend; // CraftBukkit
+
+public class PacketCompressor extends MessageToByteEncoder<ByteBuf> {
+
+    // CraftBukkit start - share the pooled compression backend
+    // private final byte[] a = new byte[8192];
+    // private final Deflater b;
+    private int c;
+    PacketMetrics.Counter metrics; // Set by the encoder for the packet about to be compressed
+
+    public PacketCompressor(int i) {
+        this.c = i;
+        // this.b = new Deflater();
+    }
+
+    protected void a(ChannelHandlerContext channelhandlercontext, ByteBuf bytebuf, ByteBuf bytebuf1) throws Exception {
+        int i = bytebuf.readableBytes();
+        PacketDataSerializer packetdataserializer = new PacketDataSerializer(bytebuf1);
+        long j = System.nanoTime();
+        int k = bytebuf1.writerIndex();
+
+        if (i < this.c) {
+            packetdataserializer.d(0);
+            packetdataserializer.writeBytes(bytebuf);
+        } else {
+            packetdataserializer.d(i);
+            CompressionBackend.get().deflate(bytebuf, bytebuf1);
+        }
+
+        if (this.metrics != null) {
+            this.metrics.compressed(bytebuf1.writerIndex() - k, System.nanoTime() - j);
+            this.metrics = null;
+        }
+    }
+    // CraftBukkit end
+
+    public void a(int i) {
+        this.c = i;
+    }
+
+    // CraftBukkit start
+    public int getThreshold() {
+        return this.c;
+    }
+    // CraftBukkit end
+
+    protected void encode(ChannelHandlerContext channelhandlercontext, Object object, ByteBuf bytebuf) throws Exception {
+        this.a(channelhandlercontext, (ByteBuf) object, bytebuf);
+    }
+}
@@ -28,6 +28,14 @@ import org.bukkit.craftbukkit.inventory.CraftItemStack; // CraftBukkit
 public class PacketDataSerializer extends ByteBuf {
 
     private final ByteBuf a;
+    // CraftBukkit start - reused when decoding strings out of direct buffers
+    private static final int STRING_BUFFER_SIZE = 8192;
+    private static final ThreadLocal<byte[]> stringBuffer = new ThreadLocal<byte[]>() {
+        protected byte[] initialValue() {
+            return new byte[PacketDataSerializer.STRING_BUFFER_SIZE];
+        }
+    };
+    // CraftBukkit end
 
     public PacketDataSerializer(ByteBuf bytebuf) {
         this.a = bytebuf;
@@ -140,6 +148,25 @@ public class PacketDataSerializer extends ByteBuf {
     }
 
     public int g() {
+        // CraftBukkit start - decode from absolute indices when the whole VarInt is known to be there
+        if (this.a.readableBytes() >= 5) {
+            int k = this.a.readerIndex();
+            int l = 0;
+
+            for (int i1 = 0; i1 < 5; ++i1) {
+                byte b1 = this.a.getByte(k + i1);
+
+                l |= (b1 & 127) << i1 * 7;
+                if ((b1 & 128) == 0) {
+                    this.a.readerIndex(k + i1 + 1);
+                    return l;
+                }
+            }
+
+            throw new RuntimeException("VarInt too big");
+        }
+        // CraftBukkit end
+
         int i = 0;
         int j = 0;
 
@@ -184,12 +211,21 @@ public class PacketDataSerializer extends ByteBuf {
     }
 
     public PacketDataSerializer d(int i) {
-        while ((i & -128) != 0) {
-            this.writeByte(i & 127 | 128);
-            i >>>= 7;
+        // CraftBukkit start - write the whole VarInt at once rather than a byte at a time
+        if ((i & -128) == 0) {
+            this.a.writeByte(i);
+        } else if ((i & -16384) == 0) {
+            this.a.writeShort((i & 127 | 128) << 8 | i >>> 7);
+        } else if ((i & -2097152) == 0) {
+            this.a.writeMedium((i & 127 | 128) << 16 | (i >>> 7 & 127 | 128) << 8 | i >>> 14);
+        } else if ((i & -268435456) == 0) {
+            this.a.writeInt((i & 127 | 128) << 24 | (i >>> 7 & 127 | 128) << 16 | (i >>> 14 & 127 | 128) << 8 | i >>> 21);
+        } else {
+            this.a.writeInt((i & 127 | 128) << 24 | (i >>> 7 & 127 | 128) << 16 | (i >>> 14 & 127 | 128) << 8 | (i >>> 21 & 127 | 128));
+            this.a.writeByte(i >>> 28);
         }
+        // CraftBukkit end
 
-        this.writeByte(i);
         return this;
     }
 
@@ -282,9 +318,21 @@ public class PacketDataSerializer extends ByteBuf {
         } else if (j < 0) {
             throw new DecoderException("The received encoded string buffer length is less than zero! Weird string!");
         } else {
-            String s = this.toString(this.readerIndex(), j, StandardCharsets.UTF_8);
+            // CraftBukkit start - decode without an intermediate copy of the bytes
+            String s;
+            int k = this.a.readerIndex();
+
+            if (this.a.hasArray()) {
+                s = new String(this.a.array(), this.a.arrayOffset() + k, j, StandardCharsets.UTF_8);
+            } else {
+                byte[] abyte = j <= PacketDataSerializer.STRING_BUFFER_SIZE ? PacketDataSerializer.stringBuffer.get() : new byte[j];
 
-            this.readerIndex(this.readerIndex() + j);
+                this.a.getBytes(k, abyte, 0, j);
+                s = new String(abyte, 0, j, StandardCharsets.UTF_8);
+            }
+
+            this.a.readerIndex(k + j);
+            // CraftBukkit end
             if (s.length() > i) {
                 throw new DecoderException("The received string length is longer than maximum allowed (" + j + " > " + i + ")");
             } else {
@@ -294,16 +342,77 @@ public class PacketDataSerializer extends ByteBuf {
     }
 
     public PacketDataSerializer a(String s) {
-        byte[] abyte = s.getBytes(StandardCharsets.UTF_8);
+        // CraftBukkit start - encode straight into the buffer
+        int i = utf8Length(s);
 
-        if (abyte.length > 32767) {
-            throw new EncoderException("String too big (was " + abyte.length + " bytes encoded, max " + 32767 + ")");
+        if (i > 32767) {
+            throw new EncoderException("String too big (was " + i + " bytes encoded, max " + 32767 + ")");
         } else {
-            this.d(abyte.length);
-            this.writeBytes(abyte);
+            this.d(i);
+            this.a.ensureWritable(i);
+            int j = this.a.writerIndex();
+            int k = j;
+            int l = s.length();
+
+            for (int i1 = 0; i1 < l; ++i1) {
+                char c0 = s.charAt(i1);
+
+                if (c0 < 128) {
+                    this.a.setByte(k++, c0);
+                } else if (c0 < 2048) {
+                    this.a.setByte(k++, 192 | c0 >> 6);
+                    this.a.setByte(k++, 128 | c0 & 63);
+                } else if (Character.isSurrogate(c0)) {
+                    if (Character.isHighSurrogate(c0) && i1 + 1 < l && Character.isLowSurrogate(s.charAt(i1 + 1))) {
+                        int j1 = Character.toCodePoint(c0, s.charAt(++i1));
+
+                        this.a.setByte(k++, 240 | j1 >> 18);
+                        this.a.setByte(k++, 128 | j1 >> 12 & 63);
+                        this.a.setByte(k++, 128 | j1 >> 6 & 63);
+                        this.a.setByte(k++, 128 | j1 & 63);
+                    } else {
+                        // Unpaired surrogate, replaced the same way String.getBytes does
+                        this.a.setByte(k++, '?');
+                    }
+                } else {
+                    this.a.setByte(k++, 224 | c0 >> 12);
+                    this.a.setByte(k++, 128 | c0 >> 6 & 63);
+                    this.a.setByte(k++, 128 | c0 & 63);
+                }
+            }
+
+            this.a.writerIndex(j + i);
             return this;
         }
+        // CraftBukkit end
+    }
+
+    // CraftBukkit start
+    private static int utf8Length(String s) {
+        int i = s.length();
+        int j = i;
+
+        for (int k = 0; k < i; ++k) {
+            char c0 = s.charAt(k);
+
+            if (c0 >= 128) {
+                if (c0 < 2048) {
+                    ++j;
+                } else if (Character.isSurrogate(c0)) {
+                    if (Character.isHighSurrogate(c0) && k + 1 < i && Character.isLowSurrogate(s.charAt(k + 1))) {
+                        // Both chars of the pair make up four bytes
+                        j += 2;
+                        ++k;
+                    }
+                } else {
+                    j += 2;
+                }
+            }
+        }
+
+        return j;
     }
+    // CraftBukkit end
 
     public MinecraftKey l() {
         return new MinecraftKey(this.e(32767));
@@ -0,0 +1,56 @@
+package net.minecraft.server;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.ByteToMessageDecoder;
+import io.netty.handler.codec.DecoderException;
+import java.util.List;
+import org.bukkit.craftbukkit.util.CompressionBackend; // CraftBukkit
+
+public class PacketDecompressor extends ByteToMessageDecoder {
+
+    // private final Inflater a; // CraftBukkit
+    private int b;
+
+    public PacketDecompressor(int i) {
+        this.b = i;
+        // this.a = new Inflater(); // CraftBukkit
+    }
+
+    protected void decode(ChannelHandlerContext channelhandlercontext, ByteBuf bytebuf, List<Object> list) throws Exception {
+        if (bytebuf.readableBytes() != 0) {
+            PacketDataSerializer packetdataserializer = new PacketDataSerializer(bytebuf);
+            int i = packetdataserializer.g();
+
+            if (i == 0) {
+                list.add(packetdataserializer.readBytes(packetdataserializer.readableBytes()));
+            } else {
+                if (i < this.b) {
+                    throw new DecoderException("Badly compressed packet - size of " + i + " is below server threshold of " + this.b);
+                }
+
+                if (i > 2097152) {
+                    throw new DecoderException("Badly compressed packet - size of " + i + " is larger than protocol maximum of " + 2097152);
+                }
+
+                // CraftBukkit start - share the pooled compression backend
+                ByteBuf bytebuf1 = Unpooled.buffer(i);
+
+                CompressionBackend.get().inflate(packetdataserializer, bytebuf1, i);
+                packetdataserializer.skipBytes(packetdataserializer.readableBytes());
+                if (bytebuf1.readableBytes() != i) {
+                    throw new DecoderException("Badly compressed packet - size of " + bytebuf1.readableBytes() + " does not match declared size of " + i);
+                }
+
+                list.add(bytebuf1);
+                // CraftBukkit end
+            }
+
+        }
+    }
+
+    public void a(int i) {
+        this.b = i;
+    }
+}
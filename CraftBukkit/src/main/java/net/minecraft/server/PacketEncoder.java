@@ -0,0 +1,70 @@
+package net.minecraft.server;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandler; // CraftBukkit
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.MessageToByteEncoder;
+import java.io.IOException;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.Marker;
+import org.apache.logging.log4j.MarkerManager;
+
+public class PacketEncoder extends MessageToByteEncoder<Packet<?>> {
+
+    private static final Logger a = LogManager.getLogger();
+    private static final Marker b = MarkerManager.getMarker("PACKET_SENT", NetworkManager.b);
+    private final EnumProtocolDirection c;
+
+    public PacketEncoder(EnumProtocolDirection enumprotocoldirection) {
+        this.c = enumprotocoldirection;
+    }
+
+    protected void a(ChannelHandlerContext channelhandlercontext, Packet<?> packet, ByteBuf bytebuf) throws Exception {
+        EnumProtocol enumprotocol = (EnumProtocol) channelhandlercontext.channel().attr(NetworkManager.c).get();
+
+        if (enumprotocol == null) {
+            throw new RuntimeException("ConnectionProtocol unknown: " + packet.toString());
+        } else {
+            Integer integer = enumprotocol.a(this.c, packet);
+
+            if (PacketEncoder.a.isDebugEnabled()) {
+                PacketEncoder.a.debug(PacketEncoder.b, "OUT: [{}:{}] {}", channelhandlercontext.channel().attr(NetworkManager.c).get(), integer, packet.getClass().getName());
+            }
+
+            if (integer == null) {
+                throw new IOException("Can\'t serialize unregistered packet");
+            } else {
+                PacketDataSerializer packetdataserializer = new PacketDataSerializer(bytebuf);
+                long i = System.nanoTime(); // CraftBukkit
+                int j = bytebuf.writerIndex(); // CraftBukkit
+
+                packetdataserializer.d(integer.intValue());
+
+                try {
+                    packet.b(packetdataserializer);
+                } catch (Throwable throwable) {
+                    PacketEncoder.a.error(throwable);
+                }
+
+                // CraftBukkit start
+                PacketMetrics.Counter packetmetrics_counter = PacketMetrics.outbound(packet.getClass());
+                ChannelHandler channelhandler = channelhandlercontext.pipeline().get("compress");
+
+                j = bytebuf.writerIndex() - j;
+                packetmetrics_counter.encoded(j, System.nanoTime() - i);
+                if (channelhandler instanceof PacketCompressor) {
+                    // Compressed next, on this thread, as soon as we return
+                    ((PacketCompressor) channelhandler).metrics = packetmetrics_counter;
+                } else {
+                    packetmetrics_counter.compressed(j, 0L);
+                }
+                // CraftBukkit end
+            }
+        }
+    }
+
+    protected void encode(ChannelHandlerContext channelhandlercontext, Object object, ByteBuf bytebuf) throws Exception {
+        this.a(channelhandlercontext, (Packet) object, bytebuf);
+    }
+}
@@ -0,0 +1,137 @@
+package net.minecraft.server;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+// CraftBukkit - new class
+/**
+ * Totals per packet type of everything encoded and decoded by the network
+ * threads, since startup or the last {@link #reset()}.
+ * <p>
+ * Every event loop adds to the same counters, so they are striped adders
+ * rather than atomics, and the lookup by packet class only locks the first
+ * time a type is seen.
+ */
+public final class PacketMetrics {
+
+    private static final ConcurrentMap<Class<?>, PacketMetrics.Counter> outbound = new ConcurrentHashMap<Class<?>, PacketMetrics.Counter>();
+    private static final ConcurrentMap<Class<?>, PacketMetrics.Counter> inbound = new ConcurrentHashMap<Class<?>, PacketMetrics.Counter>();
+
+    private PacketMetrics() {}
+
+    static PacketMetrics.Counter outbound(Class<?> oclass) {
+        return get(PacketMetrics.outbound, oclass);
+    }
+
+    static PacketMetrics.Counter inbound(Class<?> oclass) {
+        return get(PacketMetrics.inbound, oclass);
+    }
+
+    private static PacketMetrics.Counter get(ConcurrentMap<Class<?>, PacketMetrics.Counter> concurrentmap, Class<?> oclass) {
+        PacketMetrics.Counter packetmetrics_counter = concurrentmap.get(oclass);
+
+        if (packetmetrics_counter == null) {
+            PacketMetrics.Counter packetmetrics_counter1 = new PacketMetrics.Counter(oclass.getSimpleName());
+
+            packetmetrics_counter = concurrentmap.putIfAbsent(oclass, packetmetrics_counter1);
+            if (packetmetrics_counter == null) {
+                packetmetrics_counter = packetmetrics_counter1;
+            }
+        }
+
+        return packetmetrics_counter;
+    }
+
+    /**
+     * @return a counter for every packet type sent so far
+     */
+    public static List<PacketMetrics.Counter> getOutbound() {
+        return new ArrayList<PacketMetrics.Counter>(PacketMetrics.outbound.values());
+    }
+
+    /**
+     * @return a counter for every packet type received so far
+     */
+    public static List<PacketMetrics.Counter> getInbound() {
+        return new ArrayList<PacketMetrics.Counter>(PacketMetrics.inbound.values());
+    }
+
+    public static void reset() {
+        for (PacketMetrics.Counter packetmetrics_counter : PacketMetrics.outbound.values()) {
+            packetmetrics_counter.reset();
+        }
+
+        for (PacketMetrics.Counter packetmetrics_counter : PacketMetrics.inbound.values()) {
+            packetmetrics_counter.reset();
+        }
+    }
+
+    public static class Counter {
+
+        private final String name;
+        private final LongAdder packets = new LongAdder();
+        private final LongAdder bytes = new LongAdder();
+        private final LongAdder compressedBytes = new LongAdder();
+        private final LongAdder nanos = new LongAdder();
+
+        private Counter(String s) {
+            this.name = s;
+        }
+
+        void encoded(int i, long j) {
+            this.packets.increment();
+            this.bytes.add((long) i);
+            this.nanos.add(j);
+        }
+
+        void compressed(int i, long j) {
+            this.compressedBytes.add((long) i);
+            this.nanos.add(j);
+        }
+
+        void time(long i) {
+            this.nanos.add(i);
+        }
+
+        private void reset() {
+            this.packets.reset();
+            this.bytes.reset();
+            this.compressedBytes.reset();
+            this.nanos.reset();
+        }
+
+        public String getName() {
+            return this.name;
+        }
+
+        public long getPackets() {
+            return this.packets.sum();
+        }
+
+        /**
+         * @return bytes of packet id and body, before compression
+         */
+        public long getBytes() {
+            return this.bytes.sum();
+        }
+
+        /**
+         * @return bytes after compression, including packets under the
+         *     compression threshold; the same as {@link #getBytes()} for
+         *     connections without compression. Always 0 for inbound packets
+         */
+        public long getCompressedBytes() {
+            return this.compressedBytes.sum();
+        }
+
+        /**
+         * @return time spent encoding and compressing, or decoding
+         */
+        public long getNanos() {
+            return this.nanos.sum();
+        }
+    }
+}
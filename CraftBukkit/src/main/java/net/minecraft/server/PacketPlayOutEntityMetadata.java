@@ -0,0 +1,76 @@
+package net.minecraft.server;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+public class PacketPlayOutEntityMetadata implements Packet<PacketListenerPlayOut> {
+
+    private int a;
+    private List<DataWatcher.Item<?>> b;
+
+    public PacketPlayOutEntityMetadata() {}
+
+    public PacketPlayOutEntityMetadata(int i, DataWatcher datawatcher, boolean flag) {
+        this.a = i;
+        if (flag) {
+            this.b = datawatcher.c();
+            datawatcher.e();
+        } else {
+            this.b = datawatcher.b();
+        }
+
+    }
+
+    public void a(PacketDataSerializer packetdataserializer) throws IOException {
+        this.a = packetdataserializer.g();
+        this.b = DataWatcher.b(packetdataserializer);
+    }
+
+    public void b(PacketDataSerializer packetdataserializer) throws IOException {
+        packetdataserializer.d(this.a);
+        DataWatcher.a(this.b, packetdataserializer);
+    }
+
+    public void a(PacketListenerPlayOut packetlistenerplayout) {
+        packetlistenerplayout.a(this);
+    }
+
+    // CraftBukkit start
+    int getEntityId() {
+        return this.a;
+    }
+
+    // A new update holding the values of both, the newer one winning where they overlap
+    static PacketPlayOutEntityMetadata merge(PacketPlayOutEntityMetadata packetplayoutentitymetadata, PacketPlayOutEntityMetadata packetplayoutentitymetadata1) {
+        PacketPlayOutEntityMetadata packetplayoutentitymetadata2 = new PacketPlayOutEntityMetadata();
+        List<DataWatcher.Item<?>> list = new ArrayList<DataWatcher.Item<?>>();
+
+        packetplayoutentitymetadata2.a = packetplayoutentitymetadata1.a;
+        if (packetplayoutentitymetadata.b != null) {
+            list.addAll(packetplayoutentitymetadata.b);
+        }
+
+        if (packetplayoutentitymetadata1.b != null) {
+            Iterator<DataWatcher.Item<?>> iterator = list.iterator();
+
+            while (iterator.hasNext()) {
+                int i = iterator.next().a().a();
+
+                for (DataWatcher.Item<?> datawatcher_item : packetplayoutentitymetadata1.b) {
+                    if (datawatcher_item.a().a() == i) {
+                        iterator.remove();
+                        break;
+                    }
+                }
+            }
+
+            list.addAll(packetplayoutentitymetadata1.b);
+        }
+
+        packetplayoutentitymetadata2.b = list.isEmpty() ? null : list;
+        return packetplayoutentitymetadata2;
+    }
+    // CraftBukkit end
+}
@@ -0,0 +1,272 @@
+package net.minecraft.server;
+
+import com.google.common.collect.Lists;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map.Entry;
+
+public class PacketPlayOutMapChunk implements Packet<PacketListenerPlayOut> {
+
+    private int a;
+    private int b;
+    private int c;
+    private byte[] d;
+    private List<NBTTagCompound> e;
+    private boolean f;
+
+    public PacketPlayOutMapChunk() {}
+
+    public PacketPlayOutMapChunk(Chunk chunk, int i) {
+        this.a = chunk.locX;
+        this.b = chunk.locZ;
+        this.f = i == '\uffff';  // 0b1111_1111_1111_1111
+        boolean flag = chunk.getWorld().worldProvider.m();
+
+        this.d = new byte[this.a(chunk, flag, i)];
+        this.c = this.a(new PacketDataSerializer(this.g()), chunk, flag, i);
+        this.a(chunk, i);
+    }
+
+    // CraftBukkit start - full chunk packet reusing the encoded sections of an earlier one
+    public PacketPlayOutMapChunk(Chunk chunk, PacketPlayOutMapChunk.SectionCache cache) {
+        this.a = chunk.locX;
+        this.b = chunk.locZ;
+        this.f = true;
+        cache.update(chunk, chunk.getWorld().worldProvider.m());
+        this.c = cache.mask;
+        this.d = cache.data;
+        this.a(chunk, '\uffff');
+    }
+
+    private void a(Chunk chunk, int i) {
+        // CraftBukkit end
+        this.e = Lists.newArrayList();
+        Iterator iterator = chunk.getTileEntities().entrySet().iterator();
+
+        while (iterator.hasNext()) {
+            Entry entry = (Entry) iterator.next();
+            BlockPosition blockposition = (BlockPosition) entry.getKey();
+            TileEntity tileentity = (TileEntity) entry.getValue();
+            int j = blockposition.getY() >> 4;
+
+            if (this.e() || (i & 1 << j) != 0) {
+                NBTTagCompound nbttagcompound = tileentity.d();
+
+                this.e.add(nbttagcompound);
+            }
+        }
+
+    }
+
+    public void a(PacketDataSerializer packetdataserializer) throws IOException {
+        this.a = packetdataserializer.readInt();
+        this.b = packetdataserializer.readInt();
+        this.f = packetdataserializer.readBoolean();
+        this.c = packetdataserializer.g();
+        int i = packetdataserializer.g();
+
+        if (i > 2097152) {
+            throw new RuntimeException("Chunk Packet trying to allocate too much memory on read.");
+        } else {
+            this.d = new byte[i];
+            packetdataserializer.readBytes(this.d);
+            int j = packetdataserializer.g();
+
+            this.e = Lists.newArrayList();
+
+            for (int k = 0; k < j; ++k) {
+                this.e.add(packetdataserializer.j());
+            }
+
+        }
+    }
+
+    public void b(PacketDataSerializer packetdataserializer) throws IOException {
+        packetdataserializer.writeInt(this.a);
+        packetdataserializer.writeInt(this.b);
+        packetdataserializer.writeBoolean(this.f);
+        packetdataserializer.d(this.c);
+        packetdataserializer.d(this.d.length);
+        packetdataserializer.writeBytes(this.d);
+        packetdataserializer.d(this.e.size());
+        Iterator iterator = this.e.iterator();
+
+        while (iterator.hasNext()) {
+            NBTTagCompound nbttagcompound = (NBTTagCompound) iterator.next();
+
+            packetdataserializer.a(nbttagcompound);
+        }
+
+    }
+
+    public void a(PacketListenerPlayOut packetlistenerplayout) {
+        packetlistenerplayout.a(this);
+    }
+
+    private ByteBuf g() {
+        ByteBuf bytebuf = Unpooled.wrappedBuffer(this.d);
+
+        bytebuf.writerIndex(0);
+        return bytebuf;
+    }
+
+    public int a(PacketDataSerializer packetdataserializer, Chunk chunk, boolean flag, int i) {
+        int j = 0;
+        ChunkSection[] achunksection = chunk.getSections();
+        int k = 0;
+
+        for (int l = achunksection.length; k < l; ++k) {
+            ChunkSection chunksection = achunksection[k];
+
+            if (chunksection != Chunk.a && (!this.e() || !chunksection.a()) && (i & 1 << k) != 0) {
+                j |= 1 << k;
+                chunksection.getBlocks().b(packetdataserializer);
+                packetdataserializer.writeBytes(chunksection.getEmittedLightArray().asBytes());
+                if (flag) {
+                    packetdataserializer.writeBytes(chunksection.getSkyLightArray().asBytes());
+                }
+            }
+        }
+
+        if (this.e()) {
+            packetdataserializer.writeBytes(chunk.getBiomeIndex());
+        }
+
+        return j;
+    }
+
+    protected int a(Chunk chunk, boolean flag, int i) {
+        int j = 0;
+        ChunkSection[] achunksection = chunk.getSections();
+        int k = 0;
+
+        for (int l = achunksection.length; k < l; ++k) {
+            ChunkSection chunksection = achunksection[k];
+
+            if (chunksection != Chunk.a && (!this.e() || !chunksection.a()) && (i & 1 << k) != 0) {
+                j += chunksection.getBlocks().a();
+                j += chunksection.getEmittedLightArray().asBytes().length;
+                if (flag) {
+                    j += chunksection.getSkyLightArray().asBytes().length;
+                }
+            }
+        }
+
+        if (this.e()) {
+            j += chunk.getBiomeIndex().length;
+        }
+
+        return j;
+    }
+
+    public boolean e() {
+        return this.f;
+    }
+
+    // CraftBukkit start
+    // Roughly the encoded size, tile entities are not counted
+    public int getSize() {
+        return this.d.length + 16;
+    }
+
+    /**
+     * The encoded sections and biomes of a full chunk packet. Packets built
+     * from the cache share its data, so sending a chunk to many players
+     * only encodes the sections that changed since it was last sent. The
+     * data array is replaced, never modified, as queued packets may still
+     * be writing it.
+     */
+    public static class SectionCache {
+
+        private final ChunkSection[] sections = new ChunkSection[16];
+        private final int[] versions = new int[16];
+        // Section k is stored in data[offsets[k], offsets[k + 1])
+        private final int[] offsets = new int[17];
+        private byte[] biomes;
+        private boolean skylight;
+        private byte[] data;
+        private int mask;
+        public int lastUsed;
+
+        private void update(Chunk chunk, boolean flag) {
+            ChunkSection[] achunksection = chunk.getSections();
+            boolean rebuild = this.data == null || this.skylight != flag || !Arrays.equals(this.biomes, chunk.getBiomeIndex());
+            int i = 0;
+
+            for (int j = 0; j < achunksection.length; ++j) {
+                ChunkSection chunksection = achunksection[j];
+
+                if (chunksection != this.sections[j] || chunksection != Chunk.a && chunksection.getVersion() != this.versions[j]) {
+                    i |= 1 << j;
+                }
+            }
+
+            if (rebuild) {
+                i = '\uffff';
+            } else if (i == 0) {
+                return;
+            }
+
+            byte[][] abyte = new byte[achunksection.length][];
+            int k = 0;
+
+            for (int j = 0; j < achunksection.length; ++j) {
+                ChunkSection chunksection = achunksection[j];
+
+                if ((i & 1 << j) != 0 && chunksection != Chunk.a && !chunksection.a()) {
+                    abyte[j] = new byte[chunksection.getBlocks().a() + chunksection.getEmittedLightArray().asBytes().length + (flag ? chunksection.getSkyLightArray().asBytes().length : 0)];
+                    ByteBuf bytebuf = Unpooled.wrappedBuffer(abyte[j]);
+
+                    bytebuf.writerIndex(0);
+                    PacketDataSerializer packetdataserializer = new PacketDataSerializer(bytebuf);
+
+                    chunksection.getBlocks().b(packetdataserializer);
+                    packetdataserializer.writeBytes(chunksection.getEmittedLightArray().asBytes());
+                    if (flag) {
+                        packetdataserializer.writeBytes(chunksection.getSkyLightArray().asBytes());
+                    }
+                }
+
+                k += (i & 1 << j) != 0 ? (abyte[j] == null ? 0 : abyte[j].length) : this.offsets[j + 1] - this.offsets[j];
+            }
+
+            byte[] abyte1 = chunk.getBiomeIndex();
+            byte[] abyte2 = new byte[k + abyte1.length];
+            int l = 0;
+
+            this.mask = 0;
+            for (int j = 0; j < achunksection.length; ++j) {
+                int i1 = l;
+
+                if ((i & 1 << j) != 0) {
+                    if (abyte[j] != null) {
+                        System.arraycopy(abyte[j], 0, abyte2, l, abyte[j].length);
+                        l += abyte[j].length;
+                    }
+                } else {
+                    System.arraycopy(this.data, this.offsets[j], abyte2, l, this.offsets[j + 1] - this.offsets[j]);
+                    l += this.offsets[j + 1] - this.offsets[j];
+                }
+
+                if (l > i1) {
+                    this.mask |= 1 << j;
+                }
+
+                this.offsets[j] = i1;
+                this.sections[j] = achunksection[j];
+                this.versions[j] = achunksection[j] == Chunk.a ? 0 : achunksection[j].getVersion();
+            }
+
+            this.offsets[achunksection.length] = l;
+            System.arraycopy(abyte1, 0, abyte2, l, abyte1.length);
+            this.biomes = abyte1.clone();
+            this.skylight = flag;
+            this.data = abyte2;
+        }
+    }
+    // CraftBukkit end
+}
@@ -5,6 +5,7 @@ import com.mojang.authlib.GameProfile;
 import io.netty.channel.ChannelFutureListener;
 import java.net.InetSocketAddress;
 import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.bukkit.craftbukkit.util.CraftIconCache;
 import org.bukkit.entity.Player;
@@ -17,6 +18,10 @@ public class PacketStatusListener implements PacketStatusInListener {
     private final MinecraftServer minecraftServer;
     private final NetworkManager networkManager;
     private boolean d;
+    // CraftBukkit start - serialized response shared between pings
+    private static final AtomicInteger generation = new AtomicInteger();
+    private static volatile PacketStatusListener.CachedResponse cachedResponse;
+    // CraftBukkit end
 
     public PacketStatusListener(MinecraftServer minecraftserver, NetworkManager networkmanager) {
         this.minecraftServer = minecraftserver;
@@ -32,95 +37,139 @@ public class PacketStatusListener implements PacketStatusInListener {
             this.d = true;
             // CraftBukkit start
             // this.networkManager.sendPacket(new PacketStatusOutServerInfo(this.minecraftServer.getServerPing()));
-            final Object[] players = minecraftServer.getPlayerList().players.toArray();
-            class ServerListPingEvent extends org.bukkit.event.server.ServerListPingEvent {
+            org.bukkit.craftbukkit.CraftServer server = this.minecraftServer.server;
 
-                CraftIconCache icon = minecraftServer.server.getServerIcon();
+            // A cached response is built from one pinger's event, so only cache while nobody listens for it
+            if (server.statusCacheTtl > 0 && org.bukkit.event.server.ServerListPingEvent.getHandlerList().getRegisteredListeners().length == 0) {
+                PacketStatusListener.CachedResponse cached = PacketStatusListener.cachedResponse;
 
-                ServerListPingEvent() {
-                    super(((InetSocketAddress) networkManager.getSocketAddress()).getAddress(), minecraftServer.getMotd(), minecraftServer.getPlayerList().getMaxPlayers());
-                }
+                if (cached == null || cached.generation != PacketStatusListener.generation.get() || System.currentTimeMillis() >= cached.expires) {
+                    // Taken before building, so an invalidation while the event runs is not lost
+                    int i = PacketStatusListener.generation.get();
 
-                @Override
-                public void setServerIcon(org.bukkit.util.CachedServerIcon icon) {
-                    if (!(icon instanceof CraftIconCache)) {
-                        throw new IllegalArgumentException(icon + " was not created by " + org.bukkit.craftbukkit.CraftServer.class);
-                    }
-                    this.icon = (CraftIconCache) icon;
+                    cached = new PacketStatusListener.CachedResponse(PacketStatusOutServerInfo.serialize(this.createServerPing()), i, System.currentTimeMillis() + server.statusCacheTtl);
+                    PacketStatusListener.cachedResponse = cached;
                 }
 
-                @Override
-                public Iterator<Player> iterator() throws UnsupportedOperationException {
-                    return new Iterator<Player>() {
-                        int i;
-                        int ret = Integer.MIN_VALUE;
-                        EntityPlayer player;
+                this.networkManager.sendPacket(new PacketStatusOutServerInfo(cached.json));
+            } else {
+                this.networkManager.sendPacket(new PacketStatusOutServerInfo(this.createServerPing()));
+            }
+        }
+        // CraftBukkit end
+    }
+
+    // CraftBukkit start
+    /**
+     * Makes the next status request build a fresh response instead of
+     * reusing the cached one.
+     */
+    public static void invalidateCache() {
+        PacketStatusListener.generation.incrementAndGet();
+    }
+
+    private ServerPing createServerPing() {
+        final Object[] players = minecraftServer.getPlayerList().players.toArray();
+        class ServerListPingEvent extends org.bukkit.event.server.ServerListPingEvent {
+
+            CraftIconCache icon = minecraftServer.server.getServerIcon();
+
+            ServerListPingEvent() {
+                super(((InetSocketAddress) networkManager.getSocketAddress()).getAddress(), minecraftServer.getMotd(), minecraftServer.getPlayerList().getMaxPlayers());
+            }
+
+            @Override
+            public void setServerIcon(org.bukkit.util.CachedServerIcon icon) {
+                if (!(icon instanceof CraftIconCache)) {
+                    throw new IllegalArgumentException(icon + " was not created by " + org.bukkit.craftbukkit.CraftServer.class);
+                }
+                this.icon = (CraftIconCache) icon;
+            }
 
-                        @Override
-                        public boolean hasNext() {
+            @Override
+            public Iterator<Player> iterator() throws UnsupportedOperationException {
+                return new Iterator<Player>() {
+                    int i;
+                    int ret = Integer.MIN_VALUE;
+                    EntityPlayer player;
+
+                    @Override
+                    public boolean hasNext() {
+                        if (player != null) {
+                            return true;
+                        }
+                        final Object[] currentPlayers = players;
+                        for (int length = currentPlayers.length, i = this.i; i < length; i++) {
+                            final EntityPlayer player = (EntityPlayer) currentPlayers[i];
                             if (player != null) {
+                                this.i = i + 1;
+                                this.player = player;
                                 return true;
                             }
-                            final Object[] currentPlayers = players;
-                            for (int length = currentPlayers.length, i = this.i; i < length; i++) {
-                                final EntityPlayer player = (EntityPlayer) currentPlayers[i];
-                                if (player != null) {
-                                    this.i = i + 1;
-                                    this.player = player;
-                                    return true;
-                                }
-                            }
-                            return false;
                         }
+                        return false;
+                    }
 
-                        @Override
-                        public Player next() {
-                            if (!hasNext()) {
-                                throw new java.util.NoSuchElementException();
-                            }
-                            final EntityPlayer player = this.player;
-                            this.player = null;
-                            this.ret = this.i - 1;
-                            return player.getBukkitEntity();
+                    @Override
+                    public Player next() {
+                        if (!hasNext()) {
+                            throw new java.util.NoSuchElementException();
                         }
+                        final EntityPlayer player = this.player;
+                        this.player = null;
+                        this.ret = this.i - 1;
+                        return player.getBukkitEntity();
+                    }
 
-                        @Override
-                        public void remove() {
-                            final Object[] currentPlayers = players;
-                            final int i = this.ret;
-                            if (i < 0 || currentPlayers[i] == null) {
-                                throw new IllegalStateException();
-                            }
-                            currentPlayers[i] = null;
+                    @Override
+                    public void remove() {
+                        final Object[] currentPlayers = players;
+                        final int i = this.ret;
+                        if (i < 0 || currentPlayers[i] == null) {
+                            throw new IllegalStateException();
                         }
-                    };
-                }
+                        currentPlayers[i] = null;
+                    }
+                };
             }
+        }
 
-            ServerListPingEvent event = new ServerListPingEvent();
-            this.minecraftServer.server.getPluginManager().callEvent(event);
+        ServerListPingEvent event = new ServerListPingEvent();
+        this.minecraftServer.server.getPluginManager().callEvent(event);
 
-            java.util.List<GameProfile> profiles = new java.util.ArrayList<GameProfile>(players.length);
-            for (Object player : players) {
-                if (player != null) {
-                    profiles.add(((EntityPlayer) player).getProfile());
-                }
+        java.util.List<GameProfile> profiles = new java.util.ArrayList<GameProfile>(players.length);
+        for (Object player : players) {
+            if (player != null) {
+                profiles.add(((EntityPlayer) player).getProfile());
             }
+        }
 
-            ServerPing.ServerPingPlayerSample playerSample = new ServerPing.ServerPingPlayerSample(event.getMaxPlayers(), profiles.size());
-            playerSample.a(profiles.toArray(new GameProfile[profiles.size()]));
+        ServerPing.ServerPingPlayerSample playerSample = new ServerPing.ServerPingPlayerSample(event.getMaxPlayers(), profiles.size());
+        playerSample.a(profiles.toArray(new GameProfile[profiles.size()]));
 
-            ServerPing ping = new ServerPing();
-            ping.setFavicon(event.icon.value);
-            ping.setMOTD(new ChatComponentText(event.getMotd()));
-            ping.setPlayerSample(playerSample);
-            int version = minecraftServer.getServerPing().getServerData().getProtocolVersion();
-            ping.setServerInfo(new ServerPing.ServerData(minecraftServer.getServerModName() + " " + minecraftServer.getVersion(), version));
+        ServerPing ping = new ServerPing();
+        ping.setFavicon(event.icon.value);
+        ping.setMOTD(new ChatComponentText(event.getMotd()));
+        ping.setPlayerSample(playerSample);
+        int version = minecraftServer.getServerPing().getServerData().getProtocolVersion();
+        ping.setServerInfo(new ServerPing.ServerData(minecraftServer.getServerModName() + " " + minecraftServer.getVersion(), version));
+
+        return ping;
+    }
 
-            this.networkManager.sendPacket(new PacketStatusOutServerInfo(ping));
+    private static class CachedResponse {
+
+        private final String json;
+        private final int generation;
+        private final long expires;
+
+        private CachedResponse(String s, int i, long j) {
+            this.json = s;
+            this.generation = i;
+            this.expires = j;
         }
-        // CraftBukkit end
     }
+    // CraftBukkit end
 
     public void a(PacketStatusInPing packetstatusinping) {
         this.networkManager.sendPacket(new PacketStatusOutPong(packetstatusinping.a()));
@@ -0,0 +1,40 @@
+package net.minecraft.server;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import java.io.IOException;
+
+public class PacketStatusOutServerInfo implements Packet<PacketStatusOutListener> {
+
+    private static final Gson a = (new GsonBuilder()).registerTypeAdapter(ServerPing.ServerData.class, new ServerPing.ServerData.Serializer()).registerTypeAdapter(ServerPing.ServerPingPlayerSample.class, new ServerPing.ServerPingPlayerSample.Serializer()).registerTypeAdapter(ServerPing.class, new ServerPing.Serializer()).registerTypeHierarchyAdapter(IChatBaseComponent.class, new IChatBaseComponent.ChatSerializer()).registerTypeHierarchyAdapter(ChatModifier.class, new ChatModifier.ChatModifierSerializer()).registerTypeAdapterFactory(new ChatTypeAdapterFactory()).create();
+    private ServerPing b;
+    private String json; // CraftBukkit
+
+    public PacketStatusOutServerInfo() {}
+
+    public PacketStatusOutServerInfo(ServerPing serverping) {
+        this.b = serverping;
+    }
+
+    // CraftBukkit start - send a response serialized earlier
+    public PacketStatusOutServerInfo(String s) {
+        this.json = s;
+    }
+
+    public static String serialize(ServerPing serverping) {
+        return PacketStatusOutServerInfo.a.toJson(serverping);
+    }
+    // CraftBukkit end
+
+    public void a(PacketDataSerializer packetdataserializer) throws IOException {
+        this.b = (ServerPing) ChatDeserializer.a(PacketStatusOutServerInfo.a, packetdataserializer.e(32767), ServerPing.class);
+    }
+
+    public void b(PacketDataSerializer packetdataserializer) throws IOException {
+        packetdataserializer.a(this.json != null ? this.json : PacketStatusOutServerInfo.a.toJson(this.b)); // CraftBukkit
+    }
+
+    public void a(PacketStatusOutListener packetstatusoutlistener) {
+        packetstatusoutlistener.a(this);
+    }
+}
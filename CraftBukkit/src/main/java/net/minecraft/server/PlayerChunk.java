@@ -27,6 +27,9 @@ public class PlayerChunk {
     private boolean done;
 
     // CraftBukkit start - add fields
+    // Encoded sections are dropped once nobody new has been sent the chunk for this long
+    private static final int SECTION_CACHE_TICKS = 200;
+    private PacketPlayOutMapChunk.SectionCache sectionCache;
     private boolean loadInProgress = false;
     private Runnable loadedRunnable = new Runnable() {
         public void run() {
@@ -63,7 +66,7 @@ public class PlayerChunk {
             //     this.sendChunk(entityplayer);
             // }
             if (this.done) {
-                this.sendChunk(entityplayer);
+                entityplayer.chunkSendQueue.add(this);
             }
             // CraftBukkit end
 
@@ -84,7 +87,7 @@ public class PlayerChunk {
                 return;
             }
             // CraftBukkit end
-            if (this.done) {
+            if (this.done && !entityplayer.chunkSendQueue.remove(this)) { // CraftBukkit - never sent, nothing to unload
                 entityplayer.playerConnection.sendPacket(new PacketPlayOutUnloadChunk(this.location.x, this.location.z));
             }
 
@@ -128,15 +131,16 @@ public class PlayerChunk {
             this.dirtyCount = 0;
             this.h = 0;
             this.done = true;
-            PacketPlayOutMapChunk packetplayoutmapchunk = new PacketPlayOutMapChunk(this.chunk, '\uffff');
+            // CraftBukkit start - paced per player, see ChunkSendQueue
+            // PacketPlayOutMapChunk packetplayoutmapchunk = new PacketPlayOutMapChunk(this.chunk, '\uffff');
             Iterator iterator = this.c.iterator();
 
             while (iterator.hasNext()) {
                 EntityPlayer entityplayer = (EntityPlayer) iterator.next();
 
-                entityplayer.playerConnection.sendPacket(packetplayoutmapchunk);
-                this.playerChunkMap.getWorld().getTracker().a(entityplayer, this.chunk);
+                entityplayer.chunkSendQueue.add(this);
             }
+            // CraftBukkit end
 
             return true;
         }
@@ -144,11 +148,28 @@ public class PlayerChunk {
 
     public void sendChunk(EntityPlayer entityplayer) {
         if (this.done) {
-            entityplayer.playerConnection.sendPacket(new PacketPlayOutMapChunk(this.chunk, '\uffff'));
+            entityplayer.chunkSendQueue.send(this.createChunkPacket()); // CraftBukkit
             this.playerChunkMap.getWorld().getTracker().a(entityplayer, this.chunk);
         }
     }
 
+    // CraftBukkit start - players sent this chunk share its encoded sections
+    private PacketPlayOutMapChunk createChunkPacket() {
+        if (this.sectionCache == null) {
+            this.sectionCache = new PacketPlayOutMapChunk.SectionCache();
+        }
+
+        this.sectionCache.lastUsed = MinecraftServer.currentTick;
+        return new PacketPlayOutMapChunk(this.chunk, this.sectionCache);
+    }
+
+    public void expireSectionCache(int i) {
+        if (this.sectionCache != null && i - this.sectionCache.lastUsed > SECTION_CACHE_TICKS) {
+            this.sectionCache = null;
+        }
+    }
+    // CraftBukkit end
+
     public void c() {
         long i = this.playerChunkMap.getWorld().getTime();
 
@@ -183,8 +204,16 @@ public class PlayerChunk {
 
     public void a(Packet<?> packet) {
         if (this.done) {
+            SharedPacket sharedpacket = new SharedPacket(packet); // CraftBukkit - encode once for all watchers
+
             for (int i = 0; i < this.c.size(); ++i) {
-                ((EntityPlayer) this.c.get(i)).playerConnection.sendPacket(packet);
+                // CraftBukkit start - the full chunk sent later includes the change
+                EntityPlayer entityplayer = (EntityPlayer) this.c.get(i);
+
+                if (!entityplayer.chunkSendQueue.isQueued(this)) {
+                    entityplayer.playerConnection.sendPacket(sharedpacket);
+                }
+                // CraftBukkit end
             }
 
         }
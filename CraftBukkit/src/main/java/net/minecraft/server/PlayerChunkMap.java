@@ -7,7 +7,6 @@ import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
 import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
-import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Iterator;
@@ -15,10 +14,6 @@ import java.util.List;
 import java.util.Set;
 import javax.annotation.Nullable;
 
-// CraftBukkit start
-import java.util.LinkedList;
-// CraftBukkit end
-
 public class PlayerChunkMap {
 
     private static final Predicate<EntityPlayer> a = new Predicate() {
@@ -115,6 +110,14 @@ public class PlayerChunkMap {
             }
         }
 
+        // CraftBukkit start - drop encoded chunk data nobody has needed for a while
+        if (i % 100L == 0L) {
+            for (j = 0; j < this.i.size(); ++j) {
+                ((PlayerChunk) this.i.get(j)).expireSectionCache(MinecraftServer.currentTick);
+            }
+        }
+        // CraftBukkit end
+
         if (!this.f.isEmpty()) {
             Iterator iterator = this.f.iterator();
 
@@ -199,6 +202,12 @@ public class PlayerChunkMap {
             }
         }
 
+        // CraftBukkit start - send loaded chunks as fast as each player's connection takes them
+        for (j = 0; j < this.managedPlayers.size(); ++j) {
+            ((EntityPlayer) this.managedPlayers.get(j)).chunkSendQueue.drain();
+        }
+        // CraftBukkit end
+
         if (this.managedPlayers.isEmpty()) {
             WorldProvider worldprovider = this.world.worldProvider;
 
@@ -241,6 +250,58 @@ public class PlayerChunkMap {
     }
 
     // CraftBukkit start - add method
+    /**
+     * Squared distance in chunks from the given chunk to the nearest player
+     * watching it, or to the nearest player in the world if nobody watches
+     * it yet.
+     */
+    public int getLoadPriority(int x, int z) {
+        PlayerChunk playerchunk = this.getChunk(x, z);
+        List<EntityPlayer> players = playerchunk != null && !playerchunk.c.isEmpty() ? playerchunk.c : this.managedPlayers;
+        int priority = Integer.MAX_VALUE;
+
+        for (int i = 0; i < players.size(); ++i) {
+            EntityPlayer entityplayer = players.get(i);
+            int dx = ((int) entityplayer.locX >> 4) - x;
+            int dz = ((int) entityplayer.locZ >> 4) - z;
+
+            priority = Math.min(priority, dx * dx + dz * dz);
+        }
+
+        return priority;
+    }
+
+    /**
+     * Whether the chunk is close enough to a player to be worth prefetching,
+     * that is within one chunk beyond the view distance.
+     */
+    public boolean isNearPlayer(int x, int z) {
+        int radius = this.j + 1;
+        return this.getLoadPriority(x, z) <= radius * radius;
+    }
+
+    // Prefetch the edge just beyond the view distance in the direction the player crossed into
+    private void prefetchAhead(int x, int z, int dx, int dz, int viewDistance) {
+        ChunkProviderServer chunkproviderserver = this.world.getChunkProviderServer();
+        int radius = viewDistance + 1;
+
+        if (dx != 0) {
+            int edge = x + Integer.signum(dx) * radius;
+
+            for (int l = z - viewDistance; l <= z + viewDistance; ++l) {
+                chunkproviderserver.prefetchChunk(edge, l);
+            }
+        }
+
+        if (dz != 0) {
+            int edge = z + Integer.signum(dz) * radius;
+
+            for (int k = x - viewDistance; k <= x + viewDistance; ++k) {
+                chunkproviderserver.prefetchChunk(k, edge);
+            }
+        }
+    }
+
     public final boolean isChunkInUse(int x, int z) {
         PlayerChunk pi = getChunk(x, z);
         if (pi != null) {
@@ -267,21 +328,9 @@ public class PlayerChunkMap {
 
         entityplayer.d = entityplayer.locX;
         entityplayer.e = entityplayer.locZ;
-
-
-        // CraftBukkit start - Load nearby chunks first
-        List<ChunkCoordIntPair> chunkList = new LinkedList<ChunkCoordIntPair>();
-
-        for (int k = i - this.j; k <= i + this.j; ++k) {
-            for (int l = j - this.j; l <= j + this.j; ++l) {
-                chunkList.add(new ChunkCoordIntPair(k, l));
-            }
-        }
-
-        Collections.sort(chunkList, new ChunkCoordComparator(entityplayer));
-        for (ChunkCoordIntPair pair : chunkList) {
-            this.c(pair.x, pair.z).a(entityplayer);
-        }
+        // CraftBukkit start - load order is up to the chunk IO and send queues, which go nearest first
+        entityplayer.loadedViewDistance = this.getViewDistance(entityplayer);
+        this.updateView(entityplayer, i, j, entityplayer.loadedViewDistance, i, j, -1);
         // CraftBukkit end
 
         this.managedPlayers.add(entityplayer);
@@ -292,15 +341,7 @@ public class PlayerChunkMap {
         int i = (int) entityplayer.d >> 4;
         int j = (int) entityplayer.e >> 4;
 
-        for (int k = i - this.j; k <= i + this.j; ++k) {
-            for (int l = j - this.j; l <= j + this.j; ++l) {
-                PlayerChunk playerchunk = this.getChunk(k, l);
-
-                if (playerchunk != null) {
-                    playerchunk.b(entityplayer);
-                }
-            }
-        }
+        this.updateView(entityplayer, i, j, -1, i, j, entityplayer.loadedViewDistance); // CraftBukkit
 
         this.managedPlayers.remove(entityplayer);
         this.e();
@@ -323,40 +364,19 @@ public class PlayerChunkMap {
         if (d2 >= 64.0D) {
             int k = (int) entityplayer.d >> 4;
             int l = (int) entityplayer.e >> 4;
-            int i1 = this.j;
+            int i1 = entityplayer.loadedViewDistance; // CraftBukkit
             int j1 = i - k;
             int k1 = j - l;
 
-            List<ChunkCoordIntPair> chunksToLoad = new LinkedList<ChunkCoordIntPair>(); // CraftBukkit
-
             if (j1 != 0 || k1 != 0) {
-                for (int l1 = i - i1; l1 <= i + i1; ++l1) {
-                    for (int i2 = j - i1; i2 <= j + i1; ++i2) {
-                        if (!this.a(l1, i2, k, l, i1)) {
-                            // this.c(l1, i2).a(entityplayer);
-                            chunksToLoad.add(new ChunkCoordIntPair(l1, i2)); // CraftBukkit
-                        }
-
-                        if (!this.a(l1 - j1, i2 - k1, i, j, i1)) {
-                            PlayerChunk playerchunk = this.getChunk(l1 - j1, i2 - k1);
-
-                            if (playerchunk != null) {
-                                playerchunk.b(entityplayer);
-                            }
-                        }
-                    }
-                }
+                // CraftBukkit start - only visit the chunks entering and leaving the view
+                this.updateView(entityplayer, i, j, i1, k, l, i1);
+                // CraftBukkit end
 
                 entityplayer.d = entityplayer.locX;
                 entityplayer.e = entityplayer.locZ;
                 this.e();
-
-                // CraftBukkit start - send nearest chunks first
-                Collections.sort(chunksToLoad, new ChunkCoordComparator(entityplayer));
-                for (ChunkCoordIntPair pair : chunksToLoad) {
-                    this.c(pair.x, pair.z).a(entityplayer);
-                }
-                // CraftBukkit end
+                this.prefetchAhead(i, j, j1, k1, i1); // CraftBukkit
             }
         }
     }
@@ -364,49 +384,94 @@ public class PlayerChunkMap {
     public boolean a(EntityPlayer entityplayer, int i, int j) {
         PlayerChunk playerchunk = this.getChunk(i, j);
 
-        return playerchunk != null && playerchunk.d(entityplayer) && playerchunk.e();
+        return playerchunk != null && playerchunk.d(entityplayer) && playerchunk.e() && !entityplayer.chunkSendQueue.isQueued(playerchunk); // CraftBukkit - not until the player has the chunk
     }
 
     public void a(int i) {
         i = MathHelper.clamp(i, 3, 32);
         if (i != this.j) {
-            int j = i - this.j;
-            ArrayList arraylist = Lists.newArrayList(this.managedPlayers);
-            Iterator iterator = arraylist.iterator();
+            this.j = i;
 
-            while (iterator.hasNext()) {
-                EntityPlayer entityplayer = (EntityPlayer) iterator.next();
-                int k = (int) entityplayer.locX >> 4;
-                int l = (int) entityplayer.locZ >> 4;
-                int i1;
-                int j1;
-
-                if (j > 0) {
-                    for (i1 = k - i; i1 <= k + i; ++i1) {
-                        for (j1 = l - i; j1 <= l + i; ++j1) {
-                            PlayerChunk playerchunk = this.c(i1, j1);
-
-                            if (!playerchunk.d(entityplayer)) {
-                                playerchunk.a(entityplayer);
-                            }
-                        }
-                    }
-                } else {
-                    for (i1 = k - this.j; i1 <= k + this.j; ++i1) {
-                        for (j1 = l - this.j; j1 <= l + this.j; ++j1) {
-                            if (!this.a(i1, j1, k, l, i)) {
-                                this.c(i1, j1).b(entityplayer);
-                            }
-                        }
-                    }
-                }
+            // CraftBukkit start - players with their own view distance are left alone
+            for (int j = 0; j < this.managedPlayers.size(); ++j) {
+                this.refreshViewDistance((EntityPlayer) this.managedPlayers.get(j));
             }
+            // CraftBukkit end
 
-            this.j = i;
             this.e();
         }
     }
 
+    // CraftBukkit start - per player view distance
+    public int getViewDistance(EntityPlayer entityplayer) {
+        return entityplayer.viewDistance > 0 ? MathHelper.clamp(entityplayer.viewDistance, 3, 32) : this.j;
+    }
+
+    /**
+     * Sets the view distance of a single player, or makes them follow the
+     * world's view distance again if it is not positive.
+     */
+    public void setViewDistance(EntityPlayer entityplayer, int i) {
+        entityplayer.viewDistance = i;
+        if (this.managedPlayers.contains(entityplayer)) {
+            this.refreshViewDistance(entityplayer);
+            this.e();
+        }
+    }
+
+    private void refreshViewDistance(EntityPlayer entityplayer) {
+        int i = this.getViewDistance(entityplayer);
+
+        if (i != entityplayer.loadedViewDistance) {
+            int j = (int) entityplayer.d >> 4;
+            int k = (int) entityplayer.e >> 4;
+
+            this.updateView(entityplayer, j, k, i, j, k, entityplayer.loadedViewDistance);
+            entityplayer.loadedViewDistance = i;
+        }
+    }
+
+    /**
+     * Moves the player's view from the square of radius l around (j, k) to
+     * the one of radius i around (x, z). Only chunks in one square and not
+     * the other are visited, a negative radius stands for no square.
+     */
+    private void updateView(EntityPlayer entityplayer, int x, int z, int i, int j, int k, int l) {
+        this.visitDifference(entityplayer, j, k, l, x, z, i, false);
+        this.visitDifference(entityplayer, x, z, i, j, k, l, true);
+    }
+
+    // Adds the player to, or removes them from, every chunk within radius i of (x, z) but outside radius l of (j, k)
+    private void visitDifference(EntityPlayer entityplayer, int x, int z, int i, int j, int k, int l, boolean add) {
+        for (int i1 = x - i; i1 <= x + i; ++i1) {
+            int j1 = Math.max(z - i, k - l);
+            int k1 = Math.min(z + i, k + l);
+
+            if (l < 0 || i1 < j - l || i1 > j + l || j1 > k1) {
+                this.visitColumn(entityplayer, i1, z - i, z + i, add);
+            } else {
+                // Skip the part of the column the other square covers
+                this.visitColumn(entityplayer, i1, z - i, j1 - 1, add);
+                this.visitColumn(entityplayer, i1, k1 + 1, z + i, add);
+            }
+        }
+    }
+
+    private void visitColumn(EntityPlayer entityplayer, int i, int j, int k, boolean add) {
+        for (int l = j; l <= k; ++l) {
+            if (add) {
+                this.c(i, l).a(entityplayer);
+            } else {
+                PlayerChunk playerchunk = this.getChunk(i, l);
+
+                if (playerchunk != null) {
+                    playerchunk.b(entityplayer);
+                }
+            }
+        }
+    }
+    // CraftBukkit end
+
     private void e() {
         this.l = true;
         this.m = true;
@@ -441,47 +506,4 @@ public class PlayerChunkMap {
         }
 
     }
-
-    // CraftBukkit start - Sorter to load nearby chunks first
-    private static class ChunkCoordComparator implements java.util.Comparator<ChunkCoordIntPair> {
-        private int x;
-        private int z;
-
-        public ChunkCoordComparator (EntityPlayer entityplayer) {
-            x = (int) entityplayer.locX >> 4;
-            z = (int) entityplayer.locZ >> 4;
-        }
-
-        public int compare(ChunkCoordIntPair a, ChunkCoordIntPair b) {
-            if (a.equals(b)) {
-                return 0;
-            }
-
-            // Subtract current position to set center point
-            int ax = a.x - this.x;
-            int az = a.z - this.z;
-            int bx = b.x - this.x;
-            int bz = b.z - this.z;
-
-            int result = ((ax - bx) * (ax + bx)) + ((az - bz) * (az + bz));
-            if (result != 0) {
-                return result;
-            }
-
-            if (ax < 0) {
-                if (bx < 0) {
-                    return bz - az;
-                } else {
-                    return -1;
-                }
-            } else {
-                if (bx < 0) {
-                    return 1;
-                } else {
-                    return az - bz;
-                }
-            }
-        }
-    }
-    // CraftBukkit end
 }
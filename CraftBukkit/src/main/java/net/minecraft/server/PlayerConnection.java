@@ -18,6 +18,8 @@ import org.apache.logging.log4j.Logger;
 // CraftBukkit start
 import java.util.HashSet;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 import org.bukkit.Location;
 import org.bukkit.craftbukkit.entity.CraftPlayer;
@@ -107,10 +109,20 @@ public class PlayerConnection implements PacketListenerPlayIn, ITickable {
 
         // CraftBukkit start - add fields and methods
         this.server = minecraftserver.server;
+        // Connections made up by plugins may not have a channel to time them on
+        this.timers = networkmanager.channel == null ? null : networkmanager.channel.eventLoop().scheduleAtFixedRate(new Runnable() {
+            public void run() {
+                PlayerConnection.this.runTimers();
+            }
+        }, 1L, 1L, TimeUnit.SECONDS);
     }
 
     private final org.bukkit.craftbukkit.CraftServer server;
     private boolean processedDisconnect;
+    private final ScheduledFuture<?> timers;
+    private volatile boolean kickPending; // Set on the event loop, cleared on the main thread
+    private int dropSpamTick = MinecraftServer.currentTick;
+    final InboundPacketFilter packetFilter = new InboundPacketFilter(this);
     private int lastTick = MinecraftServer.currentTick;
     private int allowedPlayerTicks = 1;
     private int lastDropTick = MinecraftServer.currentTick;
@@ -174,6 +186,8 @@ public class PlayerConnection implements PacketListenerPlayIn, ITickable {
             this.E = 0;
         }
 
+        // CraftBukkit start - keep-alives, chat spam decay and the idle kick run on the event loop, see runTimers
+        /*
         this.minecraftServer.methodProfiler.a("keepAlive");
         long i = this.d();
 
@@ -189,14 +203,9 @@ public class PlayerConnection implements PacketListenerPlayIn, ITickable {
         }
 
         this.minecraftServer.methodProfiler.b();
-        // CraftBukkit start
-        for (int spam; (spam = this.chatThrottle) > 0 && !chatSpamField.compareAndSet(this, spam, spam - 1); ) ;
-        /* Use thread-safe field access instead
         if (this.chatThrottle > 0) {
             --this.chatThrottle;
         }
-        */
-        // CraftBukkit end
 
         if (this.j > 0) {
             --this.j;
@@ -206,8 +215,71 @@ public class PlayerConnection implements PacketListenerPlayIn, ITickable {
             this.player.resetIdleTimer(); // CraftBukkit - SPIGOT-854
             this.disconnect(new ChatMessage("multiplayer.disconnect.idling", new Object[0]));
         }
+        */
+        // CraftBukkit end
+    }
+
+    // CraftBukkit start
+    // Event loop only, once a second
+    private void runTimers() {
+        if (!this.networkManager.channel.isOpen()) {
+            this.timers.cancel(false);
+            return;
+        }
+
+        long i = this.d();
+
+        if (i - this.f >= 25000L) {
+            if (this.g) {
+                this.disconnectLater(new Runnable() {
+                    public void run() {
+                        PlayerConnection.this.disconnect(new ChatMessage("disconnect.timeout", new Object[0]));
+                    }
+                });
+            } else {
+                this.g = true;
+                this.f = i;
+                this.h = i;
+                this.sendPacket(new PacketPlayOutKeepAlive(this.h));
+            }
+        }
+
+        // Twenty ticks worth of decay
+        for (int spam; (spam = this.chatThrottle) > 0 && !chatSpamField.compareAndSet(this, spam, Math.max(0, spam - 20)); ) ;
+
+        if (this.isIdle()) {
+            this.disconnectLater(new Runnable() {
+                public void run() {
+                    // The player may have done something since
+                    if (PlayerConnection.this.isIdle()) {
+                        PlayerConnection.this.player.resetIdleTimer(); // CraftBukkit - SPIGOT-854
+                        PlayerConnection.this.disconnect(new ChatMessage("multiplayer.disconnect.idling", new Object[0]));
+                    }
+                }
+            });
+        }
+    }
+
+    private boolean isIdle() {
+        long i = this.player.J();
+
+        return i > 0L && this.minecraftServer.getIdleTimeout() > 0 && MinecraftServer.aw() - i > (long) (this.minecraftServer.getIdleTimeout() * 1000 * 60);
+    }
 
+    private void disconnectLater(final Runnable runnable) {
+        // Only one kick in flight, the timer keeps running until the channel closes
+        if (!this.kickPending) {
+            this.kickPending = true;
+            this.minecraftServer.postToMainThread(new Runnable() {
+                public void run() {
+                    // The kick may not go through, the player being active again or the event cancelled
+                    PlayerConnection.this.kickPending = false;
+                    runnable.run();
+                }
+            });
+        }
     }
+    // CraftBukkit end
 
     public void syncPosition() {
         this.l = this.player.locX;
@@ -271,7 +343,7 @@ public class PlayerConnection implements PacketListenerPlayIn, ITickable {
         this.player.a(packetplayinsteervehicle.a(), packetplayinsteervehicle.b(), packetplayinsteervehicle.c(), packetplayinsteervehicle.d());
     }
 
-    private static boolean b(PacketPlayInFlying packetplayinflying) {
+    static boolean b(PacketPlayInFlying packetplayinflying) { // CraftBukkit - private -> package-private
         return Doubles.isFinite(packetplayinflying.a(0.0D)) && Doubles.isFinite(packetplayinflying.b(0.0D)) && Doubles.isFinite(packetplayinflying.c(0.0D)) && Floats.isFinite(packetplayinflying.b(0.0F)) && Floats.isFinite(packetplayinflying.a(0.0F)) ? Math.abs(packetplayinflying.a(0.0D)) > 3.0E7D || Math.abs(packetplayinflying.b(0.0D)) > 3.0E7D || Math.abs(packetplayinflying.c(0.0D)) > 3.0E7D : true;
     }
 
@@ -335,7 +407,7 @@ public class PlayerConnection implements PacketListenerPlayIn, ITickable {
                     return;
                 }
 
-                boolean flag = worldserver.getCubes(entity, entity.getBoundingBox().shrink(0.0625D)).isEmpty();
+                boolean flag = worldserver.getCubes(entity, entity.getBoundingBox().shrink(0.0625D), CollisionBuffer.local(0)).isEmpty(); // CraftBukkit
 
                 d6 = d3 - this.v;
                 d7 = d4 - this.w - 1.0E-6D;
@@ -360,7 +432,7 @@ public class PlayerConnection implements PacketListenerPlayIn, ITickable {
 
                 entity.setLocation(d3, d4, d5, f, f1);
                 player.setLocation(d3, d4, d5, this.player.yaw, this.player.pitch); // CraftBukkit
-                boolean flag2 = worldserver.getCubes(entity, entity.getBoundingBox().shrink(0.0625D)).isEmpty();
+                boolean flag2 = worldserver.getCubes(entity, entity.getBoundingBox().shrink(0.0625D), CollisionBuffer.local(0)).isEmpty(); // CraftBukkit
 
                 if (flag && (flag1 || !flag2)) {
                     entity.setLocation(d0, d1, d2, f, f1);
@@ -478,6 +550,7 @@ public class PlayerConnection implements PacketListenerPlayIn, ITickable {
 
     public void a(PacketPlayInFlying packetplayinflying) {
         PlayerConnectionUtils.ensureMainThread(packetplayinflying, this, this.player.x());
+        int moves = this.packetFilter.b(packetplayinflying); // CraftBukkit - movement merged on the event loop
         if (b(packetplayinflying)) {
             this.disconnect(new ChatMessage("multiplayer.disconnect.invalid_player_movement", new Object[0]));
         } else {
@@ -529,7 +602,7 @@ public class PlayerConnection implements PacketListenerPlayIn, ITickable {
                             }
 
                         } else {
-                            ++this.receivedMovePackets;
+                            this.receivedMovePackets += moves; // CraftBukkit - allow for the distance covered by merged packets
                             int i = this.receivedMovePackets - this.processedMovePackets;
 
                             // CraftBukkit start - handle custom speeds and skipped ticks
@@ -565,7 +638,7 @@ public class PlayerConnection implements PacketListenerPlayIn, ITickable {
                                 }
                             }
 
-                            boolean flag = worldserver.getCubes(this.player, this.player.getBoundingBox().shrink(0.0625D)).isEmpty();
+                            boolean flag = worldserver.getCubes(this.player, this.player.getBoundingBox().shrink(0.0625D), CollisionBuffer.local(0)).isEmpty(); // CraftBukkit
 
                             d7 = d4 - this.o;
                             d8 = d5 - this.p;
@@ -596,7 +669,7 @@ public class PlayerConnection implements PacketListenerPlayIn, ITickable {
                             this.player.setLocation(d4, d5, d6, f, f1);
                             this.player.checkMovement(this.player.locX - d0, this.player.locY - d1, this.player.locZ - d2);
                             if (!this.player.noclip && !this.player.isSleeping()) {
-                                boolean flag2 = worldserver.getCubes(this.player, this.player.getBoundingBox().shrink(0.0625D)).isEmpty();
+                                boolean flag2 = worldserver.getCubes(this.player, this.player.getBoundingBox().shrink(0.0625D), CollisionBuffer.local(0)).isEmpty(); // CraftBukkit
 
                                 if (flag && (flag1 || !flag2)) {
                                     this.a(d0, d1, d2, f, f1);
@@ -1121,6 +1194,24 @@ public class PlayerConnection implements PacketListenerPlayIn, ITickable {
         }
     }
 
+    // CraftBukkit start
+    public void sendPacket(SharedPacket sharedpacket) {
+        Packet<?> packet = sharedpacket.getPacket();
+
+        // Chat and spawn position are filtered or looked at per player
+        if (packet == null || packet instanceof PacketPlayOutChat || packet instanceof PacketPlayOutSpawnPosition || !this.canSendShared()) {
+            this.sendPacket(packet);
+        } else {
+            this.networkManager.sendPacket(sharedpacket);
+        }
+    }
+
+    // Fake connections, and those overriding how packets are sent, get the packet itself
+    private boolean canSendShared() {
+        return !this.processedDisconnect && this.networkManager.isConnected() && this.getClass() == PlayerConnection.class && this.networkManager.getClass() == NetworkManager.class;
+    }
+    // CraftBukkit end
+
     public void a(PacketPlayInHeldItemSlot packetplayinhelditemslot) {
         PlayerConnectionUtils.ensureMainThread(packetplayinhelditemslot, this, this.player.x());
         if (this.player.isFrozen()) return; // CraftBukkit
@@ -2011,6 +2102,11 @@ public class PlayerConnection implements PacketListenerPlayIn, ITickable {
             }
             // CraftBukkit end
 
+            // CraftBukkit start - decays here instead of every tick
+            this.j = Math.max(0, this.j - (MinecraftServer.currentTick - this.dropSpamTick));
+            this.dropSpamTick = MinecraftServer.currentTick;
+            // CraftBukkit end
+
             if (flag1 && flag2) {
                 if (itemstack.isEmpty()) {
                     this.player.defaultContainer.setItem(packetplayinsetcreativeslot.a(), ItemStack.a);
@@ -2092,14 +2188,20 @@ public class PlayerConnection implements PacketListenerPlayIn, ITickable {
     }
 
     public void a(PacketPlayInKeepAlive packetplayinkeepalive) {
-        PlayerConnectionUtils.ensureMainThread(packetplayinkeepalive, this, this.player.x()); // CraftBukkit
+        // PlayerConnectionUtils.ensureMainThread(packetplayinkeepalive, this, this.player.x()); // CraftBukkit - handled on the event loop with the timer that sent it
         if (this.g && packetplayinkeepalive.a() == this.h) {
             int i = (int) (this.d() - this.f);
 
             this.player.ping = (this.player.ping * 3 + i) / 4;
             this.g = false;
         } else if (!this.player.getName().equals(this.minecraftServer.Q())) {
-            this.disconnect(new ChatMessage("disconnect.timeout", new Object[0]));
+            // CraftBukkit start
+            this.disconnectLater(new Runnable() {
+                public void run() {
+                    PlayerConnection.this.disconnect(new ChatMessage("disconnect.timeout", new Object[0]));
+                }
+            });
+            // CraftBukkit end
         }
 
     }
@@ -321,6 +321,7 @@ public abstract class PlayerList {
 
     public void onPlayerJoin(EntityPlayer entityplayer, String joinMessage) { // CraftBukkit added param
         this.players.add(entityplayer);
+        PacketStatusListener.invalidateCache(); // CraftBukkit - player count changed
         this.j.put(entityplayer.getUniqueID(), entityplayer);
         // this.sendAll(new PacketPlayOutPlayerInfo(PacketPlayOutPlayerInfo.EnumPlayerInfoAction.ADD_PLAYER, new EntityPlayer[] { entityplayer})); // CraftBukkit - replaced with loop below
         WorldServer worldserver = this.server.getWorldServer(entityplayer.dimension);
@@ -341,7 +342,6 @@ public abstract class PlayerList {
             }
         }
 
-        ChunkIOExecutor.adjustPoolSize(getPlayerCount());
         // CraftBukkit end
 
         // CraftBukkit start - sendAll above replaced with this loop
@@ -416,6 +416,7 @@ public abstract class PlayerList {
         worldserver.getPlayerChunkMap().removePlayer(entityplayer);
         entityplayer.getAdvancementData().a();
         this.players.remove(entityplayer);
+        PacketStatusListener.invalidateCache(); // CraftBukkit - player count changed
         UUID uuid = entityplayer.getUniqueID();
         EntityPlayer entityplayer1 = (EntityPlayer) this.j.get(uuid);
 
@@ -443,8 +444,6 @@ public abstract class PlayerList {
         cserver.getScoreboardManager().removePlayer(entityplayer.getBukkitEntity());
         // CraftBukkit end
 
-        ChunkIOExecutor.adjustPoolSize(this.getPlayerCount()); // CraftBukkit
-
         return playerQuitEvent.getQuitMessage(); // CraftBukkit
     }
 
@@ -992,37 +991,45 @@ public abstract class PlayerList {
     }
 
     public void sendAll(Packet<?> packet) {
+        SharedPacket sharedpacket = new SharedPacket(packet); // CraftBukkit - encode once for everyone
+
         for (int i = 0; i < this.players.size(); ++i) {
-            ((EntityPlayer) this.players.get(i)).playerConnection.sendPacket(packet);
+            ((EntityPlayer) this.players.get(i)).playerConnection.sendPacket(sharedpacket); // CraftBukkit
         }
 
     }
 
     // CraftBukkit start - add a world/entity limited version
     public void sendAll(Packet packet, EntityHuman entityhuman) {
+        SharedPacket sharedpacket = new SharedPacket(packet);
+
         for (int i = 0; i < this.players.size(); ++i) {
             EntityPlayer entityplayer =  this.players.get(i);
             if (entityhuman != null && entityhuman instanceof EntityPlayer && !entityplayer.getBukkitEntity().canSee(((EntityPlayer) entityhuman).getBukkitEntity())) {
                 continue;
             }
-            ((EntityPlayer) this.players.get(i)).playerConnection.sendPacket(packet);
+            ((EntityPlayer) this.players.get(i)).playerConnection.sendPacket(sharedpacket);
         }
     }
 
     public void sendAll(Packet packet, World world) {
+        SharedPacket sharedpacket = new SharedPacket(packet);
+
         for (int i = 0; i < world.players.size(); ++i) {
-            ((EntityPlayer) world.players.get(i)).playerConnection.sendPacket(packet);
+            ((EntityPlayer) world.players.get(i)).playerConnection.sendPacket(sharedpacket);
         }
 
     }
     // CraftBukkit end
 
     public void a(Packet<?> packet, int i) {
+        SharedPacket sharedpacket = new SharedPacket(packet); // CraftBukkit - encode once for everyone
+
         for (int j = 0; j < this.players.size(); ++j) {
             EntityPlayer entityplayer = (EntityPlayer) this.players.get(j);
 
             if (entityplayer.dimension == i) {
-                entityplayer.playerConnection.sendPacket(packet);
+                entityplayer.playerConnection.sendPacket(sharedpacket); // CraftBukkit
             }
         }
 
@@ -1177,6 +1184,8 @@ public abstract class PlayerList {
     }
 
     public void sendPacketNearby(@Nullable EntityHuman entityhuman, double d0, double d1, double d2, double d3, int i, Packet<?> packet) {
+        SharedPacket sharedpacket = new SharedPacket(packet); // CraftBukkit - encode once for everyone in range
+
         for (int j = 0; j < this.players.size(); ++j) {
             EntityPlayer entityplayer = (EntityPlayer) this.players.get(j);
 
@@ -1192,7 +1201,7 @@ public abstract class PlayerList {
                 double d6 = d2 - entityplayer.locZ;
 
                 if (d4 * d4 + d5 * d5 + d6 * d6 < d3 * d3) {
-                    entityplayer.playerConnection.sendPacket(packet);
+                    entityplayer.playerConnection.sendPacket(sharedpacket); // CraftBukkit
                 }
             }
         }
@@ -1,31 +1,44 @@
 package net.minecraft.server;
 
 import com.google.common.collect.Lists;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.Unpooled;
 import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.List;
-import java.util.zip.DeflaterOutputStream;
+import java.util.concurrent.locks.StampedLock;
+import java.util.zip.DataFormatException;
 import java.util.zip.GZIPInputStream;
-import java.util.zip.InflaterInputStream;
 import javax.annotation.Nullable;
+import org.bukkit.craftbukkit.util.CompressionBackend; // CraftBukkit
 
 public class RegionFile {
 
     private static final byte[] a = new byte[4096];
     private final File b;
     private RandomAccessFile c;
-    private final int[] d = new int[1024];
+    // CraftBukkit start - lock-free reads
+    // The offset table is copy-on-write; readers take the current snapshot without locking.
+    private volatile int[] d = new int[1024];
     private final int[] e = new int[1024];
     private List<Boolean> f;
     private int g;
     private long h;
+    private FileChannel channel;
+    private volatile int sectors;
+    // Writers hold the write lock while touching the file, readers validate an optimistic stamp.
+    private final StampedLock lock = new StampedLock();
+    // CraftBukkit end
 
     public RegionFile(File file) {
         this.b = file;
@@ -65,10 +78,11 @@ public class RegionFile {
             this.c.seek(0L);
 
             int k;
+            int[] aint = new int[1024]; // CraftBukkit
 
             for (j = 0; j < 1024; ++j) {
                 k = this.c.readInt();
-                this.d[j] = k;
+                aint[j] = k; // CraftBukkit
                 if (k != 0 && (k >> 8) + (k & 255) <= this.f.size()) {
                     for (int l = 0; l < (k & 255); ++l) {
                         this.f.set((k >> 8) + l, Boolean.valueOf(false));
@@ -80,66 +94,130 @@ public class RegionFile {
                 k = this.c.readInt();
                 this.e[j] = k;
             }
+
+            // CraftBukkit start
+            this.channel = this.c.getChannel();
+            this.sectors = this.f.size();
+            this.d = aint;
+            // CraftBukkit end
         } catch (IOException ioexception) {
             ioexception.printStackTrace();
         }
 
     }
 
+    // CraftBukkit start - lock-free read path
     @Nullable
-    public synchronized DataInputStream a(int i, int j) {
+    public DataInputStream a(int i, int j) {
         if (this.d(i, j)) {
             return null;
         } else {
-            try {
-                int k = this.getOffset(i, j);
+            long stamp = this.lock.tryOptimisticRead();
 
-                if (k == 0) {
-                    return null;
-                } else {
-                    int l = k >> 8;
-                    int i1 = k & 255;
+            if (stamp != 0L) {
+                try {
+                    byte[] abyte = this.readChunk(i, j);
 
-                    if (l + i1 > this.f.size()) {
+                    if (this.lock.validate(stamp)) {
+                        return this.wrapChunk(abyte);
+                    }
+                } catch (IOException ioexception) {
+                    if (this.lock.validate(stamp)) {
                         return null;
-                    } else {
-                        this.c.seek((long) (l * 4096));
-                        int j1 = this.c.readInt();
-
-                        if (j1 > 4096 * i1) {
-                            return null;
-                        } else if (j1 <= 0) {
-                            return null;
-                        } else {
-                            byte b0 = this.c.readByte();
-                            byte[] abyte;
-
-                            if (b0 == 1) {
-                                abyte = new byte[j1 - 1];
-                                this.c.read(abyte);
-                                return new DataInputStream(new BufferedInputStream(new GZIPInputStream(new ByteArrayInputStream(abyte))));
-                            } else if (b0 == 2) {
-                                abyte = new byte[j1 - 1];
-                                this.c.read(abyte);
-                                return new DataInputStream(new BufferedInputStream(new InflaterInputStream(new ByteArrayInputStream(abyte))));
-                            } else {
-                                return null;
-                            }
-                        }
                     }
+                    // A writer moved the sectors underneath us, retry under the read lock
                 }
+            }
+
+            stamp = this.lock.readLock();
+
+            try {
+                return this.wrapChunk(this.readChunk(i, j));
             } catch (IOException ioexception) {
                 return null;
+            } finally {
+                this.lock.unlockRead(stamp);
             }
         }
     }
 
+    /**
+     * Reads all sectors of a chunk with a single positional read. The
+     * returned array starts with the 4 byte length header followed by the
+     * compression type and the compressed payload.
+     */
+    @Nullable
+    private byte[] readChunk(int i, int j) throws IOException {
+        int k = this.getOffset(i, j);
+
+        if (k == 0) {
+            return null;
+        } else {
+            int l = k >> 8;
+            int i1 = k & 255;
+
+            if (l + i1 > this.sectors) {
+                return null;
+            } else {
+                byte[] abyte = new byte[i1 * 4096];
+                ByteBuffer bytebuffer = ByteBuffer.wrap(abyte);
+                long position = (long) l * 4096L;
+
+                while (bytebuffer.hasRemaining()) {
+                    int read = this.channel.read(bytebuffer, position + bytebuffer.position());
+
+                    if (read < 0) {
+                        throw new EOFException();
+                    }
+                }
+
+                return abyte;
+            }
+        }
+    }
+
+    @Nullable
+    private DataInputStream wrapChunk(@Nullable byte[] abyte) throws IOException {
+        if (abyte == null) {
+            return null;
+        } else {
+            int j1 = (abyte[0] & 255) << 24 | (abyte[1] & 255) << 16 | (abyte[2] & 255) << 8 | abyte[3] & 255;
+
+            if (j1 > abyte.length - 4) {
+                return null;
+            } else if (j1 <= 0) {
+                return null;
+            } else {
+                byte b0 = abyte[4];
+
+                if (b0 == 1) {
+                    return new DataInputStream(new BufferedInputStream(new GZIPInputStream(new ByteArrayInputStream(abyte, 5, j1 - 1))));
+                } else if (b0 == 2) {
+                    ByteBuf bytebuf = Unpooled.buffer(j1 * 4);
+
+                    try {
+                        CompressionBackend.get().inflate(Unpooled.wrappedBuffer(abyte, 5, j1 - 1), bytebuf, Integer.MAX_VALUE);
+                    } catch (DataFormatException dataformatexception) {
+                        throw new IOException(dataformatexception);
+                    }
+
+                    return new DataInputStream(new ByteBufInputStream(bytebuf));
+                } else {
+                    return null;
+                }
+            }
+        }
+    }
+    // CraftBukkit end
+
     @Nullable
     public DataOutputStream b(int i, int j) {
-        return this.d(i, j) ? null : new DataOutputStream(new BufferedOutputStream(new DeflaterOutputStream(new RegionFile.ChunkBuffer(i, j))));
+        return this.d(i, j) ? null : new DataOutputStream(new RegionFile.UncompressedChunkBuffer(i, j)); // CraftBukkit - compress once on close
     }
 
     protected synchronized void a(int i, int j, byte[] abyte, int k) {
+        long stamp = this.lock.writeLock(); // CraftBukkit
+
         try {
             int l = this.getOffset(i, j);
             int i1 = l >> 8;
@@ -200,6 +278,8 @@ public class RegionFile {
                         this.f.add(Boolean.valueOf(false));
                     }
 
+                    this.sectors = this.f.size(); // CraftBukkit
+
                     this.g += 4096 * k1;
                     this.a(i1, abyte, k);
                     this.a(i, j, i1 << 8 | k1);
@@ -209,6 +289,8 @@ public class RegionFile {
             this.b(i, j, (int) (MinecraftServer.aw() / 1000L));
         } catch (IOException ioexception) {
             ioexception.printStackTrace();
+        } finally {
+            this.lock.unlockWrite(stamp); // CraftBukkit
         }
 
     }
@@ -224,7 +306,7 @@ public class RegionFile {
         return i < 0 || i >= 32 || j < 0 || j >= 32;
     }
 
-    private synchronized int getOffset(int i, int j) {
+    private int getOffset(int i, int j) { // CraftBukkit - reads the published snapshot
         return this.d[i + j * 32];
     }
 
@@ -233,7 +315,12 @@ public class RegionFile {
     }
 
     private void a(int i, int j, int k) throws IOException {
-        this.d[i + j * 32] = k;
+        // CraftBukkit start - publish a new snapshot
+        int[] aint = this.d.clone();
+
+        aint[i + j * 32] = k;
+        this.d = aint;
+        // CraftBukkit end
         this.c.seek((long) ((i + j * 32) * 4));
         this.c.writeInt(k);
     }
@@ -251,19 +338,31 @@ public class RegionFile {
 
     }
 
-    class ChunkBuffer extends ByteArrayOutputStream {
+    // CraftBukkit start
+    class UncompressedChunkBuffer extends ByteArrayOutputStream {
 
         private final int b;
         private final int c;
+        private boolean closed;
 
-        public ChunkBuffer(int i, int j) {
-            super(8096);
+        public UncompressedChunkBuffer(int i, int j) {
+            super(16384);
             this.b = i;
             this.c = j;
         }
 
         public void close() {
-            RegionFile.this.a(this.b, this.c, this.buf, this.count);
+            // Closing twice must not write the chunk twice
+            if (this.closed) {
+                return;
+            }
+
+            this.closed = true;
+            ByteBuf bytebuf = Unpooled.buffer(this.count / 4 + 64);
+
+            CompressionBackend.get().deflate(Unpooled.wrappedBuffer(this.buf, 0, this.count), bytebuf);
+            RegionFile.this.a(this.b, this.c, bytebuf.array(), bytebuf.writerIndex());
         }
     }
+    // CraftBukkit end
 }
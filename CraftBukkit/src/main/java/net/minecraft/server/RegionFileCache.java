@@ -7,98 +7,248 @@ import java.io.File;
 import java.io.IOException;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class RegionFileCache {
 
-    private static final Map<File, RegionFile> a = Maps.newHashMap();
+    // CraftBukkit start - concurrent, per-world, LRU bounded cache
+    private static final int MAX_OPEN_PER_WORLD = 256;
+    private static final ConcurrentMap<File, RegionFileCache.WorldCache> a = Maps.newConcurrentMap();
+    private static final AtomicLong hits = new AtomicLong();
+    private static final AtomicLong misses = new AtomicLong();
+    private static final AtomicLong evictions = new AtomicLong();
+    private static final AtomicInteger openFiles = new AtomicInteger();
 
-    public static synchronized RegionFile a(File file, int i, int j) {
-        File file1 = new File(file, "region");
-        File file2 = new File(file1, "r." + (i >> 5) + "." + (j >> 5) + ".mca");
-        RegionFile regionfile = (RegionFile) RegionFileCache.a.get(file2);
+    public static void a() {
+        Iterator iterator = RegionFileCache.a.values().iterator();
+
+        while (iterator.hasNext()) {
+            RegionFileCache.WorldCache cache = (RegionFileCache.WorldCache) iterator.next();
+
+            synchronized (cache) {
+                Iterator iterator1 = cache.regions.values().iterator();
+
+                while (iterator1.hasNext()) {
+                    RegionFileCache.CachedRegionFile entry = (RegionFileCache.CachedRegionFile) iterator1.next();
 
-        if (regionfile != null) {
-            return regionfile;
-        } else {
-            if (!file1.exists()) {
-                file1.mkdirs();
+                    // Files still in use stay mapped, so nobody opens the same file a second time
+                    if (entry.references.compareAndSet(1, 0)) {
+                        iterator1.remove();
+                        entry.close();
+                    }
+                }
             }
+        }
+    }
+
+    public static NBTTagCompound d(File file, int i, int j) throws IOException {
+        RegionFileCache.CachedRegionFile entry = acquire(file, i, j, true);
+
+        try {
+            DataInputStream datainputstream = entry.region.a(i & 31, j & 31);
 
-            if (RegionFileCache.a.size() >= 256) {
-                a();
+            if (datainputstream == null) {
+                return null;
             }
 
-            RegionFile regionfile1 = new RegionFile(file2);
+            return NBTCompressedStreamTools.a(datainputstream);
+        } finally {
+            release(entry);
+        }
+    }
+
+    public static void e(File file, int i, int j, NBTTagCompound nbttagcompound) throws IOException {
+        RegionFileCache.CachedRegionFile entry = acquire(file, i, j, true);
 
-            RegionFileCache.a.put(file2, regionfile1);
-            return regionfile1;
+        try {
+            DataOutputStream dataoutputstream = entry.region.b(i & 31, j & 31);
+            NBTCompressedStreamTools.a(nbttagcompound, (java.io.DataOutput) dataoutputstream);
+            dataoutputstream.close();
+        } finally {
+            release(entry);
         }
     }
 
-    public static synchronized RegionFile b(File file, int i, int j) {
-        File file1 = new File(file, "region");
-        File file2 = new File(file1, "r." + (i >> 5) + "." + (j >> 5) + ".mca");
-        RegionFile regionfile = (RegionFile) RegionFileCache.a.get(file2);
+    // Writes a chunk already compressed with zlib, as produced by the chunk save pipeline
+    public static void writeCompressed(File file, int i, int j, byte[] abyte, int k) {
+        RegionFileCache.CachedRegionFile entry = acquire(file, i, j, true);
 
-        if (regionfile != null) {
-            return regionfile;
-        } else if (file1.exists() && file2.exists()) {
-            if (RegionFileCache.a.size() >= 256) {
-                a();
-            }
+        try {
+            entry.region.a(i & 31, j & 31, abyte, k);
+        } finally {
+            release(entry);
+        }
+    }
+
+    public static boolean chunkExists(File file, int i, int j) {
+        RegionFileCache.CachedRegionFile entry = acquire(file, i, j, false);
 
-            RegionFile regionfile1 = new RegionFile(file2);
+        if (entry == null) {
+            return false;
+        }
 
-            RegionFileCache.a.put(file2, regionfile1);
-            return regionfile1;
-        } else {
-            return null;
+        try {
+            return entry.region.c(i & 31, j & 31);
+        } finally {
+            release(entry);
         }
     }
 
-    public static synchronized void a() {
-        Iterator iterator = RegionFileCache.a.values().iterator();
+    public static long getHits() {
+        return hits.get();
+    }
 
-        while (iterator.hasNext()) {
-            RegionFile regionfile = (RegionFile) iterator.next();
+    public static long getMisses() {
+        return misses.get();
+    }
 
-            try {
-                if (regionfile != null) {
-                    regionfile.c();
-                }
-            } catch (IOException ioexception) {
-                ioexception.printStackTrace();
+    public static long getEvictions() {
+        return evictions.get();
+    }
+
+    public static int getOpenFiles() {
+        return openFiles.get();
+    }
+
+    /**
+     * Returns the region file holding the given chunk with a reference taken
+     * on it, opening it if necessary. Every successful call must be paired
+     * with {@link #release(CachedRegionFile)}.
+     */
+    private static RegionFileCache.CachedRegionFile acquire(File file, int i, int j, boolean create) {
+        RegionFileCache.WorldCache cache = RegionFileCache.a.get(file);
+
+        if (cache == null) {
+            RegionFileCache.WorldCache cache1 = new RegionFileCache.WorldCache();
+
+            cache = RegionFileCache.a.putIfAbsent(file, cache1);
+            if (cache == null) {
+                cache = cache1;
             }
         }
 
-        RegionFileCache.a.clear();
-    }
+        Long key = Long.valueOf(ChunkCoordIntPair.a(i >> 5, j >> 5));
+
+        while (true) {
+            RegionFileCache.CachedRegionFile entry = cache.regions.get(key);
+
+            if (entry != null) {
+                if (entry.retain()) {
+                    hits.incrementAndGet();
+                    return entry;
+                }
+
+                // Lost a race with eviction, the entry is already closed
+                cache.regions.remove(key, entry);
+                continue;
+            }
 
-    // CraftBukkit start - call sites hoisted for synchronization
-    public static synchronized NBTTagCompound d(File file, int i, int j) throws IOException {
-        RegionFile regionfile = a(file, i, j);
+            synchronized (cache) {
+                entry = cache.regions.get(key);
+                if (entry != null) {
+                    continue;
+                }
+
+                misses.incrementAndGet();
+                File file1 = new File(file, "region");
+                File file2 = new File(file1, "r." + (i >> 5) + "." + (j >> 5) + ".mca");
+
+                if (!create && !(file1.exists() && file2.exists())) {
+                    return null;
+                }
+
+                if (!file1.exists()) {
+                    file1.mkdirs();
+                }
 
-        DataInputStream datainputstream = regionfile.a(i & 31, j & 31);
+                if (cache.regions.size() >= MAX_OPEN_PER_WORLD) {
+                    cache.evict();
+                }
 
-        if (datainputstream == null) {
-            return null;
+                entry = new RegionFileCache.CachedRegionFile(new RegionFile(file2));
+                entry.retain();
+                cache.regions.put(key, entry);
+                openFiles.incrementAndGet();
+                return entry;
+            }
         }
+    }
 
-        return NBTCompressedStreamTools.a(datainputstream);
+    private static void release(RegionFileCache.CachedRegionFile entry) {
+        if (entry.references.decrementAndGet() == 0) {
+            entry.close();
+        }
     }
 
-    public static synchronized void e(File file, int i, int j, NBTTagCompound nbttagcompound) throws IOException {
-        RegionFile regionfile = a(file, i, j);
+    private static class WorldCache {
 
-        DataOutputStream dataoutputstream = regionfile.b(i & 31, j & 31);
-        NBTCompressedStreamTools.a(nbttagcompound, (java.io.DataOutput) dataoutputstream);
-        dataoutputstream.close();
+        private final ConcurrentMap<Long, RegionFileCache.CachedRegionFile> regions = Maps.newConcurrentMap();
+
+        // Called with the monitor held, closes the least recently used file nobody is reading or writing
+        private void evict() {
+            while (this.regions.size() >= MAX_OPEN_PER_WORLD) {
+                Map.Entry<Long, RegionFileCache.CachedRegionFile> oldest = null;
+                Iterator iterator = this.regions.entrySet().iterator();
+
+                while (iterator.hasNext()) {
+                    Map.Entry<Long, RegionFileCache.CachedRegionFile> entry = (Map.Entry) iterator.next();
+
+                    if (entry.getValue().references.get() == 1 && (oldest == null || entry.getValue().lastUsed < oldest.getValue().lastUsed)) {
+                        oldest = entry;
+                    }
+                }
+
+                if (oldest == null) {
+                    // Everything is in use, let the cache grow until something is released
+                    return;
+                }
+
+                if (oldest.getValue().references.compareAndSet(1, 0)) {
+                    this.regions.remove(oldest.getKey(), oldest.getValue());
+                    oldest.getValue().close();
+                    evictions.incrementAndGet();
+                }
+            }
+        }
     }
-    // CraftBukkit end
 
-    public static synchronized boolean chunkExists(File file, int i, int j) {
-        RegionFile regionfile = b(file, i, j);
+    private static class CachedRegionFile {
+
+        private final RegionFile region;
+        // One reference is held by the cache itself for as long as the entry is mapped
+        private final AtomicInteger references = new AtomicInteger(1);
+        private volatile long lastUsed;
+
+        private CachedRegionFile(RegionFile region) {
+            this.region = region;
+        }
+
+        private boolean retain() {
+            while (true) {
+                int i = this.references.get();
+
+                if (i <= 0) {
+                    return false;
+                }
 
-        return regionfile != null ? regionfile.c(i & 31, j & 31) : false;
+                if (this.references.compareAndSet(i, i + 1)) {
+                    this.lastUsed = System.nanoTime();
+                    return true;
+                }
+            }
+        }
+
+        private void close() {
+            try {
+                this.region.c();
+            } catch (IOException ioexception) {
+                ioexception.printStackTrace();
+            }
+
+            openFiles.decrementAndGet();
+        }
     }
+    // CraftBukkit end
 }
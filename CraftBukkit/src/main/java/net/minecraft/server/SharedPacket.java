@@ -0,0 +1,103 @@
+package net.minecraft.server;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.MessageToMessageEncoder;
+import java.io.IOException;
+import java.util.List;
+import org.bukkit.craftbukkit.util.CompressionBackend;
+
+// CraftBukkit - new class
+/**
+ * A play packet sent to many connections at once. It is serialized, and
+ * compressed for each compression threshold in use, the first time a
+ * connection writes it. Every other connection writes a duplicate of the
+ * same buffer, so the packet encoder and compressor run once per broadcast
+ * instead of once per viewer.
+ */
+public final class SharedPacket {
+
+    public static final SharedPacket.Encoder ENCODER = new SharedPacket.Encoder();
+    private final Packet<?> packet;
+    private ByteBuf encoded;
+    private ByteBuf compressed;
+    private int threshold = -1;
+    private final PacketMetrics.Counter metrics;
+
+    public SharedPacket(Packet<?> packet) {
+        this.packet = packet;
+        this.metrics = PacketMetrics.outbound(packet.getClass());
+    }
+
+    public Packet<?> getPacket() {
+        return this.packet;
+    }
+
+    // Packet id and body, as PacketEncoder writes them
+    private synchronized ByteBuf encoded() throws IOException {
+        if (this.encoded == null) {
+            Integer integer = EnumProtocol.PLAY.a(EnumProtocolDirection.CLIENTBOUND, this.packet);
+
+            if (integer == null) {
+                throw new IOException("Can't serialize unregistered packet");
+            }
+
+            PacketDataSerializer packetdataserializer = new PacketDataSerializer(Unpooled.buffer());
+            long i = System.nanoTime();
+
+            packetdataserializer.d(integer.intValue());
+            this.packet.b(packetdataserializer);
+            this.encoded = packetdataserializer;
+            this.metrics.time(System.nanoTime() - i);
+        }
+
+        return this.encoded;
+    }
+
+    // The same, as PacketCompressor frames it
+    private synchronized ByteBuf compressed(int i) throws IOException {
+        if (this.compressed == null || this.threshold != i) {
+            ByteBuf bytebuf = this.encoded();
+            int j = bytebuf.readableBytes();
+            long k = System.nanoTime();
+            PacketDataSerializer packetdataserializer = new PacketDataSerializer(Unpooled.buffer(j + 5));
+
+            if (j < i) {
+                packetdataserializer.d(0);
+                packetdataserializer.writeBytes(bytebuf, bytebuf.readerIndex(), j);
+            } else {
+                packetdataserializer.d(j);
+                CompressionBackend.get().deflate(bytebuf.duplicate(), packetdataserializer);
+            }
+
+            this.compressed = packetdataserializer;
+            this.threshold = i;
+            this.metrics.time(System.nanoTime() - k);
+        }
+
+        return this.compressed;
+    }
+
+    /**
+     * Turns shared packets back into bytes for the frame prepender. Sits
+     * between the prepender and the compressor, which both let the shared
+     * packet pass untouched.
+     */
+    @ChannelHandler.Sharable
+    public static class Encoder extends MessageToMessageEncoder<SharedPacket> {
+
+        protected void encode(ChannelHandlerContext channelhandlercontext, SharedPacket sharedpacket, List<Object> list) throws Exception {
+            ChannelHandler channelhandler = channelhandlercontext.pipeline().get("compress");
+            ByteBuf bytebuf = sharedpacket.encoded();
+            ByteBuf bytebuf1 = channelhandler instanceof PacketCompressor ? sharedpacket.compressed(((PacketCompressor) channelhandler).getThreshold()) : bytebuf;
+            PacketMetrics.Counter packetmetrics_counter = sharedpacket.metrics;
+
+            // Encoding and compression time was counted once, when the bytes were made
+            packetmetrics_counter.encoded(bytebuf.readableBytes(), 0L);
+            packetmetrics_counter.compressed(bytebuf1.readableBytes(), 0L);
+            list.add(bytebuf1.duplicate().retain());
+        }
+    }
+}
@@ -101,6 +101,8 @@ public abstract class World implements IBlockAccess {
     public long ticksPerMonsterSpawns;
     public boolean populating;
     private int tickPosition;
+    public int activeEntities; // entities fully ticked this tick, see ActivationRange
+    public int inactiveEntities;
 
     public CraftWorld getWorld() {
         return this.world;
@@ -1106,6 +1108,7 @@ public abstract class World implements IBlockAccess {
         boolean flag2 = entity != null && this.g(entity);
         IBlockData iblockdata = Blocks.STONE.getBlockData();
         BlockPosition.PooledBlockPosition blockposition_pooledblockposition = BlockPosition.PooledBlockPosition.s();
+        boolean flag7 = !this.captureTreeGeneration && this.N() != WorldType.DEBUG_ALL_BLOCK_STATES; // CraftBukkit - getType is the chunk's block
 
         try {
             for (int k1 = i; k1 < j; ++k1) {
@@ -1114,6 +1117,8 @@ public abstract class World implements IBlockAccess {
                     boolean flag4 = l1 == i1 || l1 == j1 - 1;
 
                     if ((!flag3 || !flag4) && this.isLoaded(blockposition_pooledblockposition.f(k1, 64, l1))) {
+                        Chunk chunk = flag7 ? this.getChunkAt(k1 >> 4, l1 >> 4) : null; // CraftBukkit
+
                         for (int i2 = k; i2 < l; ++i2) {
                             if (!flag3 && !flag4 || i2 != l - 1) {
                                 if (flag) {
@@ -1128,14 +1133,25 @@ public abstract class World implements IBlockAccess {
 
                                 blockposition_pooledblockposition.f(k1, i2, l1);
                                 IBlockData iblockdata1;
+                                int j2; // CraftBukkit
 
                                 if (!flag && !worldborder.a((BlockPosition) blockposition_pooledblockposition) && flag2) {
                                     iblockdata1 = iblockdata;
+                                // CraftBukkit start - most blocks are air or full cubes, which the section can tell without looking at the block
+                                } else if (chunk != null && (j2 = chunk.getCollisionShape(k1, i2, l1)) != Block.COLLISION_OTHER) {
+                                    if (j2 == Block.COLLISION_FULL) {
+                                        Block.a(blockposition_pooledblockposition, axisalignedbb, list, Block.j);
+                                    }
+
+                                    iblockdata1 = null;
+                                // CraftBukkit end
                                 } else {
                                     iblockdata1 = this.getType(blockposition_pooledblockposition);
                                 }
 
-                                iblockdata1.a(this, blockposition_pooledblockposition, axisalignedbb, list, entity, false);
+                                if (iblockdata1 != null) { // CraftBukkit
+                                    iblockdata1.a(this, blockposition_pooledblockposition, axisalignedbb, list, entity, false);
+                                } // CraftBukkit
                                 if (flag && !list.isEmpty()) {
                                     boolean flag6 = true;
 
@@ -1158,28 +1174,76 @@ public abstract class World implements IBlockAccess {
 
         this.a(entity, axisalignedbb, false, arraylist);
         if (entity != null) {
-            List list = this.getEntities(entity, axisalignedbb.g(0.25D));
+            this.a(entity, axisalignedbb, arraylist, Lists.<Entity>newArrayList()); // CraftBukkit - moved below
+        }
 
-            for (int i = 0; i < list.size(); ++i) {
-                Entity entity1 = (Entity) list.get(i);
+        return arraylist;
+    }
+
+    // CraftBukkit start
+    /**
+     * Same as {@link #getCubes(Entity, AxisAlignedBB)}, but fills the given
+     * buffer instead of creating a list and a box for every block.
+     *
+     * @return the buffer
+     */
+    public CollisionBuffer getCubes(@Nullable Entity entity, AxisAlignedBB axisalignedbb, CollisionBuffer collisionbuffer) {
+        collisionbuffer.clear();
+        this.a(entity, axisalignedbb, false, collisionbuffer);
+        if (entity != null) {
+            this.a(entity, axisalignedbb, collisionbuffer, collisionbuffer.entities);
+        }
+
+        return collisionbuffer;
+    }
+
+    private void a(Entity entity, AxisAlignedBB axisalignedbb, List<AxisAlignedBB> list, List<Entity> list1) {
+        // Unless the entity collides with others itself, only chunks holding something with a collision box need a look
+        boolean flag = entity.collidesWithEntities();
+        int i = MathHelper.floor((axisalignedbb.a - 0.25D - 2.0D) / 16.0D);
+        int j = MathHelper.floor((axisalignedbb.d + 0.25D + 2.0D) / 16.0D);
+        int k = MathHelper.floor((axisalignedbb.c - 0.25D - 2.0D) / 16.0D);
+        int l = MathHelper.floor((axisalignedbb.f + 0.25D + 2.0D) / 16.0D);
+        AxisAlignedBB axisalignedbb1 = null;
+
+        for (int i1 = i; i1 <= j; ++i1) {
+            for (int j1 = k; j1 <= l; ++j1) {
+                if (this.isChunkLoaded(i1, j1, true)) {
+                    Chunk chunk = this.getChunkAt(i1, j1);
+
+                    if (flag || chunk.collidableEntities > 0) {
+                        if (axisalignedbb1 == null) {
+                            axisalignedbb1 = axisalignedbb.g(0.25D);
+                        }
+
+                        chunk.a(entity, axisalignedbb1, list1, IEntitySelector.e);
+                    }
+                }
+            }
+        }
+
+        try {
+            for (int k1 = 0; k1 < list1.size(); ++k1) {
+                Entity entity1 = (Entity) list1.get(k1);
 
                 if (!entity.x(entity1)) {
-                    AxisAlignedBB axisalignedbb1 = entity1.al();
+                    AxisAlignedBB axisalignedbb2 = entity1.al();
 
-                    if (axisalignedbb1 != null && axisalignedbb1.c(axisalignedbb)) {
-                        arraylist.add(axisalignedbb1);
+                    if (axisalignedbb2 != null && axisalignedbb2.c(axisalignedbb)) {
+                        list.add(axisalignedbb2);
                     }
 
-                    axisalignedbb1 = entity.j(entity1);
-                    if (axisalignedbb1 != null && axisalignedbb1.c(axisalignedbb)) {
-                        arraylist.add(axisalignedbb1);
+                    axisalignedbb2 = entity.j(entity1);
+                    if (axisalignedbb2 != null && axisalignedbb2.c(axisalignedbb)) {
+                        list.add(axisalignedbb2);
                     }
                 }
             }
+        } finally {
+            list1.clear();
         }
-
-        return arraylist;
     }
+    // CraftBukkit end
 
     public boolean g(Entity entity) {
         double d0 = this.P.b();
@@ -1332,6 +1396,12 @@ public abstract class World implements IBlockAccess {
         CrashReportSystemDetails crashreportsystemdetails1;
         CrashReport crashreport1;
 
+        // CraftBukkit start - only tick entities near players in full
+        ActivationRange.activateEntities(this);
+        this.activeEntities = 0;
+        this.inactiveEntities = 0;
+        // CraftBukkit end
+
         ////
 
         // CraftBukkit start - Use field for loop variable
@@ -1532,12 +1602,19 @@ public abstract class World implements IBlockAccess {
         entity.lastPitch = entity.pitch;
         if (flag && entity.aa) {
             ++entity.ticksLived;
-            if (entity.isPassenger()) {
+            // CraftBukkit start - entities out of activation range only get the inactive tick
+            if (!ActivationRange.checkIfActive(entity)) {
+                ++this.inactiveEntities;
+                entity.inactiveTick();
+            } else if (entity.isPassenger()) {
+                ++this.activeEntities;
+                // CraftBukkit end
                 entity.aE();
             } else {
                 /*if (entity instanceof  EntityPig)
                     System.out.println(entity.motX + ", " + entity.motY + ", " + entity.motZ);*/
 
+                ++this.activeEntities; // CraftBukkit
                 entity.B_();
                 entity.postTick(); // CraftBukkit
             }
@@ -1602,17 +1679,38 @@ public abstract class World implements IBlockAccess {
     }
 
     public boolean a(AxisAlignedBB axisalignedbb, @Nullable Entity entity) {
-        List list = this.getEntities((Entity) null, axisalignedbb);
+        // CraftBukkit start - reuse the collision scratch list
+        List list = CollisionBuffer.local(0).entities;
 
-        for (int i = 0; i < list.size(); ++i) {
-            Entity entity1 = (Entity) list.get(i);
+        try {
+            int j = MathHelper.floor((axisalignedbb.a - 2.0D) / 16.0D);
+            int k = MathHelper.floor((axisalignedbb.d + 2.0D) / 16.0D);
+            int l = MathHelper.floor((axisalignedbb.c - 2.0D) / 16.0D);
+            int i1 = MathHelper.floor((axisalignedbb.f + 2.0D) / 16.0D);
+
+            for (int j1 = j; j1 <= k; ++j1) {
+                for (int k1 = l; k1 <= i1; ++k1) {
+                    if (this.isChunkLoaded(j1, k1, true)) {
+                        this.getChunkAt(j1, k1).a((Entity) null, axisalignedbb, list, IEntitySelector.e);
+                    }
+                }
+            }
+            // CraftBukkit end
 
-            if (!entity1.dead && entity1.i && entity1 != entity && (entity == null || entity1.x(entity))) {
-                return false;
+            for (int i = 0; i < list.size(); ++i) {
+                Entity entity1 = (Entity) list.get(i);
+
+                if (!entity1.dead && entity1.i && entity1 != entity && (entity == null || entity1.x(entity))) {
+                    return false;
+                }
             }
-        }
 
-        return true;
+            return true;
+        // CraftBukkit start
+        } finally {
+            list.clear();
+        }
+        // CraftBukkit end
     }
 
     public boolean c(AxisAlignedBB axisalignedbb) {
@@ -52,6 +52,8 @@ import org.bukkit.configuration.file.YamlConfiguration;
 import org.bukkit.configuration.serialization.ConfigurationSerialization;
 import org.bukkit.conversations.Conversable;
 import org.bukkit.craftbukkit.boss.CraftBossBar;
+import org.bukkit.craftbukkit.command.ActivationStatsCommand;
+import org.bukkit.craftbukkit.command.NetworkStatsCommand;
 import org.bukkit.craftbukkit.command.VanillaCommandWrapper;
 import org.bukkit.craftbukkit.entity.CraftPlayer;
 import org.bukkit.craftbukkit.generator.CraftChunkData;
@@ -71,6 +73,7 @@ import org.bukkit.craftbukkit.metadata.WorldMetadataStore;
 import org.bukkit.craftbukkit.potion.CraftPotionBrewer;
 import org.bukkit.craftbukkit.scheduler.CraftScheduler;
 import org.bukkit.craftbukkit.scoreboard.CraftScoreboardManager;
+import org.bukkit.craftbukkit.util.AuthenticationExecutor;
 import org.bukkit.craftbukkit.util.CraftIconCache;
 import org.bukkit.craftbukkit.util.CraftMagicNumbers;
 import org.bukkit.craftbukkit.util.DatFileFilter;
@@ -160,6 +163,20 @@ public final class CraftServer implements Server {
     private int ambientSpawn = -1;
     public int chunkGCPeriod = -1;
     public int chunkGCLoadThresh = 0;
+    public boolean snapshotChunkSections = true;
+    public boolean prefetchChunks = false;
+    public int chunkUnloadDelay = 100;
+    public int chunkUnloadBudget = 5;
+    public boolean batchPacketFlush = true;
+    public int packetFlushThreshold = 64 * 1024;
+    private AuthenticationExecutor authenticationExecutor;
+    public int statusCacheTtl = 1000;
+    public int trackerThreads = 0;
+    public int trackerParallelThreshold = 64;
+    public int activationRangeAnimals = 32;
+    public int activationRangeMonsters = 32;
+    public int activationRangeVillagers = 32;
+    public int activationRangeMisc = 16;
     private File container;
     private WarningState warningState = WarningState.DEFAULT;
     private final BooleanWrapper online = new BooleanWrapper();
@@ -255,6 +272,20 @@ public final class CraftServer implements Server {
         warningState = WarningState.value(configuration.getString("settings.deprecated-verbose"));
         chunkGCPeriod = configuration.getInt("chunk-gc.period-in-ticks");
         chunkGCLoadThresh = configuration.getInt("chunk-gc.load-threshold");
+        snapshotChunkSections = configuration.getBoolean("chunk-io.snapshot-sections");
+        prefetchChunks = configuration.getBoolean("chunk-io.prefetch");
+        chunkUnloadDelay = configuration.getInt("chunk-io.unload-delay-ticks");
+        chunkUnloadBudget = configuration.getInt("chunk-io.unload-budget-ms");
+        batchPacketFlush = configuration.getBoolean("network.batch-flush");
+        packetFlushThreshold = configuration.getInt("network.flush-threshold-bytes");
+        statusCacheTtl = configuration.getInt("network.status-cache-ms");
+        authenticationExecutor = new AuthenticationExecutor(configuration.getInt("network.auth-threads"), configuration.getInt("network.auth-queue-limit"));
+        trackerThreads = configuration.getInt("entity-tracker.threads");
+        trackerParallelThreshold = configuration.getInt("entity-tracker.parallel-threshold");
+        activationRangeAnimals = configuration.getInt("activation-range.animals");
+        activationRangeMonsters = configuration.getInt("activation-range.monsters");
+        activationRangeVillagers = configuration.getInt("activation-range.villagers");
+        activationRangeMisc = configuration.getInt("activation-range.misc");
         loadIcon();
     }
 
@@ -332,6 +363,8 @@ public final class CraftServer implements Server {
         if (type == PluginLoadOrder.POSTWORLD) {
             commandMap.setFallbackCommands();
             setVanillaCommands();
+            commandMap.register("bukkit", new NetworkStatsCommand("netstats"));
+            commandMap.register("bukkit", new ActivationStatsCommand("activation"));
             commandMap.registerServerAliases();
             loadCustomPermissions();
             DefaultPermissions.registerCorePermissions();
@@ -665,6 +698,20 @@ public final class CraftServer implements Server {
         console.autosavePeriod = configuration.getInt("ticks-per.autosave");
         chunkGCPeriod = configuration.getInt("chunk-gc.period-in-ticks");
         chunkGCLoadThresh = configuration.getInt("chunk-gc.load-threshold");
+        snapshotChunkSections = configuration.getBoolean("chunk-io.snapshot-sections");
+        prefetchChunks = configuration.getBoolean("chunk-io.prefetch");
+        chunkUnloadDelay = configuration.getInt("chunk-io.unload-delay-ticks");
+        chunkUnloadBudget = configuration.getInt("chunk-io.unload-budget-ms");
+        batchPacketFlush = configuration.getBoolean("network.batch-flush");
+        packetFlushThreshold = configuration.getInt("network.flush-threshold-bytes");
+        statusCacheTtl = configuration.getInt("network.status-cache-ms");
+        authenticationExecutor.setLimits(configuration.getInt("network.auth-threads"), configuration.getInt("network.auth-queue-limit"));
+        trackerThreads = configuration.getInt("entity-tracker.threads");
+        trackerParallelThreshold = configuration.getInt("entity-tracker.parallel-threshold");
+        activationRangeAnimals = configuration.getInt("activation-range.animals");
+        activationRangeMonsters = configuration.getInt("activation-range.monsters");
+        activationRangeVillagers = configuration.getInt("activation-range.villagers");
+        activationRangeMisc = configuration.getInt("activation-range.misc");
         loadIcon();
 
         try {
@@ -744,6 +791,7 @@ public final class CraftServer implements Server {
         } catch (Exception ex) {
             getLogger().log(Level.WARNING, "Couldn't load server icon", ex);
         }
+        PacketStatusListener.invalidateCache();
     }
 
     @SuppressWarnings({ "unchecked", "finally" })
@@ -1602,6 +1650,10 @@ public final class CraftServer implements Server {
         getLogger().log(Level.WARNING, "A manual (plugin-induced) save has been detected while server is configured to auto-save. This may affect performance.", warningState == WarningState.ON ? new Throwable() : null);
     }
 
+    public AuthenticationExecutor getAuthenticationExecutor() {
+        return authenticationExecutor;
+    }
+
     @Override
     public CraftIconCache getServerIcon() {
         return icon;
@@ -1556,7 +1556,7 @@ public class CraftWorld implements World {
             }
 
             // Already unloading?
-            if (cps.unloadQueue.contains(ChunkCoordIntPair.a(chunk.locX, chunk.locZ))) {
+            if (cps.unloadQueue.containsKey(ChunkCoordIntPair.a(chunk.locX, chunk.locZ))) {
                 continue;
             }
 
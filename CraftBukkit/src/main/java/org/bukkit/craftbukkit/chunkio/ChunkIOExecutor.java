@@ -1,23 +1,131 @@
 package org.bukkit.craftbukkit.chunkio;
 
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import net.minecraft.server.Chunk;
 import net.minecraft.server.ChunkProviderServer;
 import net.minecraft.server.ChunkRegionLoader;
 import net.minecraft.server.World;
+import net.minecraft.server.WorldServer;
+import org.bukkit.craftbukkit.CraftWorld;
 import org.bukkit.craftbukkit.util.AsynchronousExecutor;
 
 public class ChunkIOExecutor {
     static final int BASE_THREADS = 1;
-    static final int PLAYERS_PER_THREAD = 50;
+    static final int MAX_THREADS = Math.max(BASE_THREADS, Runtime.getRuntime().availableProcessors());
+    // Queued loads are re-sorted by distance to the nearest player this often, players move in between
+    static final int REPRIORITIZE_TICKS = 10;
+    static final int RESIZE_TICKS = 20;
+    // The pool is sized so that the current backlog could be loaded within this time
+    static final long TARGET_BACKLOG_NANOS = TimeUnit.MILLISECONDS.toNanos(250);
+    static final int PREFETCHES_PER_TICK = 32;
+    static final int MAX_PREFETCHES = 256;
+    // Chunks checked for prefetching per tick, each check may look at players and the region header
+    static final int PREFETCH_PROBES_PER_TICK = 64;
+    private static final Runnable PREFETCHED = new Runnable() {
+        public void run() {}
+    };
+    // Frames skipped when working out who asked for a synchronous load
+    private static final Set<String> CHUNK_ACCESS_CLASSES = ImmutableSet.of(
+            ChunkIOExecutor.class.getName(), AsynchronousExecutor.class.getName(), ChunkProviderServer.class.getName(),
+            World.class.getName(), WorldServer.class.getName(), CraftWorld.class.getName());
 
-    private static final AsynchronousExecutor<QueuedChunk, Chunk, Runnable, RuntimeException> instance = new AsynchronousExecutor<QueuedChunk, Chunk, Runnable, RuntimeException>(new ChunkIOProvider(), BASE_THREADS);
+    private static final ChunkIOProvider provider = new ChunkIOProvider();
+    private static final AsynchronousExecutor<QueuedChunk, Chunk, Runnable, RuntimeException> instance = new AsynchronousExecutor<QueuedChunk, Chunk, Runnable, RuntimeException>(provider, BASE_THREADS, provider);
+
+    private static int ticks;
+    private static int queuedSinceResize;
+    private static long lastResize = System.nanoTime();
+    private static long averageLoadNanos;
+
+    private static final Set<QueuedChunk> prefetching = new HashSet<QueuedChunk>();
+    private static int prefetchesThisTick;
+    private static int prefetchProbesThisTick;
+    private static long prefetches;
+    private static long latePrefetches;
+    private static int syncLoadsThisTick;
+    private static int syncLoadsLastTick;
+    private static long syncLoads;
+    private static final Map<String, Integer> syncLoadCallers = new HashMap<String, Integer>();
 
     public static Chunk syncChunkLoad(World world, ChunkRegionLoader loader, ChunkProviderServer provider, int x, int z) {
-        return instance.getSkipQueue(new QueuedChunk(x, z, loader, world, provider));
+        QueuedChunk queuedChunk = new QueuedChunk(x, z, loader, world, provider);
+
+        // Claimed, so it is not unloaded again once the prefetch finishes
+        if (prefetching.remove(queuedChunk)) {
+            latePrefetches++;
+        }
+
+        syncLoadsThisTick++;
+        syncLoads++;
+        String caller = findCaller();
+        Integer count = syncLoadCallers.get(caller);
+        syncLoadCallers.put(caller, count == null ? 1 : count + 1);
+
+        return instance.getSkipQueue(queuedChunk);
+    }
+
+    /**
+     * Loads a chunk asynchronously ahead of it being needed, so a later
+     * synchronous request finds it already loaded. Prefetches are limited to
+     * {@link #PREFETCHES_PER_TICK} new requests per tick and
+     * {@link #MAX_PREFETCHES} outstanding ones. A prefetched chunk nobody
+     * asked for by the time it is loaded is queued for unload.
+     */
+    public static void prefetchChunkLoad(World world, ChunkRegionLoader loader, ChunkProviderServer provider, int x, int z) {
+        if (!canPrefetch()) {
+            return;
+        }
+
+        QueuedChunk queuedChunk = new QueuedChunk(x, z, loader, world, provider);
+
+        if (prefetching.add(queuedChunk)) {
+            prefetchesThisTick++;
+            prefetches++;
+            instance.add(queuedChunk, PREFETCHED);
+        }
+    }
+
+    public static boolean canPrefetch() {
+        return prefetchesThisTick < PREFETCHES_PER_TICK && prefetching.size() < MAX_PREFETCHES;
+    }
+
+    /**
+     * Takes one of this tick's prefetch checks, unless they are used up or
+     * the chunk is already being prefetched. Meant to be called before any
+     * costly check of whether the chunk is worth prefetching.
+     */
+    public static boolean tryPrefetchProbe(World world, int x, int z) {
+        if (prefetchProbesThisTick >= PREFETCH_PROBES_PER_TICK || !canPrefetch() || prefetching.contains(new QueuedChunk(x, z, null, world, null))) {
+            return false;
+        }
+
+        prefetchProbesThisTick++;
+        return true;
+    }
+
+    // Called after stage 2 of every load, even a failed one
+    static void finishPrefetch(QueuedChunk queuedChunk) {
+        if (prefetching.remove(queuedChunk)) {
+            Chunk chunk = queuedChunk.provider.getChunkIfLoaded(queuedChunk.x, queuedChunk.z);
+
+            if (chunk != null) {
+                queuedChunk.provider.unload(chunk);
+            }
+        }
     }
 
     public static void queueChunkLoad(World world, ChunkRegionLoader loader, ChunkProviderServer provider, int x, int z, Runnable runnable) {
-        instance.add(new QueuedChunk(x, z, loader, world, provider), runnable);
+        QueuedChunk queuedChunk = new QueuedChunk(x, z, loader, world, provider);
+
+        prefetching.remove(queuedChunk); // Claimed
+        instance.add(queuedChunk, runnable);
+        queuedSinceResize++;
     }
 
     // Abuses the fact that hashCode and equals for QueuedChunk only use world and coords
@@ -25,12 +133,102 @@ public class ChunkIOExecutor {
         instance.drop(new QueuedChunk(x, z, null, world, null), runnable);
     }
 
-    public static void adjustPoolSize(int players) {
-        int size = Math.max(BASE_THREADS, (int) Math.ceil(players / PLAYERS_PER_THREAD));
-        instance.setActiveThreads(size);
-    }
-
     public static void tick() {
         instance.finishActive();
+
+        syncLoadsLastTick = syncLoadsThisTick;
+        syncLoadsThisTick = 0;
+        prefetchesThisTick = 0;
+        prefetchProbesThisTick = 0;
+
+        ticks++;
+        if (ticks % REPRIORITIZE_TICKS == 0) {
+            instance.reprioritize();
+        }
+        if (ticks % RESIZE_TICKS == 0) {
+            resizePool();
+        }
+    }
+
+    /**
+     * Sizes the pool from the measured load time: enough threads to keep up
+     * with the rate loads are requested at, or to work off the queued loads
+     * within {@link #TARGET_BACKLOG_NANOS}, whichever needs more.
+     */
+    private static void resizePool() {
+        long now = System.nanoTime();
+        long elapsed = Math.max(1, now - lastResize);
+        long loads = provider.loads.getAndSet(0);
+        long loadNanos = provider.loadNanos.getAndSet(0);
+
+        if (loads > 0) {
+            averageLoadNanos = loadNanos / loads;
+        }
+
+        double keepUp = queuedSinceResize * (double) averageLoadNanos / elapsed;
+        double backlog = instance.getQueueSize() * (double) averageLoadNanos / TARGET_BACKLOG_NANOS;
+        int size = (int) Math.ceil(Math.max(keepUp, backlog));
+
+        instance.setActiveThreads(Math.max(BASE_THREADS, Math.min(MAX_THREADS, size)));
+        queuedSinceResize = 0;
+        lastResize = now;
+    }
+
+    private static String findCaller() {
+        for (StackTraceElement element : new Throwable().getStackTrace()) {
+            if (!CHUNK_ACCESS_CLASSES.contains(element.getClassName())) {
+                return element.getClassName() + "." + element.getMethodName();
+            }
+        }
+
+        return "unknown";
+    }
+
+    public static int getQueuedChunks() {
+        return instance.getQueueSize();
+    }
+
+    public static int getActiveThreads() {
+        return instance.getActiveThreads();
+    }
+
+    /**
+     * @return the average time in milliseconds an asynchronous chunk load
+     *     took over the last measurement window
+     */
+    public static double getAverageLoadTime() {
+        return averageLoadNanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    /**
+     * @return number of chunks the main thread had to wait for during the
+     *     last tick
+     */
+    public static int getSyncLoadsLastTick() {
+        return syncLoadsLastTick;
+    }
+
+    public static long getSyncLoads() {
+        return syncLoads;
+    }
+
+    /**
+     * @return synchronous loads so far, keyed by the first method outside of
+     *     the world and chunk provider that asked for the chunk
+     */
+    public static Map<String, Integer> getSyncLoadCallers() {
+        return ImmutableMap.copyOf(syncLoadCallers);
+    }
+
+    public static long getPrefetches() {
+        return prefetches;
+    }
+
+    /**
+     * @return number of synchronous loads of a chunk that was still being
+     *     prefetched
+     */
+    public static long getLatePrefetches() {
+        return latePrefetches;
     }
 }
@@ -5,17 +5,23 @@ import net.minecraft.server.Chunk;
 import net.minecraft.server.ChunkCoordIntPair;
 import net.minecraft.server.ChunkRegionLoader;
 import net.minecraft.server.NBTTagCompound;
+import net.minecraft.server.WorldServer;
 
 import org.bukkit.Server;
 import org.bukkit.craftbukkit.util.AsynchronousExecutor;
 
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
-class ChunkIOProvider implements AsynchronousExecutor.CallBackProvider<QueuedChunk, Chunk, Runnable, RuntimeException> {
+class ChunkIOProvider implements AsynchronousExecutor.CallBackProvider<QueuedChunk, Chunk, Runnable, RuntimeException>, AsynchronousExecutor.Prioritizer<QueuedChunk> {
     private final AtomicInteger threadNumber = new AtomicInteger(1);
+    final AtomicLong loads = new AtomicLong();
+    final AtomicLong loadNanos = new AtomicLong();
 
     // async stuff
     public Chunk callStage1(QueuedChunk queuedChunk) throws RuntimeException {
+        long start = System.nanoTime();
+
         try {
             ChunkRegionLoader loader = queuedChunk.loader;
             Object[] data = loader.loadChunk(queuedChunk.world, queuedChunk.x, queuedChunk.z);
@@ -28,33 +34,51 @@ class ChunkIOProvider implements AsynchronousExecutor.CallBackProvider<QueuedChu
             return null;
         } catch (IOException ex) {
             throw new RuntimeException(ex);
+        } finally {
+            loadNanos.addAndGet(System.nanoTime() - start);
+            loads.incrementAndGet();
         }
     }
 
     // sync stuff
     public void callStage2(QueuedChunk queuedChunk, Chunk chunk) throws RuntimeException {
-        if (chunk == null) {
-            // If the chunk loading failed just do it synchronously (may generate)
-            queuedChunk.provider.originalGetChunkAt(queuedChunk.x, queuedChunk.z);
-            return;
-        }
+        try {
+            if (chunk == null) {
+                // If the chunk loading failed just do it synchronously (may generate)
+                queuedChunk.provider.originalGetChunkAt(queuedChunk.x, queuedChunk.z);
+                return;
+            }
 
-        queuedChunk.loader.loadEntities(chunk, queuedChunk.compound.getCompound("Level"), queuedChunk.world);
-        chunk.setLastSaved(queuedChunk.provider.world.getTime());
-        queuedChunk.provider.chunks.put(ChunkCoordIntPair.a(queuedChunk.x, queuedChunk.z), chunk);
-        chunk.addEntities();
+            queuedChunk.loader.loadEntities(chunk, queuedChunk.compound.getCompound("Level"), queuedChunk.world);
+            chunk.setLastSaved(queuedChunk.provider.world.getTime());
+            queuedChunk.provider.chunks.put(ChunkCoordIntPair.a(queuedChunk.x, queuedChunk.z), chunk);
+            chunk.addEntities();
 
-        if (queuedChunk.provider.chunkGenerator != null) {
-            queuedChunk.provider.chunkGenerator.recreateStructures(chunk, queuedChunk.x, queuedChunk.z);
-        }
+            if (queuedChunk.provider.chunkGenerator != null) {
+                queuedChunk.provider.chunkGenerator.recreateStructures(chunk, queuedChunk.x, queuedChunk.z);
+            }
 
-        chunk.loadNearby(queuedChunk.provider, queuedChunk.provider.chunkGenerator, false);
+            chunk.loadNearby(queuedChunk.provider, queuedChunk.provider.chunkGenerator, false);
+        } finally {
+            ChunkIOExecutor.finishPrefetch(queuedChunk);
+        }
     }
 
     public void callStage3(QueuedChunk queuedChunk, Chunk chunk, Runnable runnable) throws RuntimeException {
         runnable.run();
     }
 
+    // sync stuff
+    public void updatePriority(QueuedChunk queuedChunk) {
+        if (queuedChunk.world instanceof WorldServer) {
+            queuedChunk.priority = ((WorldServer) queuedChunk.world).getPlayerChunkMap().getLoadPriority(queuedChunk.x, queuedChunk.z);
+        }
+    }
+
+    public int compare(QueuedChunk a, QueuedChunk b) {
+        return Integer.compare(a.priority, b.priority);
+    }
+
     public Thread newThread(Runnable runnable) {
         Thread thread = new Thread(runnable, "Chunk I/O Executor Thread-" + threadNumber.getAndIncrement());
         thread.setDaemon(true);
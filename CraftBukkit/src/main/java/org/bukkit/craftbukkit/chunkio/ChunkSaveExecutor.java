@@ -0,0 +1,151 @@
+package org.bukkit.craftbukkit.chunkio;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Serializes and compresses queued chunk saves off the main thread and keeps
+ * track of how far behind the save pipeline is.
+ * <p>
+ * Chunks go through three stages: the main thread builds the NBT snapshot,
+ * this pool serializes and deflates it, and the File IO thread writes the
+ * compressed chunks in batches sorted by region file.
+ */
+public final class ChunkSaveExecutor {
+    static final int MAX_THREADS = 4;
+    // Compressed bytes allowed to wait for the File IO thread before saving chunks blocks
+    static final long MAX_QUEUED_BYTES = 64L * 1024L * 1024L;
+    static final long BACKPRESSURE_POLL_MILLIS = 10L;
+
+    private static final ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, Math.min(MAX_THREADS, Runtime.getRuntime().availableProcessors() / 2)), new ThreadFactory() {
+        private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "Chunk Save Executor Thread-" + threadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private static final Object capacityLock = new Object();
+    private static final AtomicInteger queuedChunks = new AtomicInteger();
+    private static final AtomicLong queuedBytes = new AtomicLong();
+    private static final AtomicLong coalesced = new AtomicLong();
+    private static final AtomicLong written = new AtomicLong();
+    private static final AtomicLong totalLatency = new AtomicLong();
+    private static final AtomicLong maxLatency = new AtomicLong();
+
+    private ChunkSaveExecutor() {
+    }
+
+    public static void submit(Runnable task) {
+        pool.execute(task);
+    }
+
+    /**
+     * Blocks the calling thread while more than {@link #MAX_QUEUED_BYTES}
+     * of compressed chunks are waiting to be written.
+     */
+    public static void awaitCapacity() {
+        if (queuedBytes.get() <= MAX_QUEUED_BYTES) {
+            return;
+        }
+
+        synchronized (capacityLock) {
+            while (queuedBytes.get() > MAX_QUEUED_BYTES) {
+                try {
+                    capacityLock.wait(BACKPRESSURE_POLL_MILLIS);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    public static void chunkQueued(boolean replaced) {
+        if (replaced) {
+            coalesced.incrementAndGet();
+        } else {
+            queuedChunks.incrementAndGet();
+        }
+    }
+
+    public static void chunkSerialized(int bytes) {
+        queuedBytes.addAndGet(bytes);
+    }
+
+    public static void chunkDropped(int bytes) {
+        release(bytes);
+    }
+
+    public static void chunkWritten(int bytes, long queuedAt) {
+        long latency = System.nanoTime() - queuedAt;
+
+        queuedChunks.decrementAndGet();
+        written.incrementAndGet();
+        totalLatency.addAndGet(latency);
+
+        long max = maxLatency.get();
+        while (latency > max && !maxLatency.compareAndSet(max, latency)) {
+            max = maxLatency.get();
+        }
+
+        release(bytes);
+    }
+
+    private static void release(int bytes) {
+        if (queuedBytes.addAndGet(-bytes) <= MAX_QUEUED_BYTES) {
+            synchronized (capacityLock) {
+                capacityLock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * @return number of distinct chunks waiting to be serialized or written
+     */
+    public static int getQueuedChunks() {
+        return queuedChunks.get();
+    }
+
+    /**
+     * @return compressed bytes waiting to be written
+     */
+    public static long getQueuedBytes() {
+        return queuedBytes.get();
+    }
+
+    /**
+     * @return number of saves that replaced a save of the same chunk which
+     *     had not been written yet
+     */
+    public static long getCoalescedSaves() {
+        return coalesced.get();
+    }
+
+    public static long getWrittenChunks() {
+        return written.get();
+    }
+
+    /**
+     * @return average time in milliseconds between a chunk being queued and
+     *     written to its region file
+     */
+    public static double getAverageLatency() {
+        long count = written.get();
+        return count == 0 ? 0.0D : totalLatency.get() / (double) count / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    /**
+     * @return the longest time in milliseconds a chunk has waited to be
+     *     written
+     */
+    public static double getMaxLatency() {
+        return maxLatency.get() / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+}
@@ -0,0 +1,182 @@
+package org.bukkit.craftbukkit.chunkio;
+
+import io.netty.channel.Channel;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.GenericFutureListener;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import net.minecraft.server.ChunkCoordIntPair;
+import net.minecraft.server.EntityPlayer;
+import net.minecraft.server.PacketPlayOutMapChunk;
+import net.minecraft.server.PlayerChunk;
+
+/**
+ * Chunks waiting to be sent to one player, nearest first.
+ * <p>
+ * Sends are paced by how fast the player's connection actually takes the
+ * data: only about {@link #TARGET_IN_FLIGHT_NANOS} worth of the measured
+ * throughput is allowed to sit in Netty's outbound buffer at once, so slow
+ * links do not pile up megabytes of chunks and everyone else is not held
+ * back by a shared per-tick cap.
+ */
+public class ChunkSendQueue {
+    // Allowed in flight before the throughput is known, and the floor afterwards
+    static final long MIN_IN_FLIGHT_BYTES = 256L * 1024L;
+    static final long TARGET_IN_FLIGHT_NANOS = TimeUnit.MILLISECONDS.toNanos(200);
+    static final int MAX_CHUNKS_PER_TICK = 32;
+    // Weight of the newest sample in the moving averages
+    static final double SMOOTHING = 0.2D;
+
+    private final EntityPlayer player;
+    private final Set<PlayerChunk> queued = new HashSet<PlayerChunk>();
+    // Sorted farthest first, so the nearest chunk is taken off the end
+    private final List<PlayerChunk> order = new ArrayList<PlayerChunk>();
+    private boolean sorted = true;
+    private int sortX;
+    private int sortZ;
+
+    private long sentBytes;
+    private final AtomicLong writtenBytes = new AtomicLong();
+    private long lastWrittenBytes;
+    private long lastUpdate = System.nanoTime();
+    private double throughput;
+    private int sentChunks;
+    private double sendRate;
+
+    public ChunkSendQueue(EntityPlayer player) {
+        this.player = player;
+    }
+
+    public void add(PlayerChunk chunk) {
+        if (queued.add(chunk)) {
+            order.add(chunk);
+            sorted = false;
+        }
+    }
+
+    /**
+     * @return true if the chunk was still waiting and has not been sent
+     */
+    public boolean remove(PlayerChunk chunk) {
+        if (queued.remove(chunk)) {
+            order.remove(chunk);
+            return true;
+        }
+
+        return false;
+    }
+
+    public boolean isQueued(PlayerChunk chunk) {
+        return !queued.isEmpty() && queued.contains(chunk);
+    }
+
+    /**
+     * Sends the chunk packet, keeping track of its size until Netty has
+     * written it out.
+     */
+    public void send(final PacketPlayOutMapChunk packet) {
+        final int size = packet.getSize();
+
+        sentBytes += size;
+        sentChunks++;
+        player.playerConnection.networkManager.sendPacket(packet, new GenericFutureListener<Future<? super Void>>() {
+            public void operationComplete(Future<? super Void> future) {
+                // Failed writes are counted too, the bytes are no longer in flight either way
+                writtenBytes.addAndGet(size);
+            }
+        });
+    }
+
+    /**
+     * Sends the nearest waiting chunks the connection has room for. Called
+     * once per tick.
+     */
+    public void drain() {
+        long now = System.nanoTime();
+        long elapsed = Math.max(1, now - lastUpdate);
+        long written = writtenBytes.get();
+        long inFlight = sentBytes - written;
+        double sample = (written - lastWrittenBytes) * 1.0E9D / elapsed;
+
+        if (inFlight > 0) {
+            // The connection was busy the whole time, so this is what it can take
+            throughput += (sample - throughput) * SMOOTHING;
+        } else {
+            // It ran dry, the link could have taken more
+            throughput = Math.max(throughput, sample);
+        }
+        sendRate += (sentChunks * 1.0E9D / elapsed - sendRate) * SMOOTHING;
+        lastWrittenBytes = written;
+        lastUpdate = now;
+        sentChunks = 0;
+
+        if (order.isEmpty()) {
+            return;
+        }
+
+        Channel channel = player.playerConnection.networkManager.channel;
+        if (channel == null || !channel.isWritable()) {
+            return;
+        }
+
+        sort();
+
+        long allowance = Math.max(MIN_IN_FLIGHT_BYTES, (long) (throughput * TARGET_IN_FLIGHT_NANOS / 1.0E9D));
+        for (int i = 0; i < MAX_CHUNKS_PER_TICK && !order.isEmpty() && sentBytes - writtenBytes.get() < allowance; i++) {
+            PlayerChunk chunk = order.remove(order.size() - 1);
+
+            queued.remove(chunk);
+            chunk.sendChunk(player);
+        }
+    }
+
+    private void sort() {
+        final int x = (int) player.locX >> 4;
+        final int z = (int) player.locZ >> 4;
+
+        if (sorted && x == sortX && z == sortZ) {
+            return;
+        }
+
+        Collections.sort(order, new Comparator<PlayerChunk>() {
+            public int compare(PlayerChunk a, PlayerChunk b) {
+                return Integer.compare(distance(b.a(), x, z), distance(a.a(), x, z));
+            }
+        });
+        sorted = true;
+        sortX = x;
+        sortZ = z;
+    }
+
+    private static int distance(ChunkCoordIntPair pair, int x, int z) {
+        int dx = pair.x - x;
+        int dz = pair.z - z;
+
+        return dx * dx + dz * dz;
+    }
+
+    public int getQueuedChunks() {
+        return order.size();
+    }
+
+    /**
+     * @return chunks sent per second, averaged over recent ticks
+     */
+    public double getSendRate() {
+        return sendRate;
+    }
+
+    /**
+     * @return estimated bytes per second the connection takes, before
+     *     compression
+     */
+    public double getThroughput() {
+        return throughput;
+    }
+}
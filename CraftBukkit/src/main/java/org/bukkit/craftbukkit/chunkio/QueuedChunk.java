@@ -12,6 +12,7 @@ class QueuedChunk {
     final World world;
     final ChunkProviderServer provider;
     NBTTagCompound compound;
+    int priority;
 
     public QueuedChunk(int x, int z, ChunkRegionLoader loader, World world, ChunkProviderServer provider) {
         this.x = x;
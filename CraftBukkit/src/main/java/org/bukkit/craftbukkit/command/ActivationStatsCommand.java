@@ -0,0 +1,48 @@
+package org.bukkit.craftbukkit.command;
+
+import net.minecraft.server.WorldServer;
+
+import org.bukkit.Bukkit;
+import org.bukkit.ChatColor;
+import org.bukkit.World;
+import org.bukkit.command.CommandSender;
+import org.bukkit.command.defaults.BukkitCommand;
+import org.bukkit.craftbukkit.CraftServer;
+import org.bukkit.craftbukkit.CraftWorld;
+
+/**
+ * Shows how many entities of each world got a full tick last tick, and how
+ * many only the inactive tick for being out of activation range.
+ */
+public class ActivationStatsCommand extends BukkitCommand {
+
+    public ActivationStatsCommand(String name) {
+        super(name);
+        this.description = "Shows how many entities are ticked in full in each world";
+        this.usageMessage = "/activation";
+        this.setPermission("bukkit.command.activation");
+    }
+
+    @Override
+    public boolean execute(CommandSender sender, String currentAlias, String[] args) {
+        if (!testPermission(sender)) return true;
+
+        if (args.length != 0) {
+            sender.sendMessage(ChatColor.RED + "Usage: " + usageMessage);
+            return false;
+        }
+
+        CraftServer server = (CraftServer) Bukkit.getServer();
+        sender.sendMessage(ChatColor.GOLD + "Activation ranges: " + server.activationRangeAnimals + " animals, " + server.activationRangeMonsters + " monsters, "
+                + server.activationRangeVillagers + " villagers, " + server.activationRangeMisc + " misc");
+
+        for (World world : server.getWorlds()) {
+            WorldServer handle = ((CraftWorld) world).getHandle();
+            int total = handle.activeEntities + handle.inactiveEntities;
+
+            sender.sendMessage(ChatColor.YELLOW + world.getName() + ChatColor.RESET + ": " + handle.activeEntities + " active, " + handle.inactiveEntities + " inactive"
+                    + (total == 0 ? "" : String.format(" (%.1f%% active)", handle.activeEntities * 100.0D / total)));
+        }
+        return true;
+    }
+}
@@ -0,0 +1,132 @@
+package org.bukkit.craftbukkit.command;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import net.minecraft.server.NetworkManager;
+import net.minecraft.server.PacketMetrics;
+
+import org.bukkit.Bukkit;
+import org.bukkit.ChatColor;
+import org.bukkit.command.CommandSender;
+import org.bukkit.command.defaults.BukkitCommand;
+import org.bukkit.craftbukkit.entity.CraftPlayer;
+import org.bukkit.entity.Player;
+
+/**
+ * Dumps the packet types taking the most bandwidth or network thread time,
+ * and the network totals of single players.
+ */
+public class NetworkStatsCommand extends BukkitCommand {
+    private static final int TOP = 10;
+    private static final List<String> SORTS = Arrays.asList("bytes", "count", "time");
+
+    public NetworkStatsCommand(String name) {
+        super(name);
+        this.description = "Shows which packet types use the most bandwidth and time";
+        this.usageMessage = "/netstats [out|in] [bytes|count|time] | /netstats player <name> | /netstats reset";
+        this.setPermission("bukkit.command.netstats");
+    }
+
+    @Override
+    public boolean execute(CommandSender sender, String currentAlias, String[] args) {
+        if (!testPermission(sender)) return true;
+
+        if (args.length == 1 && args[0].equalsIgnoreCase("reset")) {
+            PacketMetrics.reset();
+            sender.sendMessage("Packet statistics reset");
+            return true;
+        }
+
+        if (args.length >= 1 && args[0].equalsIgnoreCase("player")) {
+            if (args.length != 2) {
+                sender.sendMessage(ChatColor.RED + "Usage: " + usageMessage);
+                return false;
+            }
+
+            Player player = Bukkit.getPlayerExact(args[1]);
+            if (!(player instanceof CraftPlayer) || ((CraftPlayer) player).getHandle().playerConnection == null) {
+                sender.sendMessage(ChatColor.RED + "No player named " + args[1] + " is online");
+                return true;
+            }
+
+            sendPlayer(sender, (CraftPlayer) player);
+            return true;
+        }
+
+        boolean outbound = true;
+        String sort = "bytes";
+        for (String arg : args) {
+            if (arg.equalsIgnoreCase("in") || arg.equalsIgnoreCase("out")) {
+                outbound = arg.equalsIgnoreCase("out");
+            } else if (SORTS.contains(arg.toLowerCase())) {
+                sort = arg.toLowerCase();
+            } else {
+                sender.sendMessage(ChatColor.RED + "Usage: " + usageMessage);
+                return false;
+            }
+        }
+
+        sendTop(sender, outbound ? PacketMetrics.getOutbound() : PacketMetrics.getInbound(), outbound, sort);
+        return true;
+    }
+
+    private static void sendTop(CommandSender sender, List<PacketMetrics.Counter> counters, final boolean outbound, final String sort) {
+        Collections.sort(counters, new Comparator<PacketMetrics.Counter>() {
+            public int compare(PacketMetrics.Counter a, PacketMetrics.Counter b) {
+                return Long.compare(value(b), value(a));
+            }
+
+            private long value(PacketMetrics.Counter counter) {
+                if (sort.equals("count")) {
+                    return counter.getPackets();
+                } else if (sort.equals("time")) {
+                    return counter.getNanos();
+                }
+                return outbound ? counter.getCompressedBytes() : counter.getBytes();
+            }
+        });
+
+        sender.sendMessage(ChatColor.GOLD + "Top " + (outbound ? "sent" : "received") + " packet types by " + sort + ":");
+        for (int i = 0; i < counters.size() && i < TOP; i++) {
+            PacketMetrics.Counter counter = counters.get(i);
+            long packets = counter.getPackets();
+            if (packets == 0) {
+                break;
+            }
+
+            StringBuilder line = new StringBuilder();
+            line.append(ChatColor.YELLOW).append(counter.getName()).append(ChatColor.RESET).append(": ");
+            line.append(packets).append(" packets, ").append(size(counter.getBytes()));
+            if (outbound) {
+                line.append(" (").append(size(counter.getCompressedBytes())).append(" compressed)");
+            }
+            line.append(", ").append(String.format("%.1f", counter.getNanos() / 1000.0D / packets)).append("us each");
+            sender.sendMessage(line.toString());
+        }
+    }
+
+    private static void sendPlayer(CommandSender sender, CraftPlayer player) {
+        NetworkManager network = player.getHandle().playerConnection.networkManager;
+        List<String> lines = new ArrayList<String>();
+
+        lines.add(ChatColor.GOLD + "Network totals of " + player.getName() + ":");
+        lines.add("Sent: " + network.getSentPackets() + " packets, " + size(network.getSentBytes()));
+        lines.add("Received: " + network.getReceivedPackets() + " packets");
+        lines.add(String.format("Per flush: %.1f packets, %s", network.getPacketsPerFlush(), size((long) network.getBytesPerFlush())));
+        lines.add("Held back: " + network.getHeldPackets() + " packets, " + network.getSupersededPackets() + " superseded");
+        sender.sendMessage(lines.toArray(new String[lines.size()]));
+    }
+
+    private static String size(long bytes) {
+        if (bytes < 1024) {
+            return bytes + " B";
+        } else if (bytes < 1024 * 1024) {
+            return String.format("%.1f KiB", bytes / 1024.0D);
+        }
+        return String.format("%.1f MiB", bytes / (1024.0D * 1024.0D));
+    }
+}
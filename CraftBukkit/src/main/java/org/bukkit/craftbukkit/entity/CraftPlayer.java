@@ -130,6 +130,27 @@ public class CraftPlayer extends CraftHumanEntity implements Player {
         }
     }
 
+    public long getPacketsSent() {
+        if (getHandle().playerConnection == null) return 0;
+
+        return getHandle().playerConnection.networkManager.getSentPackets();
+    }
+
+    /**
+     * @return bytes sent to this player, after compression
+     */
+    public long getBytesSent() {
+        if (getHandle().playerConnection == null) return 0;
+
+        return getHandle().playerConnection.networkManager.getSentBytes();
+    }
+
+    public long getPacketsReceived() {
+        if (getHandle().playerConnection == null) return 0;
+
+        return getHandle().playerConnection.networkManager.getReceivedPackets();
+    }
+
     @Override
     public double getEyeHeight(boolean ignorePose) {
         if (ignorePose) {
@@ -1232,6 +1253,25 @@ public class CraftPlayer extends CraftHumanEntity implements Player {
         perm.clearPermissions();
     }
 
+    /**
+     * @return the view distance in chunks this player is sent chunks for
+     */
+    public int getViewDistance() {
+        return ((WorldServer) getHandle().world).getPlayerChunkMap().getViewDistance(getHandle());
+    }
+
+    /**
+     * Overrides the server's view distance for this player, for example to
+     * send less to players who are away. Only chunks entering or leaving
+     * the player's view are updated.
+     *
+     * @param viewDistance view distance in chunks, or -1 to use the
+     *     server's again
+     */
+    public void setViewDistance(int viewDistance) {
+        ((WorldServer) getHandle().world).getPlayerChunkMap().setViewDistance(getHandle(), viewDistance);
+    }
+
     @Override
     public boolean isFlying() {
         return getHandle().abilities.isFlying;
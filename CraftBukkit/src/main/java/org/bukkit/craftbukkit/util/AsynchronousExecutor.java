@@ -1,5 +1,7 @@
 package org.bukkit.craftbukkit.util;
 
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
@@ -7,6 +9,7 @@ import java.util.Map;
 import java.util.Queue;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.PriorityBlockingQueue;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
@@ -56,6 +59,24 @@ public final class AsynchronousExecutor<P, T, C, E extends Throwable> {
         void callStage3(P parameter, T object, C callback) throws E;
     }
 
+    /**
+     * Orders queued parameters, lowest first.
+     *
+     * @param <P> The type of parameter being ordered
+     */
+    public static interface Prioritizer<P> extends Comparator<P> {
+
+        /**
+         * Synchronous call, made when a parameter is queued and for every
+         * queued parameter on {@link AsynchronousExecutor#reprioritize()}.
+         * The parameter is out of the queue while this is called, so it may
+         * freely change anything the comparator looks at.
+         *
+         * @param parameter parameter object provided
+         */
+        void updatePriority(P parameter);
+    }
+
     @SuppressWarnings("rawtypes")
     static final AtomicIntegerFieldUpdater STATE_FIELD = AtomicIntegerFieldUpdater.newUpdater(AsynchronousExecutor.Task.class, "state");
 
@@ -73,6 +94,7 @@ public final class AsynchronousExecutor<P, T, C, E extends Throwable> {
 
         volatile int state = PENDING;
         final P parameter;
+        final long sequence = nextSequence++;
         T object;
         final List<C> callbacks = new LinkedList<C>();
         E t = null;
@@ -155,6 +177,7 @@ public final class AsynchronousExecutor<P, T, C, E extends Throwable> {
 
         @SuppressWarnings("unchecked")
         T get() throws E {
+            pool.remove(this);
             initSync();
             if (callbacks.isEmpty()) {
                 // 'this' is a placeholder to prevent callbacks from being empty during finish call
@@ -206,6 +229,7 @@ public final class AsynchronousExecutor<P, T, C, E extends Throwable> {
             if (set(this, PENDING, FINISHED)) {
                 // If we succeed that variable switch, good as forgotten
                 tasks.remove(parameter);
+                pool.remove(this);
                 return true;
             } else {
                 // We need the async thread to finish normally to properly dispose of the task
@@ -218,6 +242,8 @@ public final class AsynchronousExecutor<P, T, C, E extends Throwable> {
     final Queue<Task> finished = new ConcurrentLinkedQueue<Task>();
     final Map<P, Task> tasks = new HashMap<P, Task>();
     final ThreadPoolExecutor pool;
+    final Prioritizer<P> prioritizer;
+    long nextSequence;
 
     /**
      * Uses a thread pool to pass executions to the provider.
@@ -226,11 +252,36 @@ public final class AsynchronousExecutor<P, T, C, E extends Throwable> {
     public AsynchronousExecutor(final CallBackProvider<P, T, C, E> provider, final int coreSize) {
         Validate.notNull(provider, "Provider cannot be null");
         this.provider = provider;
+        this.prioritizer = null;
 
         // We have an unbound queue size so do not need a max thread size
         pool = new ThreadPoolExecutor(coreSize, Integer.MAX_VALUE, 60l, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), provider);
     }
 
+    /**
+     * Uses a thread pool to pass executions to the provider, running queued
+     * parameters in the order given by the prioritizer instead of the order
+     * they were added. Parameters of equal priority run in the order added.
+     * @see AsynchronousExecutor
+     */
+    public AsynchronousExecutor(final CallBackProvider<P, T, C, E> provider, final int coreSize, final Prioritizer<P> prioritizer) {
+        Validate.notNull(provider, "Provider cannot be null");
+        Validate.notNull(prioritizer, "Prioritizer cannot be null");
+        this.provider = provider;
+        this.prioritizer = prioritizer;
+
+        pool = new ThreadPoolExecutor(coreSize, Integer.MAX_VALUE, 60l, TimeUnit.SECONDS, new PriorityBlockingQueue<Runnable>(11, new Comparator<Runnable>() {
+            @SuppressWarnings("unchecked")
+            public int compare(Runnable runnable, Runnable runnable1) {
+                Task task = (Task) runnable;
+                Task task1 = (Task) runnable1;
+                int result = prioritizer.compare(task.parameter, task1.parameter);
+
+                return result != 0 ? result : Long.compare(task.sequence, task1.sequence);
+            }
+        }), provider);
+    }
+
     /**
      * Adds a callback to the parameter provided, adding parameter to the queue if needed.
      * <p>
@@ -239,6 +290,9 @@ public final class AsynchronousExecutor<P, T, C, E extends Throwable> {
     public void add(P parameter, C callback) {
         Task task = tasks.get(parameter);
         if (task == null) {
+            if (prioritizer != null) {
+                prioritizer.updatePriority(parameter);
+            }
             tasks.put(parameter, task = new Task(parameter));
             pool.execute(task);
         }
@@ -351,4 +405,35 @@ public final class AsynchronousExecutor<P, T, C, E extends Throwable> {
     public void setActiveThreads(final int coreSize) {
         pool.setCorePoolSize(coreSize);
     }
+
+    public int getActiveThreads() {
+        return pool.getCorePoolSize();
+    }
+
+    /**
+     * @return the number of parameters waiting for a thread
+     */
+    public int getQueueSize() {
+        return pool.getQueue().size();
+    }
+
+    /**
+     * Asks the prioritizer to update every queued parameter and re-orders the
+     * queue accordingly. Does nothing without a prioritizer.
+     * <p>
+     * This should always be synchronous.
+     */
+    @SuppressWarnings("unchecked")
+    public void reprioritize() {
+        if (prioritizer == null) {
+            return;
+        }
+
+        final List<Runnable> queued = new ArrayList<Runnable>();
+        pool.getQueue().drainTo(queued);
+        for (Runnable runnable : queued) {
+            prioritizer.updatePriority(((Task) runnable).parameter);
+        }
+        pool.getQueue().addAll(queued);
+    }
 }
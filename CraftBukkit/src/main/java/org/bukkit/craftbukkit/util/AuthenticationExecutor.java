@@ -0,0 +1,133 @@
+package org.bukkit.craftbukkit.util;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs login authentication, the session server check and the pre-login
+ * events, on a fixed number of threads.
+ * <p>
+ * Logins are handled in the order they arrive. Once {@link #getQueueLimit()}
+ * logins are waiting for a thread, new ones are turned away instead of
+ * queueing behind a backlog they would time out in anyway.
+ */
+public class AuthenticationExecutor {
+    private static final long KEEP_ALIVE_SECONDS = 60L;
+
+    private final AtomicInteger threadNumber = new AtomicInteger(1);
+    private final ThreadPoolExecutor pool;
+    private volatile int queueLimit;
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final LatencyHistogram queueWait = new LatencyHistogram();
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    public AuthenticationExecutor(int threads, int queueLimit) {
+        this.pool = new ThreadPoolExecutor(Math.max(1, threads), Math.max(1, threads), KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "User Authenticator #" + threadNumber.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        this.pool.allowCoreThreadTimeOut(true);
+        this.queueLimit = queueLimit;
+    }
+
+    public void setLimits(int threads, int queueLimit) {
+        threads = Math.max(1, threads);
+        // The core size may never exceed the maximum, so grow the maximum first and shrink it last
+        if (threads > pool.getMaximumPoolSize()) {
+            pool.setMaximumPoolSize(threads);
+            pool.setCorePoolSize(threads);
+        } else {
+            pool.setCorePoolSize(threads);
+            pool.setMaximumPoolSize(threads);
+        }
+        this.queueLimit = queueLimit;
+    }
+
+    /**
+     * Queues an authentication.
+     *
+     * @return false if too many are already waiting and the task was not
+     *     queued
+     */
+    public boolean submit(final Runnable task) {
+        if (queued.incrementAndGet() > queueLimit) {
+            queued.decrementAndGet();
+            rejected.incrementAndGet();
+            return false;
+        }
+
+        final long submitted = System.nanoTime();
+        pool.execute(new Runnable() {
+            public void run() {
+                long start = System.nanoTime();
+
+                queued.decrementAndGet();
+                queueWait.record(start - submitted);
+                try {
+                    task.run();
+                } finally {
+                    latency.record(System.nanoTime() - start);
+                    completed.incrementAndGet();
+                }
+            }
+        });
+        return true;
+    }
+
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    public int getThreads() {
+        return pool.getMaximumPoolSize();
+    }
+
+    public int getActiveThreads() {
+        return pool.getActiveCount();
+    }
+
+    public int getQueueLimit() {
+        return queueLimit;
+    }
+
+    /**
+     * @return authentications waiting for a thread
+     */
+    public int getQueued() {
+        return queued.get();
+    }
+
+    public long getCompleted() {
+        return completed.get();
+    }
+
+    /**
+     * @return authentications turned away because the queue was full
+     */
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    /**
+     * @return time between a login being queued and a thread picking it up
+     */
+    public LatencyHistogram getQueueWait() {
+        return queueWait;
+    }
+
+    /**
+     * @return time spent authenticating, including the pre-login events
+     */
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+}
@@ -0,0 +1,118 @@
+package org.bukkit.craftbukkit.util;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Objects bucketed by the chunk column they are in, to find what is near a
+ * point without looking at everything. Callers keep track of the cell each
+ * object was added under and move it themselves. An object can only be in
+ * one cell at a time.
+ */
+public class CellIndex<T> {
+    private final Long2ObjectOpenHashMap<List<T>> cells = new Long2ObjectOpenHashMap<List<T>>();
+    // Where each object is in the list of its cell, so removing it doesn't have to search the list
+    private final Object2IntOpenHashMap<T> slots = new Object2IntOpenHashMap<T>();
+
+    public CellIndex() {
+        slots.defaultReturnValue(-1);
+    }
+
+    /**
+     * @return the cell holding the block coordinates
+     */
+    public static long key(double x, double z) {
+        return LongHash.toLong(floor(x) >> 4, floor(z) >> 4);
+    }
+
+    public void add(T object, long key) {
+        List<T> cell = cells.get(key);
+
+        if (cell == null) {
+            cell = new ArrayList<T>(4);
+            cells.put(key, cell);
+        }
+        slots.put(object, cell.size());
+        cell.add(object);
+    }
+
+    public void remove(T object, long key) {
+        List<T> cell = cells.get(key);
+        int slot = slots.getInt(object);
+
+        if (cell == null || slot < 0 || slot >= cell.size() || !object.equals(cell.get(slot))) {
+            return;
+        }
+
+        // Fill the gap with the last object of the cell
+        T last = cell.remove(cell.size() - 1);
+        if (slot < cell.size()) {
+            cell.set(slot, last);
+            slots.put(last, slot);
+        }
+        slots.removeInt(object);
+        if (cell.isEmpty()) {
+            cells.remove(key);
+        }
+    }
+
+    public void move(T object, long from, long to) {
+        if (from != to) {
+            remove(object, from);
+            add(object, to);
+        }
+    }
+
+    public void clear() {
+        cells.clear();
+        slots.clear();
+    }
+
+    public int size() {
+        return slots.size();
+    }
+
+    /**
+     * Adds everything in the cells the square touches to the collection.
+     * Objects near the square but outside it may be included too, so
+     * callers still have to check the exact distance.
+     */
+    public void query(double minX, double minZ, double maxX, double maxZ, Collection<? super T> result) {
+        int minCellX = floor(minX) >> 4;
+        int minCellZ = floor(minZ) >> 4;
+        int maxCellX = floor(maxX) >> 4;
+        int maxCellZ = floor(maxZ) >> 4;
+
+        // A large square over a sparse index is cheaper to answer by going through what is there
+        if ((long) (maxCellX - minCellX + 1) * (long) (maxCellZ - minCellZ + 1) > cells.size()) {
+            for (Long2ObjectMap.Entry<List<T>> entry : cells.long2ObjectEntrySet()) {
+                int x = LongHash.msw(entry.getLongKey());
+                int z = LongHash.lsw(entry.getLongKey());
+
+                if (x >= minCellX && x <= maxCellX && z >= minCellZ && z <= maxCellZ) {
+                    result.addAll(entry.getValue());
+                }
+            }
+            return;
+        }
+
+        for (int x = minCellX; x <= maxCellX; x++) {
+            for (int z = minCellZ; z <= maxCellZ; z++) {
+                List<T> cell = cells.get(LongHash.toLong(x, z));
+
+                if (cell != null) {
+                    result.addAll(cell);
+                }
+            }
+        }
+    }
+
+    private static int floor(double value) {
+        int i = (int) value;
+        return value < i ? i - 1 : i;
+    }
+}
@@ -0,0 +1,104 @@
+package org.bukkit.craftbukkit.util;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.DataFormatException;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * zlib compression used for both packet compression and region files.
+ * <p>
+ * The backend is picked once, the first time it is needed. A native
+ * implementation can be put on the classpath and named with the
+ * {@value #PROPERTY} system property. It is only used if it loads and
+ * round trips a test payload with the Java backend, anything else falls back
+ * to the pure Java backend.
+ */
+public abstract class CompressionBackend {
+    public static final String PROPERTY = "craftbukkit.compression";
+    private static final Logger logger = LogManager.getLogger(CompressionBackend.class);
+
+    /**
+     * @return the backend in use
+     */
+    public static CompressionBackend get() {
+        return Holder.INSTANCE;
+    }
+
+    public abstract String getName();
+
+    /**
+     * Compresses the readable bytes of the source, which are consumed, and
+     * appends them to the destination as a zlib stream.
+     */
+    public abstract void deflate(ByteBuf source, ByteBuf destination);
+
+    /**
+     * Decompresses one zlib stream from the readable bytes of the source and
+     * appends it to the destination. Only the compressed bytes are consumed.
+     *
+     * @throws DataFormatException if the stream is corrupt, truncated or
+     *     would decompress to more than maxLength bytes
+     */
+    public abstract void inflate(ByteBuf source, ByteBuf destination, int maxLength) throws DataFormatException;
+
+    static CompressionBackend load(String name) {
+        if (name != null && !name.isEmpty() && !name.equalsIgnoreCase("java")) {
+            try {
+                CompressionBackend backend = Class.forName(name).asSubclass(CompressionBackend.class).newInstance();
+
+                if (roundTrips(backend)) {
+                    logger.info("Using " + backend.getName() + " compression");
+                    return backend;
+                }
+                logger.warn("Compression backend " + name + " gave wrong results, falling back to Java");
+            } catch (Throwable ex) {
+                // Missing classes and native libraries end up here too
+                logger.warn("Could not load compression backend " + name + ", falling back to Java: " + ex);
+            }
+        }
+
+        return new JavaCompressionBackend();
+    }
+
+    // Both directions against the Java backend, so a broken build of a native library can't corrupt worlds
+    private static boolean roundTrips(CompressionBackend backend) throws DataFormatException {
+        CompressionBackend java = new JavaCompressionBackend();
+        byte[] payload = new byte[65536];
+        Random random = new Random(0);
+
+        for (int i = 0; i < payload.length; i++) {
+            payload[i] = (byte) (i % 37 == 0 ? random.nextInt() : i >> 10);
+        }
+
+        for (int i = 0; i < 2; i++) {
+            CompressionBackend deflater = i == 0 ? backend : java;
+            CompressionBackend inflater = i == 0 ? java : backend;
+            ByteBuf compressed = Unpooled.directBuffer();
+            ByteBuf decompressed = Unpooled.buffer();
+
+            try {
+                deflater.deflate(Unpooled.wrappedBuffer(payload), compressed);
+                inflater.inflate(compressed, decompressed, payload.length);
+
+                byte[] abyte = new byte[decompressed.readableBytes()];
+                decompressed.readBytes(abyte);
+                if (!Arrays.equals(payload, abyte)) {
+                    return false;
+                }
+            } finally {
+                compressed.release();
+                decompressed.release();
+            }
+        }
+
+        return true;
+    }
+
+    private static class Holder {
+        private static final CompressionBackend INSTANCE = load(System.getProperty(PROPERTY));
+    }
+}
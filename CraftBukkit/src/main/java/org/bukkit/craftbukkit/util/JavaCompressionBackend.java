@@ -0,0 +1,145 @@
+package org.bukkit.craftbukkit.util;
+
+import io.netty.buffer.ByteBuf;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compression with {@link Deflater} and {@link Inflater}, one of each per
+ * thread and reused for every call. Heap buffers are handed to zlib as they
+ * are, direct buffers go through a small per thread scratch array.
+ */
+class JavaCompressionBackend extends CompressionBackend {
+    private static final int SCRATCH_SIZE = 8192;
+
+    private final ThreadLocal<Context> context = new ThreadLocal<Context>() {
+        @Override
+        protected Context initialValue() {
+            return new Context();
+        }
+    };
+
+    @Override
+    public String getName() {
+        return "Java";
+    }
+
+    @Override
+    public void deflate(ByteBuf source, ByteBuf destination) {
+        Context context = this.context.get();
+        Deflater deflater = context.deflater;
+        int index = source.readerIndex();
+
+        try {
+            while (index < source.writerIndex()) {
+                index = setInput(deflater, source, index, context.input);
+                while (!deflater.needsInput()) {
+                    deflate(deflater, destination, context.output);
+                }
+            }
+
+            deflater.finish();
+            while (!deflater.finished()) {
+                deflate(deflater, destination, context.output);
+            }
+            source.readerIndex(index);
+        } finally {
+            deflater.reset();
+        }
+    }
+
+    @Override
+    public void inflate(ByteBuf source, ByteBuf destination, int maxLength) throws DataFormatException {
+        Context context = this.context.get();
+        Inflater inflater = context.inflater;
+        int index = source.readerIndex();
+        int written = 0;
+
+        try {
+            while (!inflater.finished()) {
+                if (inflater.needsInput()) {
+                    if (index >= source.writerIndex()) {
+                        throw new DataFormatException("Truncated zlib stream");
+                    }
+                    index = setInput(inflater, source, index, context.input);
+                }
+                if (inflater.needsDictionary()) {
+                    throw new DataFormatException("zlib stream needs a preset dictionary");
+                }
+
+                if (written < maxLength) {
+                    written += inflate(inflater, destination, context.output, maxLength - written);
+                } else if (inflater.inflate(context.output, 0, 1) > 0) {
+                    // Only the stream trailer may be left once the limit is reached
+                    throw new DataFormatException("Decompressed data exceeds " + maxLength + " bytes");
+                }
+            }
+
+            source.readerIndex(index - inflater.getRemaining());
+        } finally {
+            inflater.reset();
+        }
+    }
+
+    private static int setInput(Deflater deflater, ByteBuf source, int index, byte[] scratch) {
+        int length = source.writerIndex() - index;
+
+        if (source.hasArray()) {
+            deflater.setInput(source.array(), source.arrayOffset() + index, length);
+        } else {
+            length = Math.min(length, scratch.length);
+            source.getBytes(index, scratch, 0, length);
+            deflater.setInput(scratch, 0, length);
+        }
+
+        return index + length;
+    }
+
+    private static int setInput(Inflater inflater, ByteBuf source, int index, byte[] scratch) {
+        int length = source.writerIndex() - index;
+
+        if (source.hasArray()) {
+            inflater.setInput(source.array(), source.arrayOffset() + index, length);
+        } else {
+            length = Math.min(length, scratch.length);
+            source.getBytes(index, scratch, 0, length);
+            inflater.setInput(scratch, 0, length);
+        }
+
+        return index + length;
+    }
+
+    private static void deflate(Deflater deflater, ByteBuf destination, byte[] scratch) {
+        if (destination.hasArray()) {
+            destination.ensureWritable(SCRATCH_SIZE);
+            int length = deflater.deflate(destination.array(), destination.arrayOffset() + destination.writerIndex(), destination.writableBytes());
+            destination.writerIndex(destination.writerIndex() + length);
+        } else {
+            int length = deflater.deflate(scratch);
+            destination.writeBytes(scratch, 0, length);
+        }
+    }
+
+    private static int inflate(Inflater inflater, ByteBuf destination, byte[] scratch, int limit) throws DataFormatException {
+        int length;
+
+        if (destination.hasArray()) {
+            destination.ensureWritable(Math.min(limit, SCRATCH_SIZE));
+            length = inflater.inflate(destination.array(), destination.arrayOffset() + destination.writerIndex(), Math.min(limit, destination.writableBytes()));
+            destination.writerIndex(destination.writerIndex() + length);
+        } else {
+            length = inflater.inflate(scratch, 0, Math.min(limit, scratch.length));
+            destination.writeBytes(scratch, 0, length);
+        }
+
+        return length;
+    }
+
+    private static class Context {
+        private final Deflater deflater = new Deflater();
+        private final Inflater inflater = new Inflater();
+        private final byte[] input = new byte[SCRATCH_SIZE];
+        private final byte[] output = new byte[SCRATCH_SIZE];
+    }
+}
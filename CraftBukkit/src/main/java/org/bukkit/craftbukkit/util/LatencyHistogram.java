@@ -0,0 +1,90 @@
+package org.bukkit.craftbukkit.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts durations into fixed millisecond buckets. Safe to record from any
+ * thread.
+ */
+public class LatencyHistogram {
+    // Upper bounds of the buckets in milliseconds, anything slower lands in one extra bucket
+    private static final long[] BOUNDS = { 1, 2, 5, 10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000 };
+
+    private final AtomicLongArray counts = new AtomicLongArray(BOUNDS.length + 1);
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong totalNanos = new AtomicLong();
+
+    public void record(long nanos) {
+        long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+        int i = 0;
+
+        while (i < BOUNDS.length && millis >= BOUNDS[i]) {
+            i++;
+        }
+
+        counts.incrementAndGet(i);
+        total.incrementAndGet();
+        totalNanos.addAndGet(nanos);
+    }
+
+    public long getCount() {
+        return total.get();
+    }
+
+    /**
+     * @return average duration in milliseconds
+     */
+    public double getMean() {
+        long count = total.get();
+        return count == 0 ? 0.0D : totalNanos.get() / (double) count / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    /**
+     * @param fraction between 0 and 1, for example 0.99
+     * @return upper bound in milliseconds of the bucket holding that
+     *     fraction of the recorded durations, or -1 if it is past the
+     *     largest bucket, or 0 if nothing was recorded
+     */
+    public long getPercentile(double fraction) {
+        long[] snapshot = getCounts();
+        long count = 0;
+
+        for (long bucket : snapshot) {
+            count += bucket;
+        }
+
+        if (count == 0) {
+            return 0;
+        }
+
+        long target = (long) Math.ceil(count * fraction);
+        for (int i = 0; i < BOUNDS.length; i++) {
+            target -= snapshot[i];
+            if (target <= 0) {
+                return BOUNDS[i];
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * @return the count of each bucket, one longer than
+     *     {@link #getBounds()} for the durations past the last bound
+     */
+    public long[] getCounts() {
+        long[] snapshot = new long[counts.length()];
+
+        for (int i = 0; i < snapshot.length; i++) {
+            snapshot[i] = counts.get(i);
+        }
+
+        return snapshot;
+    }
+
+    public static long[] getBounds() {
+        return BOUNDS.clone();
+    }
+}
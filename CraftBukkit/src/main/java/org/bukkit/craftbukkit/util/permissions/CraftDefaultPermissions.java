@@ -14,5 +14,8 @@ public final class CraftDefaultPermissions {
         CommandPermissions.registerPermissions(parent);
         DefaultPermissions.registerPermission(ROOT + ".autocraft", "Gives the user the ability to use autocraft functionality", PermissionDefault.OP, parent);
         parent.recalculatePermissibles();
+
+        DefaultPermissions.registerPermission("bukkit.command.netstats", "Allows the user to view packet and connection statistics", PermissionDefault.OP);
+        DefaultPermissions.registerPermission("bukkit.command.activation", "Allows the user to view how many entities are ticked in full", PermissionDefault.OP);
     }
 }
@@ -0,0 +1,44 @@
+package org.bukkit.craftbukkit;
+
+import static org.junit.Assert.*;
+
+import net.minecraft.server.Block;
+import net.minecraft.server.BlockPosition;
+import net.minecraft.server.Blocks;
+import net.minecraft.server.IBlockData;
+import org.bukkit.support.AbstractTestingBase;
+import org.junit.Test;
+
+public class BlockCollisionShapeTest extends AbstractTestingBase {
+
+    @Test
+    public void testShapesMatchStates() {
+        for (Object object : Block.REGISTRY) {
+            Block block = (Block) object;
+            int shape = block.getCollisionShape();
+            if (shape == Block.COLLISION_OTHER) {
+                continue;
+            }
+
+            // Neither shape may depend on the world, so there is none to pass
+            for (IBlockData iblockdata : block.s().a()) {
+                if (shape == Block.COLLISION_FULL) {
+                    assertSame(block + " is not a full cube", Block.j, iblockdata.d(null, BlockPosition.ZERO));
+                } else {
+                    assertNull(block + " has a collision box", iblockdata.d(null, BlockPosition.ZERO));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testCommonBlocks() {
+        assertEquals(Block.COLLISION_EMPTY, Blocks.AIR.getCollisionShape());
+        assertEquals(Block.COLLISION_EMPTY, Blocks.WATER.getCollisionShape());
+        assertEquals(Block.COLLISION_EMPTY, Blocks.TALLGRASS.getCollisionShape());
+        assertEquals(Block.COLLISION_FULL, Blocks.STONE.getCollisionShape());
+        assertEquals(Block.COLLISION_FULL, Blocks.DIRT.getCollisionShape());
+        assertEquals(Block.COLLISION_OTHER, Blocks.FENCE.getCollisionShape());
+        assertEquals(Block.COLLISION_OTHER, Blocks.STONE_SLAB.getCollisionShape());
+    }
+}
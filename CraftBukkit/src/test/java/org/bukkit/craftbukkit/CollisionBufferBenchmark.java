@@ -0,0 +1,77 @@
+package org.bukkit.craftbukkit;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import net.minecraft.server.AxisAlignedBB;
+import net.minecraft.server.CollisionBuffer;
+
+/**
+ * Measures the bytes allocated and the time taken by one collision query
+ * over a patch of mixed block shapes, answered into a new list of boxes as
+ * before and into a {@link CollisionBuffer}. Not part of the test run;
+ * start it from the test classpath:
+ * <pre>
+ * java -cp target/classes:target/test-classes:&lt;dependencies&gt; org.bukkit.craftbukkit.CollisionBufferBenchmark
+ * </pre>
+ */
+public class CollisionBufferBenchmark {
+    private static final int WARMUP = 200000;
+    private static final int ROUNDS = 100000;
+
+    public static void main(String[] args) {
+        Random random = new Random(2);
+        AxisAlignedBB[] entities = new AxisAlignedBB[256];
+        for (int i = 0; i < entities.length; i++) {
+            entities[i] = CollisionBufferTest.randomEntity(random);
+        }
+
+        final CollisionBuffer buffer = new CollisionBuffer();
+        Query list = new Query() {
+            public double run(AxisAlignedBB entity) {
+                List<AxisAlignedBB> boxes = new ArrayList<AxisAlignedBB>();
+                CollisionBufferTest.collectBlocks(entity.b(0.0D, -0.1D, 0.0D), boxes, null);
+                double d0 = -0.1D;
+                for (int i = 0; i < boxes.size(); i++) {
+                    d0 = boxes.get(i).b(entity, d0);
+                }
+                return d0;
+            }
+        };
+        Query buffered = new Query() {
+            public double run(AxisAlignedBB entity) {
+                buffer.clear();
+                CollisionBufferTest.collectBlocks(entity.b(0.0D, -0.1D, 0.0D), buffer, buffer);
+                return buffer.offsetY(entity, -0.1D);
+            }
+        };
+
+        report("List of boxes", list, entities);
+        report("CollisionBuffer", buffered, entities);
+        // The query box and block position the harness creates are counted in both
+    }
+
+    private interface Query {
+        double run(AxisAlignedBB entity);
+    }
+
+    private static void report(String name, Query query, AxisAlignedBB[] entities) {
+        double sink = 0;
+        for (int i = 0; i < WARMUP; i++) {
+            sink += query.run(entities[i & 255]);
+        }
+
+        com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long id = Thread.currentThread().getId();
+        long bytes = bean.getThreadAllocatedBytes(id);
+        long start = System.nanoTime();
+        for (int i = 0; i < ROUNDS; i++) {
+            sink += query.run(entities[i & 255]);
+        }
+        long elapsed = System.nanoTime() - start;
+        bytes = bean.getThreadAllocatedBytes(id) - bytes;
+
+        System.out.println(String.format("%s: %d bytes and %.0fns per query (%s)", name, bytes / ROUNDS, elapsed / (double) ROUNDS, Double.isNaN(sink) ? "NaN" : "ok"));
+    }
+}
@@ -0,0 +1,85 @@
+package org.bukkit.craftbukkit;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import net.minecraft.server.AxisAlignedBB;
+import net.minecraft.server.BlockPosition;
+import net.minecraft.server.CollisionBuffer;
+import org.junit.Test;
+
+public class CollisionBufferTest {
+    private static final AxisAlignedBB[] SHAPES = {
+        new AxisAlignedBB(0, 0, 0, 1, 1, 1),
+        new AxisAlignedBB(0, 0, 0, 1, 0.5, 1),
+        new AxisAlignedBB(0.375, 0, 0.375, 0.625, 1.5, 0.625),
+        new AxisAlignedBB(0, 0, 0, 1, 0.0625, 1)
+    };
+
+    @Test
+    public void testSameOffsetsAsBoxes() {
+        Random random = new Random(1);
+        CollisionBuffer buffer = new CollisionBuffer();
+
+        for (int i = 0; i < 2000; i++) {
+            AxisAlignedBB entity = randomEntity(random);
+            AxisAlignedBB query = entity.b(random.nextGaussian(), random.nextGaussian(), random.nextGaussian());
+            List<AxisAlignedBB> boxes = new ArrayList<AxisAlignedBB>();
+
+            collectBlocks(query, boxes, null);
+            buffer.clear();
+            collectBlocks(query, buffer, buffer);
+            assertEquals(boxes.size(), buffer.size());
+            for (int j = 0; j < boxes.size(); j++) {
+                assertEquals(boxes.get(j), buffer.get(j));
+            }
+
+            double d0 = random.nextGaussian();
+            double x = d0;
+            double y = d0;
+            double z = d0;
+            for (AxisAlignedBB box : boxes) {
+                x = box.a(entity, x);
+                y = box.b(entity, y);
+                z = box.c(entity, z);
+            }
+            assertEquals(x, buffer.offsetX(entity, d0), 0.0D);
+            assertEquals(y, buffer.offsetY(entity, d0), 0.0D);
+            assertEquals(z, buffer.offsetZ(entity, d0), 0.0D);
+        }
+    }
+
+    static AxisAlignedBB randomEntity(Random random) {
+        double x = random.nextDouble() * 8;
+        double y = 1 + random.nextDouble() * 2;
+        double z = random.nextDouble() * 8;
+        return new AxisAlignedBB(x, y, z, x + 0.6, y + 1.8, z + 0.6);
+    }
+
+    // A stairs-like floor of mixed shapes, added the way Block does
+    static void collectBlocks(AxisAlignedBB query, List<AxisAlignedBB> boxes, CollisionBuffer buffer) {
+        BlockPosition.MutableBlockPosition position = new BlockPosition.MutableBlockPosition();
+        for (int x = (int) Math.floor(query.a) - 1; x <= (int) Math.floor(query.d) + 1; x++) {
+            for (int z = (int) Math.floor(query.c) - 1; z <= (int) Math.floor(query.f) + 1; z++) {
+                for (int y = (int) Math.floor(query.b) - 1; y <= (int) Math.floor(query.e) + 1; y++) {
+                    if (y > ((x * 31 + z * 17) & 3) % 3) {
+                        continue;
+                    }
+
+                    AxisAlignedBB shape = SHAPES[(x ^ z ^ y) & 3];
+                    position.c(x, y, z);
+                    if (buffer != null) {
+                        buffer.addIntersecting(shape, position, query);
+                    } else {
+                        AxisAlignedBB box = shape.a(position);
+                        if (query.c(box)) {
+                            boxes.add(box);
+                        }
+                    }
+                }
+            }
+        }
+    }
+}
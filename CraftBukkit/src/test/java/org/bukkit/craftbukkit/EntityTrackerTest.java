@@ -0,0 +1,143 @@
+package org.bukkit.craftbukkit;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import net.minecraft.server.Entity;
+import net.minecraft.server.EntityItem;
+import net.minecraft.server.EntityTracker;
+import net.minecraft.server.EntityTrackerEntry;
+import net.minecraft.server.IntHashMap;
+import net.minecraft.server.World;
+import org.bukkit.craftbukkit.util.CellIndex;
+import org.bukkit.support.AbstractTestingBase;
+import org.junit.Test;
+
+public class EntityTrackerTest extends AbstractTestingBase {
+    // What the player list gives for a view distance of 10
+    private static final int VIEW_DISTANCE = 144;
+    // Ranges EntityTracker.track(Entity) hands out
+    private static final int[] RANGES = { 64, 80, 160, 250, 512 };
+
+    /**
+     * A player walking among the entries of its world, still tracked by
+     * entries of the world it came from. Every entry that would start or
+     * stop tracking the player when checked has to be a candidate, and no
+     * entry of the other world may be.
+     */
+    @Test
+    public void testCandidatesMatchFullScan() {
+        Random random = new Random(3);
+        CellIndex<EntityTrackerEntry> cells = new CellIndex<EntityTrackerEntry>();
+        IntHashMap<EntityTrackerEntry> entries = new IntHashMap<EntityTrackerEntry>();
+        List<EntityTrackerEntry> all = new ArrayList<EntityTrackerEntry>();
+        int maxRange = 0;
+
+        for (int i = 0; i < 500; i++) {
+            int range = RANGES[random.nextInt(RANGES.length)];
+            EntityTrackerEntry entry = entry(random.nextDouble() * 1600 - 800, random.nextDouble() * 1600 - 800, range);
+
+            entries.a(entry.b().getId(), entry);
+            entry.addToCell(cells);
+            all.add(entry);
+            maxRange = Math.max(maxRange, range);
+        }
+
+        Set<EntityTrackerEntry> trackedBy = new HashSet<EntityTrackerEntry>();
+        List<EntityTrackerEntry> otherWorld = new ArrayList<EntityTrackerEntry>();
+        for (int i = 0; i < 20; i++) {
+            EntityTrackerEntry entry = entry(random.nextDouble() * 64, random.nextDouble() * 64, 64);
+
+            otherWorld.add(entry);
+            trackedBy.add(entry);
+        }
+
+        Entity player = new EntityItem((World) null);
+        for (int step = 0; step < 300; step++) {
+            // Mostly walking, sometimes a teleport
+            double distance = step % 50 == 0 ? 600 : 24;
+            player.setPosition(clamp(player.locX + (random.nextDouble() * 2 - 1) * distance), 64, clamp(player.locZ + (random.nextDouble() * 2 - 1) * distance));
+
+            // Entities wander off, but entries stay where they were last sent until tracked again
+            all.get(random.nextInt(all.size())).b().setPosition(random.nextDouble() * 1600 - 800, 64, random.nextDouble() * 1600 - 800);
+
+            Set<EntityTrackerEntry> candidates = new HashSet<EntityTrackerEntry>(EntityTracker.getCandidates(player, trackedBy, cells, entries, maxRange, VIEW_DISTANCE));
+
+            for (EntityTrackerEntry entry : all) {
+                if (entry.isInRange(player.locX, player.locZ) != trackedBy.contains(entry)) {
+                    assertTrue("Step " + step + " missed entry " + entry.b().getId(), candidates.contains(entry));
+                }
+            }
+            for (EntityTrackerEntry entry : otherWorld) {
+                assertFalse("Step " + step + " picked an entry of another world", candidates.contains(entry));
+            }
+
+            // The part of updatePlayer() that decides what ends up in EntityPlayer.trackedBy
+            for (EntityTrackerEntry entry : candidates) {
+                if (entry.isInRange(player.locX, player.locZ)) {
+                    trackedBy.add(entry);
+                } else {
+                    trackedBy.remove(entry);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testCellFollowsLastSentPosition() {
+        CellIndex<EntityTrackerEntry> cells = new CellIndex<EntityTrackerEntry>();
+        IntHashMap<EntityTrackerEntry> entries = new IntHashMap<EntityTrackerEntry>();
+        EntityTrackerEntry entry = entry(0, 0, 64);
+        Entity player = new EntityItem((World) null);
+
+        entries.a(entry.b().getId(), entry);
+        entry.addToCell(cells);
+
+        // Players are measured against the position sent to them, not where the entity is now
+        entry.b().setPosition(1000, 64, 1000);
+        entry.updateCell(cells);
+        player.setPosition(10, 64, 10);
+        assertTrue(entry.isInRange(player.locX, player.locZ));
+        assertTrue(EntityTracker.getCandidates(player, new HashSet<EntityTrackerEntry>(), cells, entries, 64, VIEW_DISTANCE).contains(entry));
+
+        player.setPosition(1000, 64, 1000);
+        assertFalse(entry.isInRange(player.locX, player.locZ));
+        assertFalse(EntityTracker.getCandidates(player, new HashSet<EntityTrackerEntry>(), cells, entries, 64, VIEW_DISTANCE).contains(entry));
+
+        entry.removeFromCell(cells);
+        assertEquals(0, cells.size());
+    }
+
+    @Test
+    public void testRangeClampedToViewDistance() {
+        CellIndex<EntityTrackerEntry> cells = new CellIndex<EntityTrackerEntry>();
+        IntHashMap<EntityTrackerEntry> entries = new IntHashMap<EntityTrackerEntry>();
+        EntityTrackerEntry near = entry(VIEW_DISTANCE - 4, 0, 512);
+        EntityTrackerEntry far = entry(VIEW_DISTANCE + 40, 0, 512);
+        Entity player = new EntityItem((World) null);
+
+        for (EntityTrackerEntry entry : new EntityTrackerEntry[] { near, far }) {
+            entries.a(entry.b().getId(), entry);
+            entry.addToCell(cells);
+        }
+
+        assertTrue(near.isInRange(player.locX, player.locZ));
+        assertFalse(far.isInRange(player.locX, player.locZ));
+        assertTrue(EntityTracker.getCandidates(player, new HashSet<EntityTrackerEntry>(), cells, entries, 512, VIEW_DISTANCE).contains(near));
+    }
+
+    private static EntityTrackerEntry entry(double x, double z, int range) {
+        Entity entity = new EntityItem((World) null);
+
+        entity.setPosition(x, 64, z);
+        return new EntityTrackerEntry(entity, range, VIEW_DISTANCE, 20, true);
+    }
+
+    private static double clamp(double value) {
+        return Math.max(-1000, Math.min(1000, value));
+    }
+}
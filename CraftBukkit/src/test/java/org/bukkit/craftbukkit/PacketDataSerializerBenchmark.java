@@ -0,0 +1,120 @@
+package org.bukkit.craftbukkit;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import java.nio.charset.StandardCharsets;
+import net.minecraft.server.PacketDataSerializer;
+
+/**
+ * Reports the time per call of the VarInt and string codecs against the
+ * encodings they replaced, a byte per seven bits and a String.getBytes
+ * copy, on a direct buffer like the ones the packet encoder writes to.
+ * Not part of the test run; start it from the test classpath:
+ * <pre>
+ * java -cp target/classes:target/test-classes:&lt;dependencies&gt; org.bukkit.craftbukkit.PacketDataSerializerBenchmark
+ * </pre>
+ */
+public class PacketDataSerializerBenchmark {
+    private static final int CALLS = 1000000;
+    private static final int ROUNDS = 5;
+    private static final String CHAT = "{\"text\":\"Hello there, this is a perfectly ordinary chat message\"}";
+    // Keeps the results alive so the loops are not optimized away
+    static volatile long sink;
+
+    public static void main(String[] args) {
+        final PacketDataSerializer serializer = new PacketDataSerializer(Unpooled.directBuffer(1 << 16));
+
+        Codec[] codecs = {
+            new Codec("VarInt, byte at a time") {
+                long run(int i) {
+                    serializer.clear();
+                    writeVarIntBytewise(serializer, i);
+                    return readVarIntBytewise(serializer);
+                }
+            },
+            new Codec("VarInt") {
+                long run(int i) {
+                    serializer.clear();
+                    serializer.d(i);
+                    return serializer.g();
+                }
+            },
+            new Codec("String, through getBytes") {
+                long run(int i) {
+                    serializer.clear();
+                    byte[] abyte = CHAT.getBytes(StandardCharsets.UTF_8);
+                    writeVarIntBytewise(serializer, abyte.length);
+                    serializer.writeBytes(abyte);
+                    byte[] abyte1 = new byte[readVarIntBytewise(serializer)];
+                    serializer.readBytes(abyte1);
+                    return new String(abyte1, StandardCharsets.UTF_8).length();
+                }
+            },
+            new Codec("String") {
+                long run(int i) {
+                    serializer.clear();
+                    serializer.a(CHAT);
+                    return serializer.e(32767).length();
+                }
+            }
+        };
+
+        for (int round = 0; round < ROUNDS; round++) {
+            StringBuilder line = new StringBuilder();
+
+            for (Codec codec : codecs) {
+                long j = 0;
+                long start = System.nanoTime();
+                for (int i = 0; i < CALLS; i++) {
+                    // Sizes from one to five bytes
+                    j += codec.run(i << (i & 3) * 7);
+                }
+                long elapsed = System.nanoTime() - start;
+
+                sink = j;
+                line.append(String.format("%s: %.1fns  ", codec.name, elapsed / (double) CALLS));
+            }
+
+            // The first rounds are warm up
+            if (round >= 2) {
+                System.out.println(line.toString().trim());
+            }
+        }
+    }
+
+    private abstract static class Codec {
+        final String name;
+
+        Codec(String name) {
+            this.name = name;
+        }
+
+        abstract long run(int i);
+    }
+
+    // The encodings used before the fast paths
+    private static void writeVarIntBytewise(ByteBuf buffer, int i) {
+        while ((i & -128) != 0) {
+            buffer.writeByte(i & 127 | 128);
+            i >>>= 7;
+        }
+
+        buffer.writeByte(i);
+    }
+
+    private static int readVarIntBytewise(ByteBuf buffer) {
+        int i = 0;
+        int j = 0;
+
+        byte b0;
+        do {
+            b0 = buffer.readByte();
+            i |= (b0 & 127) << j++ * 7;
+            if (j > 5) {
+                throw new RuntimeException("VarInt too big");
+            }
+        } while ((b0 & 128) == 128);
+
+        return i;
+    }
+}
@@ -0,0 +1,107 @@
+package org.bukkit.craftbukkit;
+
+import static org.junit.Assert.*;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import net.minecraft.server.PacketDataSerializer;
+import org.junit.Test;
+
+public class PacketDataSerializerTest {
+    private static final int[] VARINT_EDGES = { 0, 1, 127, 128, 16383, 16384, 2097151, 2097152, 268435455, 268435456, Integer.MAX_VALUE, -1, Integer.MIN_VALUE };
+    private static final char[] CHARS = { 'a', 'Z', '0', ' ', '\u00e9', '\u07ff', '\u0800', '\u4e2d', '\uffff', '\ud83d', '\ude00' };
+
+    @Test
+    public void testVarInt() {
+        Random random = new Random(1);
+
+        for (int i = 0; i < VARINT_EDGES.length + 10000; i++) {
+            int value = i < VARINT_EDGES.length ? VARINT_EDGES[i] : random.nextInt() >>> random.nextInt(32);
+
+            for (ByteBuf buffer : buffers()) {
+                PacketDataSerializer serializer = new PacketDataSerializer(buffer);
+
+                serializer.d(value);
+                assertArrayEquals("VarInt " + value, referenceVarInt(value), bytes(buffer));
+                assertEquals(PacketDataSerializer.a(value), buffer.readableBytes());
+                // Followed by more data, as inside a packet, so the whole VarInt can be read at once
+                buffer.writeInt(0x7F7F7F7F);
+                assertEquals(value, serializer.g());
+                assertEquals(0x7F7F7F7F, buffer.readInt());
+            }
+        }
+    }
+
+    @Test
+    public void testVarIntAtEndOfBuffer() {
+        // Fewer than five bytes left, so the byte at a time path is taken
+        PacketDataSerializer serializer = new PacketDataSerializer(Unpooled.buffer());
+
+        serializer.d(300);
+        assertEquals(300, serializer.g());
+    }
+
+    @Test
+    public void testStrings() {
+        Random random = new Random(2);
+
+        for (int i = 0; i < 10000; i++) {
+            StringBuilder builder = new StringBuilder();
+            int length = random.nextInt(40);
+
+            for (int j = 0; j < length; j++) {
+                builder.append(CHARS[random.nextInt(CHARS.length)]);
+            }
+
+            String string = builder.toString();
+            byte[] expected = string.getBytes(StandardCharsets.UTF_8);
+
+            for (ByteBuf buffer : buffers()) {
+                PacketDataSerializer serializer = new PacketDataSerializer(buffer);
+
+                serializer.a(string);
+                assertEquals(expected.length, serializer.g());
+                assertArrayEquals(string, expected, bytes(buffer.slice()));
+                buffer.readerIndex(0);
+                // Unpaired surrogates do not survive the round trip, the same as before
+                assertEquals(new String(expected, StandardCharsets.UTF_8), serializer.e(32767));
+            }
+        }
+    }
+
+    @Test
+    public void testLongStringFromDirectBuffer() {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 10000; i++) {
+            builder.append('\u4e2d');
+        }
+
+        PacketDataSerializer serializer = new PacketDataSerializer(Unpooled.directBuffer());
+        serializer.a(builder.toString());
+        assertEquals(builder.toString(), serializer.e(32767));
+    }
+
+    private static ByteBuf[] buffers() {
+        return new ByteBuf[] { Unpooled.buffer(), Unpooled.directBuffer() };
+    }
+
+    private static byte[] bytes(ByteBuf buffer) {
+        byte[] bytes = new byte[buffer.readableBytes()];
+        buffer.getBytes(buffer.readerIndex(), bytes);
+        return bytes;
+    }
+
+    private static byte[] referenceVarInt(int value) {
+        ByteBuf buffer = Unpooled.buffer();
+
+        while ((value & -128) != 0) {
+            buffer.writeByte(value & 127 | 128);
+            value >>>= 7;
+        }
+        buffer.writeByte(value);
+
+        return bytes(buffer);
+    }
+}
@@ -0,0 +1,65 @@
+package org.bukkit.craftbukkit;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.embedded.EmbeddedChannel;
+import java.util.ArrayList;
+import java.util.List;
+import net.minecraft.server.Packet;
+import net.minecraft.server.SharedPacket;
+import org.bukkit.support.AbstractTestingBase;
+
+/**
+ * Reports how long broadcasting entity movement to a crowd of viewers
+ * takes when every viewer encodes and compresses the packet itself, and
+ * when they share one {@link SharedPacket}. Not part of the test run;
+ * start it from the test classpath:
+ * <pre>
+ * java -cp target/classes:target/test-classes:&lt;dependencies&gt; org.bukkit.craftbukkit.SharedPacketBenchmark
+ * </pre>
+ */
+public class SharedPacketBenchmark {
+    private static final int VIEWERS = 200;
+    private static final int BROADCASTS = 500;
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) {
+        AbstractTestingBase.setup();
+
+        List<EmbeddedChannel> channels = new ArrayList<EmbeddedChannel>();
+        for (int i = 0; i < VIEWERS; i++) {
+            channels.add(SharedPacketTest.channel(256));
+        }
+
+        // Warm up both paths before timing them
+        broadcast(channels, false);
+        broadcast(channels, true);
+
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            broadcast(channels, false);
+            long separate = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            broadcast(channels, true);
+            long shared = System.nanoTime() - start;
+
+            System.out.println(String.format("Broadcast %d packets to %d viewers: %.1fms encoded per viewer, %.1fms shared",
+                    BROADCASTS, VIEWERS, separate / 1.0E6D, shared / 1.0E6D));
+        }
+    }
+
+    private static void broadcast(List<EmbeddedChannel> channels, boolean share) {
+        for (int i = 0; i < BROADCASTS; i++) {
+            Packet<?> packet = SharedPacketTest.move(i);
+            Object message = share ? new SharedPacket(packet) : packet;
+
+            for (EmbeddedChannel channel : channels) {
+                channel.writeOutbound(message);
+                ByteBuf bytebuf;
+                while ((bytebuf = (ByteBuf) channel.readOutbound()) != null) {
+                    bytebuf.release();
+                }
+            }
+        }
+    }
+}
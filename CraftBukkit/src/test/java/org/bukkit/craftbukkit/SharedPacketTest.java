@@ -0,0 +1,101 @@
+package org.bukkit.craftbukkit;
+
+import static org.junit.Assert.*;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.embedded.EmbeddedChannel;
+import java.util.Arrays;
+import net.minecraft.server.ChatComponentText;
+import net.minecraft.server.EnumProtocol;
+import net.minecraft.server.EnumProtocolDirection;
+import net.minecraft.server.NetworkManager;
+import net.minecraft.server.Packet;
+import net.minecraft.server.PacketCompressor;
+import net.minecraft.server.PacketEncoder;
+import net.minecraft.server.PacketPlayOutChat;
+import net.minecraft.server.PacketPlayOutEntity;
+import net.minecraft.server.PacketPrepender;
+import net.minecraft.server.SharedPacket;
+import org.bukkit.support.AbstractTestingBase;
+import org.junit.Test;
+
+public class SharedPacketTest extends AbstractTestingBase {
+
+    @Test
+    public void testUncompressed() {
+        assertSameBytes(move(1), -1);
+        assertSameBytes(chat(2000), -1);
+    }
+
+    @Test
+    public void testBelowThreshold() {
+        assertSameBytes(move(1), 256);
+    }
+
+    @Test
+    public void testCompressed() {
+        assertSameBytes(chat(2000), 256);
+    }
+
+    @Test
+    public void testThresholdChange() {
+        SharedPacket shared = new SharedPacket(chat(2000));
+
+        assertArrayEquals(write(channel(256), chat(2000)), write(channel(256), shared));
+        assertArrayEquals(write(channel(64), chat(2000)), write(channel(64), shared));
+        assertArrayEquals(write(channel(-1), chat(2000)), write(channel(-1), shared));
+    }
+
+    private static void assertSameBytes(Packet<?> packet, int threshold) {
+        SharedPacket shared = new SharedPacket(packet);
+        byte[] expected = write(channel(threshold), packet);
+
+        // Every viewer must get the full packet, not whatever the previous one left unread
+        for (int i = 0; i < 3; i++) {
+            assertArrayEquals(expected, write(channel(threshold), shared));
+        }
+    }
+
+    // Same handlers, in the same order, as a server connection
+    static EmbeddedChannel channel(int threshold) {
+        EmbeddedChannel channel = new EmbeddedChannel();
+
+        channel.attr(NetworkManager.c).set(EnumProtocol.PLAY);
+        channel.pipeline().addLast("prepender", new PacketPrepender());
+        channel.pipeline().addLast("shared_packet", SharedPacket.ENCODER);
+        if (threshold >= 0) {
+            channel.pipeline().addLast("compress", new PacketCompressor(threshold));
+        }
+        channel.pipeline().addLast("encoder", new PacketEncoder(EnumProtocolDirection.CLIENTBOUND));
+        return channel;
+    }
+
+    private static byte[] write(EmbeddedChannel channel, Object message) {
+        assertTrue(channel.writeOutbound(message));
+
+        byte[] bytes = new byte[0];
+        ByteBuf bytebuf;
+        while ((bytebuf = (ByteBuf) channel.readOutbound()) != null) {
+            int length = bytes.length;
+
+            bytes = Arrays.copyOf(bytes, length + bytebuf.readableBytes());
+            bytebuf.readBytes(bytes, length, bytebuf.readableBytes());
+            bytebuf.release();
+        }
+
+        return bytes;
+    }
+
+    static Packet<?> move(int i) {
+        return new PacketPlayOutEntity.PacketPlayOutRelEntityMoveLook(42, i, -i, i * 2, (byte) i, (byte) -i, true);
+    }
+
+    private static Packet<?> chat(int length) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            builder.append((char) ('a' + i % 26));
+        }
+
+        return new PacketPlayOutChat(new ChatComponentText(builder.toString()));
+    }
+}
@@ -0,0 +1,126 @@
+package org.bukkit.craftbukkit.chunkio;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import net.minecraft.server.Block;
+import net.minecraft.server.Blocks;
+import net.minecraft.server.ChunkRegionLoader;
+import net.minecraft.server.ChunkSection;
+import net.minecraft.server.IBlockData;
+import net.minecraft.server.NBTCompressedStreamTools;
+import net.minecraft.server.NBTTagCompound;
+import org.bukkit.support.AbstractTestingBase;
+import org.junit.Test;
+
+public class ChunkSectionSnapshotTest extends AbstractTestingBase {
+
+    @Test
+    public void testLinearPalette() throws IOException {
+        assertSerializedEqual(8, true);
+    }
+
+    @Test
+    public void testHashPalette() throws IOException {
+        assertSerializedEqual(100, true);
+    }
+
+    @Test
+    public void testGlobalPalette() throws IOException {
+        assertSerializedEqual(1000, true);
+    }
+
+    @Test
+    public void testNoSkyLight() throws IOException {
+        assertSerializedEqual(100, false);
+    }
+
+    @Test
+    public void testSnapshotIsDetached() throws IOException {
+        ChunkSection[] sections = createSections(new Random(1), 100, true);
+        ChunkSection[] snapshots = snapshot(sections);
+        byte[] expected = serialize(sections, true);
+
+        // Keep mutating the live sections, the snapshot must not see any of it
+        Random random = new Random(2);
+        for (ChunkSection section : sections) {
+            if (section != null) {
+                for (int i = 0; i < 512; i++) {
+                    section.setType(random.nextInt(16), random.nextInt(16), random.nextInt(16), Blocks.GOLD_BLOCK.getBlockData());
+                    section.a(random.nextInt(16), random.nextInt(16), random.nextInt(16), 15);
+                    section.b(random.nextInt(16), random.nextInt(16), random.nextInt(16), 15);
+                }
+            }
+        }
+
+        assertArrayEquals(expected, serialize(snapshots, true));
+    }
+
+    private static void assertSerializedEqual(int types, boolean skylight) throws IOException {
+        ChunkSection[] sections = createSections(new Random(types), types, skylight);
+
+        assertArrayEquals("Snapshot serialized differently with " + types + " block types", serialize(sections, skylight), serialize(snapshot(sections), skylight));
+    }
+
+    private static ChunkSection[] snapshot(ChunkSection[] sections) {
+        ChunkSection[] snapshots = new ChunkSection[sections.length];
+
+        for (int i = 0; i < sections.length; i++) {
+            if (sections[i] != null) {
+                snapshots[i] = sections[i].snapshot();
+            }
+        }
+
+        return snapshots;
+    }
+
+    private static ChunkSection[] createSections(Random random, int types, boolean skylight) {
+        List<IBlockData> states = new ArrayList<IBlockData>();
+        Iterator iterator = Block.REGISTRY_ID.iterator();
+
+        while (iterator.hasNext()) {
+            states.add((IBlockData) iterator.next());
+        }
+
+        ChunkSection[] sections = new ChunkSection[16];
+        // Leave some sections empty like a real chunk
+        for (int y = 0; y < 12; y++) {
+            ChunkSection section = new ChunkSection(y << 4, skylight);
+
+            for (int x = 0; x < 16; x++) {
+                for (int sy = 0; sy < 16; sy++) {
+                    for (int z = 0; z < 16; z++) {
+                        section.setType(x, sy, z, states.get(random.nextInt(Math.min(types, states.size()))));
+                        section.b(x, sy, z, random.nextInt(16));
+                        if (skylight) {
+                            section.a(x, sy, z, random.nextInt(16));
+                        }
+                    }
+                }
+            }
+
+            sections[y] = section;
+        }
+
+        return sections;
+    }
+
+    private static byte[] serialize(ChunkSection[] sections, boolean skylight) throws IOException {
+        NBTTagCompound compound = new NBTTagCompound();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+
+        compound.set("Sections", ChunkRegionLoader.saveSections(sections, skylight));
+        NBTCompressedStreamTools.a(compound, (DataOutput) out);
+        out.close();
+
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,124 @@
+package org.bukkit.craftbukkit.chunkio;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import net.minecraft.server.RegionFile;
+
+/**
+ * Reports chunk reads per second from one region file with several reader
+ * threads while a writer keeps relocating chunks, once with the lock-free
+ * reads and once with every read holding the region's monitor, as reads
+ * did before. Not part of the test run; start it from the test classpath,
+ * optionally with the number of readers:
+ * <pre>
+ * java -cp target/classes:target/test-classes:&lt;dependencies&gt; org.bukkit.craftbukkit.chunkio.RegionFileBenchmark [readers]
+ * </pre>
+ */
+public class RegionFileBenchmark {
+    private static final int PASSES = 8;
+
+    public static void main(String[] args) throws Exception {
+        int readers = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        File file = File.createTempFile("r.0.0", ".mca");
+        file.delete();
+        RegionFile region = new RegionFile(file);
+
+        try {
+            for (int x = 0; x < 32; x++) {
+                for (int z = 0; z < 32; z++) {
+                    RegionFileTest.writeChunk(region, x, z, 0);
+                }
+            }
+
+            // Warm up both paths before measuring them
+            run(region, readers, false);
+            run(region, readers, true);
+            System.out.println(String.format("%d readers, synchronized: %.0f reads/s", readers, run(region, readers, true)));
+            System.out.println(String.format("%d readers, lock-free: %.0f reads/s", readers, run(region, readers, false)));
+        } finally {
+            region.c();
+            file.delete();
+        }
+    }
+
+    private static double run(final RegionFile region, int readers, final boolean monitor) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(readers + 1);
+        final AtomicBoolean running = new AtomicBoolean(true);
+
+        try {
+            Future<?> writer = executor.submit(new Callable<Void>() {
+                public Void call() throws IOException {
+                    Random random = new Random(0);
+                    int writes = 0;
+
+                    while (running.get()) {
+                        int x = random.nextInt(32);
+                        int z = random.nextInt(32);
+
+                        if (monitor) {
+                            synchronized (region) {
+                                RegionFileTest.writeChunk(region, x, z, ++writes);
+                            }
+                        } else {
+                            RegionFileTest.writeChunk(region, x, z, ++writes);
+                        }
+                    }
+
+                    return null;
+                }
+            });
+
+            List<Future<?>> futures = new ArrayList<Future<?>>();
+            long start = System.nanoTime();
+
+            for (int i = 0; i < readers; i++) {
+                futures.add(executor.submit(new Callable<Void>() {
+                    public Void call() throws IOException {
+                        for (int pass = 0; pass < PASSES; pass++) {
+                            for (int x = 0; x < 32; x++) {
+                                for (int z = 0; z < 32; z++) {
+                                    int version;
+
+                                    if (monitor) {
+                                        synchronized (region) {
+                                            version = RegionFileTest.readChunk(region, x, z);
+                                        }
+                                    } else {
+                                        version = RegionFileTest.readChunk(region, x, z);
+                                    }
+
+                                    if (version < 0) {
+                                        throw new IllegalStateException("Chunk " + x + "," + z + " was torn");
+                                    }
+                                }
+                            }
+                        }
+
+                        return null;
+                    }
+                }));
+            }
+
+            for (Future<?> future : futures) {
+                future.get();
+            }
+
+            long elapsed = System.nanoTime() - start;
+            running.set(false);
+            writer.get();
+
+            return readers * PASSES * 1024 / (elapsed / 1.0E9D);
+        } finally {
+            running.set(false);
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package org.bukkit.craftbukkit.chunkio;
+
+import static org.junit.Assert.*;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import net.minecraft.server.RegionFile;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class RegionFileTest {
+    private static final int READERS = 8;
+    private static final int PASSES = 4;
+
+    private File file;
+    private RegionFile region;
+
+    @Before
+    public void createRegion() throws IOException {
+        file = File.createTempFile("r.0.0", ".mca");
+        file.delete();
+        region = new RegionFile(file);
+
+        for (int x = 0; x < 32; x++) {
+            for (int z = 0; z < 32; z++) {
+                writeChunk(region, x, z, 0);
+            }
+        }
+    }
+
+    @After
+    public void deleteRegion() throws IOException {
+        region.c();
+        file.delete();
+    }
+
+    @Test
+    public void testReadAll() throws IOException {
+        for (int x = 0; x < 32; x++) {
+            for (int z = 0; z < 32; z++) {
+                assertTrue("Chunk " + x + "," + z + " should exist", region.c(x, z));
+                assertTrue("Chunk " + x + "," + z + " did not match", readChunk(region, x, z) >= 0);
+            }
+        }
+
+        assertNull(region.a(32, 0));
+    }
+
+    @Test
+    public void testReopen() throws IOException {
+        region.c();
+        region = new RegionFile(file);
+
+        for (int x = 0; x < 32; x++) {
+            for (int z = 0; z < 32; z++) {
+                assertEquals(0, readChunk(region, x, z));
+            }
+        }
+    }
+
+    @Test
+    public void testConcurrentReads() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(READERS + 1);
+        final AtomicBoolean running = new AtomicBoolean(true);
+
+        try {
+            // Keep relocating chunks while the readers run so the optimistic path gets invalidated
+            Future<Integer> writer = executor.submit(new Callable<Integer>() {
+                public Integer call() throws IOException {
+                    Random random = new Random(0);
+                    int writes = 0;
+
+                    while (running.get()) {
+                        writeChunk(region, random.nextInt(32), random.nextInt(32), ++writes);
+                    }
+
+                    return writes;
+                }
+            });
+
+            List<Future<?>> readers = new ArrayList<Future<?>>();
+
+            for (int i = 0; i < READERS; i++) {
+                readers.add(executor.submit(new Callable<Void>() {
+                    public Void call() throws IOException {
+                        for (int pass = 0; pass < PASSES; pass++) {
+                            for (int x = 0; x < 32; x++) {
+                                for (int z = 0; z < 32; z++) {
+                                    assertTrue("Chunk " + x + "," + z + " was torn", readChunk(region, x, z) >= 0);
+                                }
+                            }
+                        }
+
+                        return null;
+                    }
+                }));
+            }
+
+            for (Future<?> reader : readers) {
+                reader.get();
+            }
+
+            running.set(false);
+            writer.get();
+        } finally {
+            running.set(false);
+            executor.shutdown();
+        }
+    }
+
+    static int payloadSize(int x, int z) {
+        // Roughly the spread of compressed chunk sizes in a survival world, 1 to 3 sectors
+        return 1024 + ((x * 31 + z * 17) & 7) * 1024;
+    }
+
+    static void writeChunk(RegionFile region, int x, int z, int version) throws IOException {
+        DataOutputStream out = region.b(x, z);
+        Random random = new Random(version * 1024 + x * 32 + z);
+        byte[] payload = new byte[payloadSize(x, z)];
+
+        random.nextBytes(payload);
+        out.writeInt(x);
+        out.writeInt(z);
+        out.writeInt(version);
+        out.write(payload);
+        out.close();
+    }
+
+    /**
+     * Returns the version of the chunk read, or -1 if the data is corrupt.
+     */
+    static int readChunk(RegionFile region, int x, int z) throws IOException {
+        DataInputStream in = region.a(x, z);
+
+        if (in == null) {
+            return -1;
+        }
+
+        try {
+            if (in.readInt() != x || in.readInt() != z) {
+                return -1;
+            }
+
+            int version = in.readInt();
+            Random random = new Random(version * 1024 + x * 32 + z);
+            byte[] expected = new byte[payloadSize(x, z)];
+            byte[] actual = new byte[expected.length];
+
+            random.nextBytes(expected);
+            in.readFully(actual);
+
+            return Arrays.equals(expected, actual) ? version : -1;
+        } finally {
+            in.close();
+        }
+    }
+}
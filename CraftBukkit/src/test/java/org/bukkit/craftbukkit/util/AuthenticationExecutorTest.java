@@ -0,0 +1,259 @@
+package org.bukkit.craftbukkit.util;
+
+import static org.junit.Assert.*;
+
+import com.mojang.authlib.GameProfile;
+import com.mojang.authlib.exceptions.AuthenticationUnavailableException;
+import com.mojang.authlib.minecraft.MinecraftProfileTexture;
+import com.mojang.authlib.minecraft.MinecraftSessionService;
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.security.KeyPair;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import net.minecraft.server.LoginListener;
+import net.minecraft.server.MinecraftEncryption;
+import org.junit.Test;
+
+public class AuthenticationExecutorTest {
+    private static final KeyPair SERVER_KEYS = MinecraftEncryption.b();
+    private static final SecretKey LOGIN_KEY = new SecretKeySpec(new byte[] { 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16 }, "AES");
+
+    @Test
+    public void testBoundedThreads() throws InterruptedException {
+        StandInSessionService sessions = new StandInSessionService(20);
+        AuthenticationExecutor executor = new AuthenticationExecutor(4, 1000);
+        CountDownLatch done = new CountDownLatch(100);
+
+        for (int i = 0; i < 100; i++) {
+            assertTrue(executor.submit(login(sessions, "Player" + i, done, null)));
+        }
+
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+        assertEquals(100, sessions.joined.size());
+        assertTrue("Used " + sessions.maxConcurrent.get() + " threads", sessions.maxConcurrent.get() <= 4);
+        executor.shutdown();
+    }
+
+    @Test
+    public void testQueueLimit() throws InterruptedException {
+        StandInSessionService sessions = new StandInSessionService(0);
+        AuthenticationExecutor executor = new AuthenticationExecutor(1, 5);
+        final CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(5);
+
+        // Hold the only thread so everything after it has to queue
+        executor.submit(new Runnable() {
+            public void run() {
+                try {
+                    blocked.await();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        waitUntil(executor, 0);
+
+        for (int i = 0; i < 5; i++) {
+            assertTrue(executor.submit(login(sessions, "Queued" + i, done, null)));
+        }
+        assertFalse(executor.submit(login(sessions, "Rejected", done, null)));
+        assertEquals(1, executor.getRejected());
+        assertEquals(5, executor.getQueued());
+
+        blocked.countDown();
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+        assertFalse(sessions.joined.contains("Rejected"));
+        executor.shutdown();
+    }
+
+    @Test
+    public void testArrivalOrder() throws InterruptedException {
+        StandInSessionService sessions = new StandInSessionService(0);
+        AuthenticationExecutor executor = new AuthenticationExecutor(1, 1000);
+        List<String> order = Collections.synchronizedList(new ArrayList<String>());
+        CountDownLatch done = new CountDownLatch(50);
+        List<String> expected = new ArrayList<String>();
+
+        for (int i = 0; i < 50; i++) {
+            expected.add("Player" + i + " verified " + UUID.nameUUIDFromBytes(("Player" + i).getBytes()));
+            executor.submit(login(sessions, "Player" + i, done, order));
+        }
+
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+        assertEquals(expected, order);
+        executor.shutdown();
+    }
+
+    @Test
+    public void testHistograms() throws InterruptedException {
+        StandInSessionService sessions = new StandInSessionService(30);
+        AuthenticationExecutor executor = new AuthenticationExecutor(2, 1000);
+        CountDownLatch done = new CountDownLatch(10);
+
+        for (int i = 0; i < 10; i++) {
+            executor.submit(login(sessions, "Player" + i, done, null));
+        }
+
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+        // The last task records its latency right after counting down
+        while (executor.getCompleted() < 10) {
+            Thread.sleep(1);
+        }
+
+        assertEquals(10, executor.getQueueWait().getCount());
+        assertEquals(10, executor.getLatency().getCount());
+        assertTrue(executor.getLatency().getPercentile(0.5) >= 25);
+        // Two threads for ten logins, the later ones must have waited
+        assertTrue(executor.getQueueWait().getPercentile(1.0) >= 50);
+        executor.shutdown();
+    }
+
+    @Test
+    public void testOutcomes() throws Exception {
+        StandInSessionService sessions = new StandInSessionService(0);
+        AuthenticationExecutor executor = new AuthenticationExecutor(2, 1000);
+        String[] names = { "Player", "Unverified", "Unavailable", "Broken", "Kicked" };
+        CountDownLatch done = new CountDownLatch(names.length);
+        List<String> outcomes = Collections.synchronizedList(new ArrayList<String>());
+        InetAddress address = InetAddress.getByAddress(new byte[] { 10, 0, 0, 1 });
+
+        for (String name : names) {
+            executor.submit(new LoginListener.AuthenticationTask(sessions, new GameProfile(null, name), SERVER_KEYS.getPublic(), LOGIN_KEY, address, new RecordingCallback(name, done, outcomes)));
+        }
+
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+        assertTrue(outcomes.contains("Player verified " + UUID.nameUUIDFromBytes("Player".getBytes())));
+        assertTrue(outcomes.contains("Unverified unverified"));
+        assertTrue(outcomes.contains("Unavailable unavailable"));
+        assertTrue(outcomes.contains("Broken failed IllegalStateException"));
+        // Plugins throwing from the pre-login events end up in the same place
+        assertTrue(outcomes.contains("Kicked failed IllegalArgumentException"));
+        assertEquals(names.length, outcomes.size());
+
+        // The server id is the hash the client sent the session server, the address passed on as is
+        String serverId = new BigInteger(MinecraftEncryption.a("", SERVER_KEYS.getPublic(), LOGIN_KEY)).toString(16);
+        assertEquals(Collections.nCopies(names.length, serverId), sessions.serverIds);
+        assertEquals(Collections.nCopies(names.length, address), sessions.addresses);
+        executor.shutdown();
+    }
+
+    private static void waitUntil(AuthenticationExecutor executor, int queued) throws InterruptedException {
+        while (executor.getQueued() != queued) {
+            Thread.sleep(1);
+        }
+    }
+
+    private static Runnable login(MinecraftSessionService sessions, String name, CountDownLatch done, List<String> order) {
+        return new LoginListener.AuthenticationTask(sessions, new GameProfile(null, name), SERVER_KEYS.getPublic(), LOGIN_KEY, null, new RecordingCallback(name, done, order));
+    }
+
+    /**
+     * Stands in for LoginListener, noting what became of each login.
+     */
+    private static class RecordingCallback implements LoginListener.AuthenticationTask.Callback {
+        private final String name;
+        private final CountDownLatch done;
+        private final List<String> outcomes;
+
+        RecordingCallback(String name, CountDownLatch done, List<String> outcomes) {
+            this.name = name;
+            this.done = done;
+            this.outcomes = outcomes;
+        }
+
+        public void verified(GameProfile profile) {
+            if (name.equals("Kicked")) {
+                throw new IllegalArgumentException();
+            }
+            record(profile.getName().equals(name) ? "verified " + profile.getId() : "verified as " + profile.getName());
+        }
+
+        public void unverified() {
+            record("unverified");
+        }
+
+        public void unavailable() {
+            record("unavailable");
+        }
+
+        public void failed(Exception exception) {
+            record("failed " + exception.getClass().getSimpleName());
+        }
+
+        private void record(String outcome) {
+            if (outcomes != null) {
+                outcomes.add(name + " " + outcome);
+            }
+            done.countDown();
+        }
+    }
+
+    /**
+     * Answers every session check itself after a fixed delay, in place of
+     * Mojang's session server. A few names get the other answers.
+     */
+    private static class StandInSessionService implements MinecraftSessionService {
+        private final long delay;
+        private final AtomicInteger concurrent = new AtomicInteger();
+        final AtomicInteger maxConcurrent = new AtomicInteger();
+        final List<String> joined = Collections.synchronizedList(new ArrayList<String>());
+        final List<String> serverIds = Collections.synchronizedList(new ArrayList<String>());
+        final List<InetAddress> addresses = Collections.synchronizedList(new ArrayList<InetAddress>());
+
+        StandInSessionService(long delay) {
+            this.delay = delay;
+        }
+
+        public void joinServer(GameProfile profile, String authenticationToken, String serverId) {
+            throw new UnsupportedOperationException();
+        }
+
+        public GameProfile hasJoinedServer(GameProfile user, String serverId, InetAddress address) throws AuthenticationUnavailableException {
+            // Only the name is sent, the id comes from the session server
+            assertNull(user.getId());
+            serverIds.add(serverId);
+            addresses.add(address);
+
+            int now = concurrent.incrementAndGet();
+            int max = maxConcurrent.get();
+            while (now > max && !maxConcurrent.compareAndSet(max, now)) {
+                max = maxConcurrent.get();
+            }
+
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            } finally {
+                concurrent.decrementAndGet();
+            }
+
+            joined.add(user.getName());
+            if (user.getName().equals("Unverified")) {
+                return null;
+            } else if (user.getName().equals("Unavailable")) {
+                throw new AuthenticationUnavailableException();
+            } else if (user.getName().equals("Broken")) {
+                throw new IllegalStateException();
+            }
+            return new GameProfile(UUID.nameUUIDFromBytes(user.getName().getBytes()), user.getName());
+        }
+
+        public Map<MinecraftProfileTexture.Type, MinecraftProfileTexture> getTextures(GameProfile profile, boolean requireSecure) {
+            return Collections.emptyMap();
+        }
+
+        public GameProfile fillProfileProperties(GameProfile profile, boolean requireSecure) {
+            return profile;
+        }
+    }
+}
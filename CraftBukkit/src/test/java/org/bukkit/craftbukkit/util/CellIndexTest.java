@@ -0,0 +1,112 @@
+package org.bukkit.craftbukkit.util;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import org.junit.Test;
+
+public class CellIndexTest {
+
+    @Test
+    public void testQueryFindsEverythingInRange() {
+        Random random = new Random(1);
+        CellIndex<Point> index = new CellIndex<Point>();
+        List<Point> points = new ArrayList<Point>();
+
+        for (int i = 0; i < 2000; i++) {
+            Point point = new Point(random.nextDouble() * 2000 - 1000, random.nextDouble() * 2000 - 1000);
+            points.add(point);
+            index.add(point, point.cell());
+        }
+        // Exactly on a cell boundary, at the edge of the square
+        Point edge = new Point(-48, 32);
+        points.add(edge);
+        index.add(edge, edge.cell());
+        assertEquals(points.size(), index.size());
+
+        for (int i = 0; i < 500; i++) {
+            double x = i == 0 ? -16 : random.nextDouble() * 2000 - 1000;
+            double z = i == 0 ? 0 : random.nextDouble() * 2000 - 1000;
+            int range = i == 0 ? 32 : random.nextInt(600);
+            Set<Point> found = new HashSet<Point>();
+
+            index.query(x - range, z - range, x + range, z + range, found);
+            for (Point point : points) {
+                if (point.inRange(x, z, range)) {
+                    assertTrue("Missed point " + point.x + "," + point.z, found.contains(point));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testMoveAndRemove() {
+        CellIndex<Point> index = new CellIndex<Point>();
+        Point point = new Point(5, 5);
+        List<Point> found = new ArrayList<Point>();
+
+        index.add(point, point.cell());
+        index.move(point, point.cell(), CellIndex.key(100, 100));
+        index.query(0, 0, 15, 15, found);
+        assertTrue(found.isEmpty());
+        index.query(100, 100, 100, 100, found);
+        assertEquals(1, found.size());
+
+        index.remove(point, CellIndex.key(100, 100));
+        assertEquals(0, index.size());
+        found.clear();
+        index.query(-1000, -1000, 1000, 1000, found);
+        assertTrue(found.isEmpty());
+    }
+
+    @Test
+    public void testRemoveFromCrowdedCell() {
+        Random random = new Random(2);
+        CellIndex<Point> index = new CellIndex<Point>();
+        List<Point> points = new ArrayList<Point>();
+
+        for (int i = 0; i < 200; i++) {
+            Point point = new Point(random.nextDouble() * 16, random.nextDouble() * 16);
+            points.add(point);
+            index.add(point, point.cell());
+        }
+
+        while (!points.isEmpty()) {
+            Point point = points.remove(random.nextInt(points.size()));
+            index.remove(point, point.cell());
+            // Removing twice, or from the wrong cell, does nothing
+            index.remove(point, point.cell());
+            index.remove(points.isEmpty() ? point : points.get(0), CellIndex.key(100, 100));
+
+            Set<Point> found = new HashSet<Point>();
+            index.query(0, 0, 15, 15, found);
+            assertEquals(new HashSet<Point>(points), found);
+            assertEquals(points.size(), index.size());
+        }
+    }
+
+    private static class Point {
+        private final double x;
+        private final double z;
+
+        private Point(double x, double z) {
+            this.x = x;
+            this.z = z;
+        }
+
+        private long cell() {
+            return CellIndex.key(x, z);
+        }
+
+        // Same square as EntityTrackerEntry.c(EntityPlayer)
+        private boolean inRange(double x, double z, int range) {
+            double dx = x - this.x;
+            double dz = z - this.z;
+            return dx >= -range && dx <= range && dz >= -range && dz <= range;
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package org.bukkit.craftbukkit.util;
+
+import static org.junit.Assert.*;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufOutputStream;
+import io.netty.buffer.Unpooled;
+import java.io.DataOutput;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import net.minecraft.server.NBTCompressedStreamTools;
+import net.minecraft.server.NBTTagCompound;
+import net.minecraft.server.NBTTagList;
+import org.junit.Test;
+
+public class CompressionBackendTest {
+    private final CompressionBackend backend = new JavaCompressionBackend();
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        Random random = new Random(1);
+
+        for (int i = 0; i < 200; i++) {
+            byte[] payload = new byte[1 + random.nextInt(200000)];
+            for (int j = 0; j < payload.length; j++) {
+                payload[j] = (byte) (random.nextInt(4) == 0 ? random.nextInt() : j >> 8);
+            }
+
+            for (int j = 0; j < 4; j++) {
+                ByteBuf source = (j & 1) == 0 ? Unpooled.wrappedBuffer(payload) : Unpooled.directBuffer().writeBytes(payload);
+                ByteBuf compressed = (j & 2) == 0 ? Unpooled.buffer() : Unpooled.directBuffer();
+
+                backend.deflate(source, compressed);
+                assertFalse(source.isReadable());
+                assertArrayEquals(payload, inflateWithJdk(bytes(compressed), payload.length));
+
+                ByteBuf decompressed = (j & 2) == 0 ? Unpooled.directBuffer() : Unpooled.buffer();
+                compressed.writeBytes(new byte[] { 1, 2, 3 });
+                backend.inflate(compressed, decompressed, payload.length);
+                // Only the zlib stream is consumed
+                assertEquals(3, compressed.readableBytes());
+                assertArrayEquals(payload, bytes(decompressed));
+            }
+        }
+    }
+
+    @Test(expected = DataFormatException.class)
+    public void testTruncated() throws DataFormatException {
+        ByteBuf compressed = Unpooled.buffer();
+        backend.deflate(Unpooled.wrappedBuffer(new byte[10000]), compressed);
+
+        backend.inflate(compressed.slice(0, compressed.readableBytes() - 1), Unpooled.buffer(), 10000);
+    }
+
+    @Test(expected = DataFormatException.class)
+    public void testTooLarge() throws DataFormatException {
+        ByteBuf compressed = Unpooled.buffer();
+        backend.deflate(Unpooled.wrappedBuffer(new byte[10000]), compressed);
+
+        backend.inflate(compressed, Unpooled.buffer(), 9999);
+    }
+
+    @Test
+    public void testMissingBackendFallsBack() {
+        assertTrue(CompressionBackend.load("org.bukkit.craftbukkit.util.NoSuchBackend") instanceof JavaCompressionBackend);
+        assertTrue(CompressionBackend.load(null) instanceof JavaCompressionBackend);
+    }
+
+    @Test
+    public void testChunk() throws Exception {
+        byte[] chunk = chunkPayload(new Random(2));
+        ByteBuf compressed = Unpooled.buffer();
+
+        // From a direct buffer, as the chunk save pipeline hands it over
+        backend.deflate(Unpooled.directBuffer(chunk.length).writeBytes(chunk), compressed);
+        assertArrayEquals(chunk, inflateWithJdk(bytes(compressed), chunk.length));
+    }
+
+    // Sixteen sections of layered terrain with some ores and caves, as a saved chunk is laid out
+    static byte[] chunkPayload(Random random) throws Exception {
+        NBTTagCompound level = new NBTTagCompound();
+        NBTTagList sections = new NBTTagList();
+
+        for (int y = 0; y < 16; y++) {
+            NBTTagCompound section = new NBTTagCompound();
+            byte[] blocks = new byte[4096];
+            byte[] data = new byte[2048];
+            byte[] light = new byte[2048];
+
+            for (int i = 0; i < blocks.length; i++) {
+                int height = y * 16 + (i >> 8);
+                if (height < 60) {
+                    blocks[i] = (byte) (random.nextInt(50) == 0 ? 16 : random.nextInt(30) == 0 ? 0 : 1);
+                } else if (height < 64) {
+                    blocks[i] = 3;
+                } else if (height == 64) {
+                    blocks[i] = 2;
+                }
+            }
+            for (int i = 0; i < light.length; i++) {
+                light[i] = (byte) (y >= 4 ? 0xFF : random.nextInt(4) == 0 ? random.nextInt() : 0);
+            }
+
+            section.setByte("Y", (byte) y);
+            section.setByteArray("Blocks", blocks);
+            section.setByteArray("Data", data);
+            section.setByteArray("BlockLight", Arrays.copyOf(data, data.length));
+            section.setByteArray("SkyLight", light);
+            sections.add(section);
+        }
+
+        int[] heightMap = new int[256];
+        Arrays.fill(heightMap, 65);
+        level.setInt("xPos", 0);
+        level.setInt("zPos", 0);
+        level.setLong("LastUpdate", 123456L);
+        level.setIntArray("HeightMap", heightMap);
+        level.setByteArray("Biomes", new byte[256]);
+        level.set("Sections", sections);
+
+        NBTTagCompound root = new NBTTagCompound();
+        root.set("Level", level);
+
+        ByteBuf buffer = Unpooled.buffer();
+        NBTCompressedStreamTools.a(root, (DataOutput) new ByteBufOutputStream(buffer));
+        return bytes(buffer);
+    }
+
+    private static byte[] inflateWithJdk(byte[] compressed, int length) throws DataFormatException {
+        Inflater inflater = new Inflater();
+        byte[] result = new byte[length];
+
+        inflater.setInput(compressed);
+        assertEquals(length, inflater.inflate(result));
+        assertTrue(inflater.finished());
+        inflater.end();
+        return result;
+    }
+
+    private static byte[] bytes(ByteBuf buffer) {
+        byte[] bytes = new byte[buffer.readableBytes()];
+        buffer.getBytes(buffer.readerIndex(), bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,127 @@
+package org.bukkit.craftbukkit.util;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Reports the time to compress and decompress serialized chunks, the way
+ * region files did before with a new stream per chunk, with the Java
+ * backend, and with the backend named by the {@value CompressionBackend#PROPERTY}
+ * system property if it loads. Not part of the test run; start it from the
+ * test classpath, with the native library on it to compare one:
+ * <pre>
+ * java -Dcraftbukkit.compression=&lt;class&gt; -cp target/classes:target/test-classes:&lt;dependencies&gt; org.bukkit.craftbukkit.util.CompressionBenchmark
+ * </pre>
+ */
+public class CompressionBenchmark {
+    private static final int CHUNKS = 32;
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) throws Exception {
+        Random random = new Random(2);
+        byte[][] chunks = new byte[CHUNKS][];
+        long bytes = 0;
+        for (int i = 0; i < CHUNKS; i++) {
+            chunks[i] = CompressionBackendTest.chunkPayload(random);
+            bytes += chunks[i].length;
+        }
+
+        List<CompressionBackend> backends = new ArrayList<CompressionBackend>();
+        backends.add(new JavaCompressionBackend());
+        String name = System.getProperty(CompressionBackend.PROPERTY);
+        if (name != null) {
+            CompressionBackend backend = CompressionBackend.load(name);
+            if (!(backend instanceof JavaCompressionBackend)) {
+                backends.add(backend);
+            }
+        }
+
+        System.out.println(String.format("%d chunks, %.1f KiB serialized on average", CHUNKS, bytes / 1024.0D / CHUNKS));
+        for (int round = 0; round < ROUNDS; round++) {
+            // The first rounds are warm up
+            boolean report = round >= 2;
+
+            streams(chunks, report);
+            for (CompressionBackend backend : backends) {
+                backend(backend, chunks, false, report);
+                backend(backend, chunks, true, report);
+            }
+        }
+    }
+
+    private static void streams(byte[][] chunks, boolean report) throws Exception {
+        byte[][] compressed = new byte[chunks.length][];
+        long start = System.nanoTime();
+        for (int i = 0; i < chunks.length; i++) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(8096);
+            DataOutputStream stream = new DataOutputStream(new DeflaterOutputStream(out));
+            stream.write(chunks[i]);
+            stream.close();
+            compressed[i] = out.toByteArray();
+        }
+        long deflate = System.nanoTime() - start;
+
+        long size = 0;
+        start = System.nanoTime();
+        for (int i = 0; i < chunks.length; i++) {
+            DataInputStream stream = new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(compressed[i])));
+            stream.readFully(new byte[chunks[i].length]);
+            stream.close();
+            size += compressed[i].length;
+        }
+        long inflate = System.nanoTime() - start;
+
+        print(report, "Streams", deflate, inflate, size, chunks.length);
+    }
+
+    // Direct buffers are what the network pipeline hands over, heap buffers what region files do
+    private static void backend(CompressionBackend backend, byte[][] chunks, boolean direct, boolean report) throws Exception {
+        ByteBuf[] sources = new ByteBuf[chunks.length];
+        ByteBuf[] compressed = new ByteBuf[chunks.length];
+        for (int i = 0; i < chunks.length; i++) {
+            sources[i] = direct ? Unpooled.directBuffer(chunks[i].length) : Unpooled.buffer(chunks[i].length);
+            sources[i].writeBytes(chunks[i]);
+            compressed[i] = direct ? Unpooled.directBuffer() : Unpooled.buffer();
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < chunks.length; i++) {
+            backend.deflate(sources[i], compressed[i]);
+        }
+        long deflate = System.nanoTime() - start;
+
+        long size = 0;
+        ByteBuf decompressed = direct ? Unpooled.directBuffer() : Unpooled.buffer();
+        start = System.nanoTime();
+        for (int i = 0; i < chunks.length; i++) {
+            size += compressed[i].readableBytes();
+            decompressed.clear();
+            backend.inflate(compressed[i], decompressed, chunks[i].length);
+        }
+        long inflate = System.nanoTime() - start;
+
+        for (int i = 0; i < chunks.length; i++) {
+            sources[i].release();
+            compressed[i].release();
+        }
+        decompressed.release();
+
+        print(report, backend.getName() + (direct ? " (direct)" : " (heap)"), deflate, inflate, size, chunks.length);
+    }
+
+    private static void print(boolean report, String name, long deflate, long inflate, long size, int chunks) {
+        if (report) {
+            System.out.println(String.format("%s: deflate %.0fus, inflate %.0fus per chunk, %.1f KiB compressed",
+                    name, deflate / 1000.0D / chunks, inflate / 1000.0D / chunks, size / 1024.0D / chunks));
+        }
+    }
+}